@@ -0,0 +1,147 @@
+package com.userservice.codec;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.userservice.entity.User;
+import com.userservice.entity.UserOutboxEvent;
+import com.userservice.job.UserGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сравнение {@link UserCodec} с JSON (Jackson и UserOutboxEvent#toPayload) и Java-сериализацией
+ * на пакете синтетических пользователей: кодирование, декодирование и поиск по email.
+ * Размер закодированного пакета каждого формата печатается при подготовке.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserCodecBenchmark {
+
+    @Param({"1000"})
+    private int batchSize;
+
+    private final UserCodec codec = new UserCodec();
+    private final ObjectMapper json = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+            // Вычисляемое свойство deleted (User#isDeleted) не имеет сеттера
+            .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    private List<User> users;
+    private String targetEmail;
+    private byte[] codecBatch;
+    private byte[] jsonBatch;
+    private byte[] serializedBatch;
+
+    @Setup
+    public void setUp() throws IOException {
+        UserGenerator generator = new UserGenerator(42, LocalDateTime.of(2023, 1, 1, 0, 0), LocalDateTime.of(2025, 1, 1, 0, 0));
+        users = new ArrayList<>();
+        for (int i = 0; i < batchSize; i++) {
+            User user = generator.generate(i);
+            user.setId(1_000_000L + i);
+            user.setUpdatedAt(user.getCreatedAt().plusDays(3));
+            users.add(user);
+        }
+        targetEmail = users.get(batchSize - 1).getEmail();
+        codecBatch = codec.encodeAll(users);
+        jsonBatch = json.writeValueAsBytes(users);
+        serializedBatch = serialize(users);
+        System.out.printf("%nBatch of %d users: codec %d bytes, JSON %d bytes, Java serialization %d bytes%n",
+                batchSize, codecBatch.length, jsonBatch.length, serializedBatch.length);
+    }
+
+    private static byte[] serialize(List<User> users) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(new ArrayList<>(users));
+        }
+        return bytes.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] encodeCodec() {
+        return codec.encodeAll(users);
+    }
+
+    @Benchmark
+    public byte[] encodeJackson() throws IOException {
+        return json.writeValueAsBytes(users);
+    }
+
+    @Benchmark
+    public void encodeOutboxPayload(Blackhole blackhole) {
+        for (User user : users) {
+            blackhole.consume(UserOutboxEvent.toPayload(user));
+        }
+    }
+
+    @Benchmark
+    public byte[] encodeJavaSerialization() throws IOException {
+        return serialize(users);
+    }
+
+    @Benchmark
+    public List<User> decodeCodec() {
+        return codec.decodeAll(codecBatch);
+    }
+
+    @Benchmark
+    public User[] decodeJackson() throws IOException {
+        return json.readValue(jsonBatch, User[].class);
+    }
+
+    @Benchmark
+    public Object decodeJavaSerialization() throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serializedBatch))) {
+            return in.readObject();
+        }
+    }
+
+    @Benchmark
+    public long findByEmailCodecView() {
+        long[] found = {-1};
+        codec.forEach(ByteBuffer.wrap(codecBatch), view -> {
+            if (view.emailEquals(targetEmail)) {
+                found[0] = view.getId();
+            }
+        });
+        return found[0];
+    }
+
+    @Benchmark
+    public long findByEmailCodecDecode() {
+        for (User user : codec.decodeAll(codecBatch)) {
+            if (user.getEmail().equals(targetEmail)) {
+                return user.getId();
+            }
+        }
+        return -1;
+    }
+}
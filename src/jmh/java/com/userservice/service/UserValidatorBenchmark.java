@@ -0,0 +1,132 @@
+package com.userservice.service;
+
+import com.userservice.entity.User;
+import com.userservice.job.UserGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Сравнение прежней проверки (String.matches и исключение на первой ошибке) с
+ * {@link UserValidator}: разбор email вместо регулярного выражения, сбор всех нарушений
+ * и параллельная проверка пакета. В пакете каждая сотая запись некорректна.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserValidatorBenchmark {
+
+    @Param({"100000"})
+    private int batchSize;
+
+    private static final Pattern EMAIL_PATTERN = Pattern.compile(UserValidator.EMAIL_REGEX);
+    private final UserValidator validator = new UserValidator();
+    private List<User> users;
+
+    @Setup
+    public void setUp() {
+        UserGenerator generator = new UserGenerator(42, LocalDateTime.of(2023, 1, 1, 0, 0), LocalDateTime.of(2025, 1, 1, 0, 0));
+        users = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            User user = generator.generate(i);
+            if (i % 100 == 0) {
+                user.setEmail(user.getEmail().replace('@', '#'));
+                user.setAge(-1);
+            }
+            users.add(user);
+        }
+    }
+
+    // Прежняя проверка UserService: новый Pattern на каждый вызов и исключение на первой ошибке
+    private static void legacyValidate(User user) {
+        if (user.getName() == null || user.getName().trim().isEmpty() || user.getName().length() > 100) {
+            throw new IllegalArgumentException("Invalid name");
+        }
+        String email = user.getEmail();
+        if (email == null || email.trim().isEmpty() || !email.matches(UserValidator.EMAIL_REGEX) || email.length() > 100) {
+            throw new IllegalArgumentException("Invalid email");
+        }
+        if (user.getAge() == null || user.getAge() < 0 || user.getAge() > 150) {
+            throw new IllegalArgumentException("Invalid age");
+        }
+    }
+
+    @Benchmark
+    public int emailStringMatches() {
+        int valid = 0;
+        for (User user : users) {
+            if (user.getEmail().matches(UserValidator.EMAIL_REGEX)) {
+                valid++;
+            }
+        }
+        return valid;
+    }
+
+    @Benchmark
+    public int emailPrecompiledPattern() {
+        int valid = 0;
+        for (User user : users) {
+            if (EMAIL_PATTERN.matcher(user.getEmail()).matches()) {
+                valid++;
+            }
+        }
+        return valid;
+    }
+
+    @Benchmark
+    public int emailScanner() {
+        int valid = 0;
+        for (User user : users) {
+            if (UserValidator.isValidEmailFormat(user.getEmail())) {
+                valid++;
+            }
+        }
+        return valid;
+    }
+
+    @Benchmark
+    public int batchLegacyThrowing() {
+        int invalid = 0;
+        for (User user : users) {
+            try {
+                legacyValidate(user);
+            } catch (IllegalArgumentException e) {
+                invalid++;
+            }
+        }
+        return invalid;
+    }
+
+    @Benchmark
+    public int batchValidatorSequential() {
+        int invalid = 0;
+        for (User user : users) {
+            if (!validator.validate(user).isEmpty()) {
+                invalid++;
+            }
+        }
+        return invalid;
+    }
+
+    @Benchmark
+    public int batchValidatorParallel() {
+        return validator.validateAll(users).size();
+    }
+}
@@ -8,12 +8,16 @@ import org.apache.logging.log4j.Logger;
 
 import com.userservice.dao.UserDAO;
 import com.userservice.entity.User;
+import com.userservice.job.JobProgress;
+import com.userservice.job.UserSeeder;
 import com.userservice.util.HibernateUtil;
+import com.userservice.util.RuntimeStatistics;
 
 public class Main {
     private static final Logger logger = LogManager.getLogger(Main.class);
     private static final Scanner scanner = new Scanner(System.in);
     private static UserDAO userDAO;
+    private static RuntimeStatistics runtimeStatistics;
 
     public static void main(String[] args) {
         logger.info("Starting User Service application");
@@ -25,12 +29,20 @@ public class Main {
             
             // Инициализация DAO только после успешного подключения
             userDAO = new UserDAO();
+            runtimeStatistics = new RuntimeStatistics(HibernateUtil.getSessionFactory());
+            
+            // Пакетный режим: заполнить таблицу синтетическими пользователями (seed <count> [seed])
+            if (args.length > 1 && "seed".equals(args[0])) {
+                seedUsers(Long.parseLong(args[1]), args.length > 2 ? Long.parseLong(args[2]) : UserSeeder.DEFAULT_SEED);
+                return;
+            }
+            runtimeStatistics.start();
             
             showMenu();
             
             boolean running = true;
             while (running) {
-                System.out.print("\nВыберите операцию (1-6): ");
+                System.out.print("\nВыберите операцию (1-7): ");
                 String choice = scanner.nextLine().trim();
                 
                 try {
@@ -51,11 +63,14 @@ public class Main {
                             deleteUser();
                             break;
                         case "6":
+                            showStatistics();
+                            break;
+                        case "7":
                             running = false;
                             System.out.println("Выход из приложения...");
                             break;
                         default:
-                            System.out.println("Неверный выбор. Пожалуйста, выберите от 1 до 6.");
+                            System.out.println("Неверный выбор. Пожалуйста, выберите от 1 до 7.");
                     }
                 } catch (Exception e) {
                     System.out.println("Ошибка: " + e.getMessage());
@@ -84,6 +99,9 @@ public class Main {
             System.err.println("\nПроверьте настройки в файле: src/main/resources/hibernate.cfg.xml");
         } finally {
             scanner.close();
+            if (runtimeStatistics != null) {
+                runtimeStatistics.close();
+            }
             HibernateUtil.shutdown();
             logger.info("Application shutdown");
         }
@@ -96,7 +114,20 @@ public class Main {
         System.out.println("3. Показать всех пользователей (Read All)");
         System.out.println("4. Обновить пользователя (Update)");
         System.out.println("5. Удалить пользователя (Delete)");
-        System.out.println("6. Выход");
+        System.out.println("6. Статистика");
+        System.out.println("7. Выход");
+    }
+
+    private static void showStatistics() {
+        System.out.println("\n--- Статистика ---");
+        System.out.println(runtimeStatistics.report());
+    }
+
+    private static void seedUsers(long count, long seed) {
+        JobProgress result = new UserSeeder(HibernateUtil.getSessionFactory()).seed(seed).run(count);
+        System.out.printf("Загружено пользователей: %d за %d с (%.0f строк/с), ошибок в пакетах: %d%n",
+                result.getProcessedUsers(), result.getElapsed().getSeconds(), result.getUsersPerSecond(),
+                result.getFailedChunks());
     }
 
     private static void createUser() {
@@ -0,0 +1,153 @@
+package com.userservice.codec;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Примитивы двоичного формата: беззнаковые varint (LEB128, 7 бит на байт), zigzag для
+ * знаковых значений, время и строки UTF-8 с префиксом длины. Чтение - по абсолютному
+ * индексу, без изменения position буфера.
+ */
+final class BinaryFormat {
+    // Точка отсчета времени: значения около текущей даты кодируются 5 байтами
+    static final long EPOCH_SECOND = LocalDateTime.of(2020, 1, 1, 0, 0).toEpochSecond(ZoneOffset.UTC);
+
+    private BinaryFormat() {
+    }
+
+    static void writeVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    static long readVarLong(ByteBuffer buffer, int index) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get(index++);
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    static int varLongSize(ByteBuffer buffer, int index) {
+        int size = 1;
+        while (buffer.get(index++) < 0) {
+            if (++size > 10) {
+                throw new IllegalArgumentException("Malformed varint");
+            }
+        }
+        return size;
+    }
+
+    static int varLongSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Время с точностью до микросекунд (как timestamp в PostgreSQL): секунды от EPOCH_SECOND
+     * в zigzag со сдвигом на бит-признак дробной части, затем микросекунды, если они не нулевые.
+     */
+    static void writeTimestamp(ByteBuffer buffer, LocalDateTime value) {
+        long seconds = value.toEpochSecond(ZoneOffset.UTC) - EPOCH_SECOND;
+        int micros = value.getNano() / 1000;
+        writeVarLong(buffer, zigzag(seconds) << 1 | (micros != 0 ? 1 : 0));
+        if (micros != 0) {
+            writeVarLong(buffer, micros);
+        }
+    }
+
+    static int timestampSize(LocalDateTime value) {
+        long seconds = value.toEpochSecond(ZoneOffset.UTC) - EPOCH_SECOND;
+        int micros = value.getNano() / 1000;
+        return varLongSize(zigzag(seconds) << 1) + (micros != 0 ? varLongSize(micros) : 0);
+    }
+
+    static LocalDateTime readTimestamp(ByteBuffer buffer, int index) {
+        long packed = readVarLong(buffer, index);
+        long seconds = unzigzag(packed >>> 1) + EPOCH_SECOND;
+        int micros = (packed & 1) != 0 ? (int) readVarLong(buffer, index + varLongSize(buffer, index)) : 0;
+        return LocalDateTime.ofEpochSecond(seconds, micros * 1000, ZoneOffset.UTC);
+    }
+
+    static int timestampSize(ByteBuffer buffer, int index) {
+        long packed = readVarLong(buffer, index);
+        int size = varLongSize(buffer, index);
+        return (packed & 1) != 0 ? size + varLongSize(buffer, index + size) : size;
+    }
+
+    /**
+     * Длина строки в UTF-8; непарный суррогат кодируется как '?', как в String#getBytes.
+     */
+    static int utf8Length(String value) {
+        int length = value.length();
+        int bytes = length;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80) {
+                if (c < 0x800) {
+                    bytes += 1;
+                } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    bytes += 2;
+                    i++;
+                } else if (!Character.isSurrogate(c)) {
+                    bytes += 2;
+                }
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Пишет длину в байтах и саму строку в UTF-8 прямо в буфер, без промежуточного массива.
+     */
+    static void writeString(ByteBuffer buffer, String value) {
+        writeVarLong(buffer, utf8Length(value));
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | c >> 6));
+                buffer.put((byte) (0x80 | c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer.put((byte) (0xF0 | codePoint >> 18));
+                buffer.put((byte) (0x80 | codePoint >> 12 & 0x3F));
+                buffer.put((byte) (0x80 | codePoint >> 6 & 0x3F));
+                buffer.put((byte) (0x80 | codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                buffer.put((byte) '?');
+            } else {
+                buffer.put((byte) (0xE0 | c >> 12));
+                buffer.put((byte) (0x80 | c >> 6 & 0x3F));
+                buffer.put((byte) (0x80 | c & 0x3F));
+            }
+        }
+    }
+
+    static int stringSize(String value) {
+        int bytes = utf8Length(value);
+        return varLongSize(bytes) + bytes;
+    }
+}
@@ -0,0 +1,62 @@
+package com.userservice.codec;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Пул буферов в куче для пакетного кодирования: буферы переиспользуются между вызовами,
+ * а не выделяются заново под каждый пакет. Емкости - степени двойки; буферы больше
+ * maxPooledCapacity и сверх maxBuffers в пул не возвращаются.
+ */
+public class BufferPool {
+    public static final int DEFAULT_MAX_BUFFERS = 16;
+    public static final int DEFAULT_MAX_POOLED_CAPACITY = 16 * 1024 * 1024;
+    private static final int MIN_CAPACITY = 4096;
+
+    private final ConcurrentLinkedDeque<ByteBuffer> buffers = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+    private final int maxBuffers;
+    private final int maxPooledCapacity;
+
+    public BufferPool() {
+        this(DEFAULT_MAX_BUFFERS, DEFAULT_MAX_POOLED_CAPACITY);
+    }
+
+    public BufferPool(int maxBuffers, int maxPooledCapacity) {
+        if (maxBuffers < 0 || maxPooledCapacity <= 0) {
+            throw new IllegalArgumentException("Pool limits must be positive");
+        }
+        this.maxBuffers = maxBuffers;
+        this.maxPooledCapacity = maxPooledCapacity;
+    }
+
+    /**
+     * Очищенный буфер емкостью не меньше minCapacity.
+     */
+    public ByteBuffer acquire(int minCapacity) {
+        for (ByteBuffer buffer : buffers) {
+            if (buffer.capacity() >= minCapacity && buffers.removeFirstOccurrence(buffer)) {
+                pooled.decrementAndGet();
+                return buffer.clear();
+            }
+        }
+        int capacity = Math.max(MIN_CAPACITY, Integer.highestOneBit(Math.max(1, minCapacity - 1)) << 1);
+        return ByteBuffer.allocate(capacity < 0 ? Integer.MAX_VALUE - 8 : capacity);
+    }
+
+    public void release(ByteBuffer buffer) {
+        if (buffer.capacity() > maxPooledCapacity || !buffer.hasArray()) {
+            return;
+        }
+        if (pooled.incrementAndGet() > maxBuffers) {
+            pooled.decrementAndGet();
+            return;
+        }
+        buffers.addFirst(buffer);
+    }
+
+    public int size() {
+        return pooled.get();
+    }
+}
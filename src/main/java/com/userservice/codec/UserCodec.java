@@ -0,0 +1,237 @@
+package com.userservice.codec;
+
+import com.userservice.entity.User;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Компактный версионированный двоичный формат пользователей для кешей, выгрузок и передачи
+ * между узлами вместо toString() и Java-сериализации.
+ * <p>
+ * Запись: байт версии, байт флагов присутствующих полей, затем только присутствующие поля
+ * в фиксированном порядке - id (varint), age (zigzag varint), created_at, updated_at,
+ * deleted_at (секунды и микросекунды, см. BinaryFormat), name и email (длина varint и UTF-8).
+ * Время хранится с точностью до микросекунд, как в PostgreSQL. Пакет: байт версии, число
+ * записей (varint) и записи подряд. Длина записи не хранится, поэтому читатель не может
+ * пропустить незнакомые поля: любое изменение формата, включая новые поля, увеличивает
+ * VERSION, а записи с неизвестными флагами отклоняются.
+ * <p>
+ * Отдельные поля читаются без декодирования всей записи через {@link UserRecordView}.
+ * Пакетное кодирование использует буферы из {@link BufferPool}. Класс потокобезопасен.
+ */
+public class UserCodec {
+    public static final byte VERSION = 1;
+
+    static final int HAS_ID = 1;
+    static final int HAS_AGE = 1 << 1;
+    static final int HAS_CREATED_AT = 1 << 2;
+    static final int HAS_UPDATED_AT = 1 << 3;
+    static final int HAS_DELETED_AT = 1 << 4;
+    static final int HAS_NAME = 1 << 5;
+    static final int HAS_EMAIL = 1 << 6;
+    static final int KNOWN_FLAGS = HAS_ID | HAS_AGE | HAS_CREATED_AT | HAS_UPDATED_AT | HAS_DELETED_AT | HAS_NAME | HAS_EMAIL;
+
+    // Средний размер записи для первой оценки буфера пакета
+    private static final int ESTIMATED_RECORD_SIZE = 64;
+
+    private final BufferPool bufferPool;
+
+    public UserCodec() {
+        this(new BufferPool());
+    }
+
+    public UserCodec(BufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * Точный размер записи в байтах.
+     */
+    public int encodedSize(User user) {
+        int size = 2;
+        if (user.getId() != null) {
+            size += BinaryFormat.varLongSize(user.getId());
+        }
+        if (user.getAge() != null) {
+            size += BinaryFormat.varLongSize(BinaryFormat.zigzag(user.getAge()));
+        }
+        if (user.getCreatedAt() != null) {
+            size += BinaryFormat.timestampSize(user.getCreatedAt());
+        }
+        if (user.getUpdatedAt() != null) {
+            size += BinaryFormat.timestampSize(user.getUpdatedAt());
+        }
+        if (user.getDeletedAt() != null) {
+            size += BinaryFormat.timestampSize(user.getDeletedAt());
+        }
+        if (user.getName() != null) {
+            size += BinaryFormat.stringSize(user.getName());
+        }
+        if (user.getEmail() != null) {
+            size += BinaryFormat.stringSize(user.getEmail());
+        }
+        return size;
+    }
+
+    /**
+     * Пишет запись с текущей позиции буфера; при нехватке места - BufferOverflowException.
+     */
+    public void encode(User user, ByteBuffer buffer) {
+        int flags = (user.getId() != null ? HAS_ID : 0)
+                | (user.getAge() != null ? HAS_AGE : 0)
+                | (user.getCreatedAt() != null ? HAS_CREATED_AT : 0)
+                | (user.getUpdatedAt() != null ? HAS_UPDATED_AT : 0)
+                | (user.getDeletedAt() != null ? HAS_DELETED_AT : 0)
+                | (user.getName() != null ? HAS_NAME : 0)
+                | (user.getEmail() != null ? HAS_EMAIL : 0);
+        buffer.put(VERSION);
+        buffer.put((byte) flags);
+        if (user.getId() != null) {
+            BinaryFormat.writeVarLong(buffer, user.getId());
+        }
+        if (user.getAge() != null) {
+            BinaryFormat.writeVarLong(buffer, BinaryFormat.zigzag(user.getAge()));
+        }
+        if (user.getCreatedAt() != null) {
+            BinaryFormat.writeTimestamp(buffer, user.getCreatedAt());
+        }
+        if (user.getUpdatedAt() != null) {
+            BinaryFormat.writeTimestamp(buffer, user.getUpdatedAt());
+        }
+        if (user.getDeletedAt() != null) {
+            BinaryFormat.writeTimestamp(buffer, user.getDeletedAt());
+        }
+        if (user.getName() != null) {
+            BinaryFormat.writeString(buffer, user.getName());
+        }
+        if (user.getEmail() != null) {
+            BinaryFormat.writeString(buffer, user.getEmail());
+        }
+    }
+
+    public byte[] encode(User user) {
+        ByteBuffer buffer = ByteBuffer.allocate(encodedSize(user));
+        encode(user, buffer);
+        return buffer.array();
+    }
+
+    /**
+     * Читает запись с текущей позиции буфера и сдвигает позицию за нее.
+     */
+    public User decode(ByteBuffer buffer) {
+        UserRecordView view = new UserRecordView().wrap(buffer, buffer.position());
+        buffer.position(buffer.position() + view.length());
+        return view.toUser();
+    }
+
+    public User decode(byte[] data) {
+        return decode(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Кодирует пакет в пуловый буфер и возвращает копию его содержимого.
+     */
+    public byte[] encodeAll(Collection<User> users) {
+        ByteBuffer buffer = encodeBatch(users);
+        try {
+            byte[] result = new byte[buffer.remaining()];
+            buffer.get(result);
+            return result;
+        } finally {
+            bufferPool.release(buffer);
+        }
+    }
+
+    /**
+     * Кодирует пакет в пуловый буфер и пишет его в поток без промежуточного массива.
+     */
+    public void encodeAll(Collection<User> users, OutputStream out) throws IOException {
+        ByteBuffer buffer = encodeBatch(users);
+        try {
+            out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        } finally {
+            bufferPool.release(buffer);
+        }
+    }
+
+    private ByteBuffer encodeBatch(Collection<User> users) {
+        int capacity = 16 + users.size() * ESTIMATED_RECORD_SIZE;
+        while (true) {
+            ByteBuffer buffer = bufferPool.acquire(capacity);
+            try {
+                buffer.put(VERSION);
+                BinaryFormat.writeVarLong(buffer, users.size());
+                for (User user : users) {
+                    encode(user, buffer);
+                }
+                return buffer.flip();
+            } catch (BufferOverflowException e) {
+                // Оценка не подошла: следующий буфер в два раза больше
+                bufferPool.release(buffer);
+                capacity = buffer.capacity() * 2;
+            }
+        }
+    }
+
+    public List<User> decodeAll(byte[] data) {
+        List<User> users = new ArrayList<>();
+        forEach(ByteBuffer.wrap(data), view -> users.add(view.toUser()));
+        return users;
+    }
+
+    /**
+     * Читает пакет из потока целиком в пуловый буфер и декодирует его.
+     */
+    public List<User> decodeAll(InputStream in) throws IOException {
+        ByteBuffer buffer = bufferPool.acquire(ESTIMATED_RECORD_SIZE * 64);
+        try {
+            while (true) {
+                int read = in.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                if (read < 0) {
+                    break;
+                }
+                buffer.position(buffer.position() + read);
+                if (!buffer.hasRemaining()) {
+                    ByteBuffer larger = bufferPool.acquire(buffer.capacity() * 2);
+                    larger.put(buffer.flip());
+                    bufferPool.release(buffer);
+                    buffer = larger;
+                }
+            }
+            List<User> users = new ArrayList<>();
+            forEach(buffer.flip(), view -> users.add(view.toUser()));
+            return users;
+        } finally {
+            bufferPool.release(buffer);
+        }
+    }
+
+    /**
+     * Обходит записи пакета с позиции буфера, передавая одно и то же переиспользуемое
+     * представление; объекты User не создаются. Позиция буфера сдвигается за пакет.
+     */
+    public void forEach(ByteBuffer batch, Consumer<UserRecordView> consumer) {
+        int version = batch.get();
+        if (version != VERSION) {
+            throw new IllegalArgumentException("Unsupported user batch version: " + version);
+        }
+        int index = batch.position();
+        long count = BinaryFormat.readVarLong(batch, index);
+        index += BinaryFormat.varLongSize(batch, index);
+        UserRecordView view = new UserRecordView();
+        for (long i = 0; i < count; i++) {
+            view.wrap(batch, index);
+            consumer.accept(view);
+            index += view.length();
+        }
+        batch.position(index);
+    }
+}
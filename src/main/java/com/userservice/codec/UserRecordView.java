@@ -0,0 +1,167 @@
+package com.userservice.codec;
+
+import com.userservice.entity.User;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+
+/**
+ * Представление одной закодированной записи {@link UserCodec} поверх буфера, без копирования.
+ * {@link #wrap} только находит смещения полей (строки пропускаются по префиксу длины), а
+ * каждый геттер декодирует одно поле, поэтому, например, фильтр по email не создает
+ * объекты User и не декодирует имя. Объект можно переиспользовать для следующей записи;
+ * position буфера не меняется. Не потокобезопасен.
+ */
+public class UserRecordView {
+    private ByteBuffer buffer;
+    private int offset;
+    private int length;
+    private int flags;
+    private int idIndex;
+    private int ageIndex;
+    private int createdAtIndex;
+    private int updatedAtIndex;
+    private int deletedAtIndex;
+    private int nameIndex;
+    private int emailIndex;
+
+    /**
+     * Наводит представление на запись, начинающуюся с индекса offset.
+     */
+    public UserRecordView wrap(ByteBuffer buffer, int offset) {
+        int version = buffer.get(offset);
+        if (version != UserCodec.VERSION) {
+            throw new IllegalArgumentException("Unsupported user record version: " + version);
+        }
+        int recordFlags = buffer.get(offset + 1) & 0xFF;
+        if ((recordFlags & ~UserCodec.KNOWN_FLAGS) != 0) {
+            throw new IllegalArgumentException("Unknown user record flags: 0x" + Integer.toHexString(recordFlags));
+        }
+        this.buffer = buffer;
+        this.offset = offset;
+        this.flags = recordFlags;
+        int index = offset + 2;
+        idIndex = index;
+        if (has(UserCodec.HAS_ID)) {
+            index += BinaryFormat.varLongSize(buffer, index);
+        }
+        ageIndex = index;
+        if (has(UserCodec.HAS_AGE)) {
+            index += BinaryFormat.varLongSize(buffer, index);
+        }
+        createdAtIndex = index;
+        if (has(UserCodec.HAS_CREATED_AT)) {
+            index += BinaryFormat.timestampSize(buffer, index);
+        }
+        updatedAtIndex = index;
+        if (has(UserCodec.HAS_UPDATED_AT)) {
+            index += BinaryFormat.timestampSize(buffer, index);
+        }
+        deletedAtIndex = index;
+        if (has(UserCodec.HAS_DELETED_AT)) {
+            index += BinaryFormat.timestampSize(buffer, index);
+        }
+        nameIndex = index;
+        if (has(UserCodec.HAS_NAME)) {
+            index += skipString(index);
+        }
+        emailIndex = index;
+        if (has(UserCodec.HAS_EMAIL)) {
+            index += skipString(index);
+        }
+        this.length = index - offset;
+        return this;
+    }
+
+    private boolean has(int flag) {
+        return (flags & flag) != 0;
+    }
+
+    private int skipString(int index) {
+        int size = BinaryFormat.varLongSize(buffer, index);
+        return size + (int) BinaryFormat.readVarLong(buffer, index);
+    }
+
+    /**
+     * Размер записи в байтах: следующая запись пакета начинается с offset + length().
+     */
+    public int length() {
+        return length;
+    }
+
+    public Long getId() {
+        return has(UserCodec.HAS_ID) ? BinaryFormat.readVarLong(buffer, idIndex) : null;
+    }
+
+    public Integer getAge() {
+        return has(UserCodec.HAS_AGE) ? (int) BinaryFormat.unzigzag(BinaryFormat.readVarLong(buffer, ageIndex)) : null;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return has(UserCodec.HAS_CREATED_AT) ? BinaryFormat.readTimestamp(buffer, createdAtIndex) : null;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return has(UserCodec.HAS_UPDATED_AT) ? BinaryFormat.readTimestamp(buffer, updatedAtIndex) : null;
+    }
+
+    public LocalDateTime getDeletedAt() {
+        return has(UserCodec.HAS_DELETED_AT) ? BinaryFormat.readTimestamp(buffer, deletedAtIndex) : null;
+    }
+
+    public String getName() {
+        return has(UserCodec.HAS_NAME) ? readString(nameIndex) : null;
+    }
+
+    public String getEmail() {
+        return has(UserCodec.HAS_EMAIL) ? readString(emailIndex) : null;
+    }
+
+    /**
+     * Сравнивает email записи со строкой без декодирования.
+     */
+    public boolean emailEquals(String email) {
+        if (!has(UserCodec.HAS_EMAIL) || email == null) {
+            return !has(UserCodec.HAS_EMAIL) && email == null;
+        }
+        int bytes = (int) BinaryFormat.readVarLong(buffer, emailIndex);
+        int start = emailIndex + BinaryFormat.varLongSize(buffer, emailIndex);
+        if (bytes != email.length()) {
+            // Длины в байтах и символах совпадают только у ASCII-строк
+            return bytes == BinaryFormat.utf8Length(email) && email.equals(readString(emailIndex));
+        }
+        for (int i = 0; i < bytes; i++) {
+            char c = email.charAt(i);
+            if (c >= 0x80 || buffer.get(start + i) != (byte) c) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String readString(int index) {
+        int bytes = (int) BinaryFormat.readVarLong(buffer, index);
+        int start = index + BinaryFormat.varLongSize(buffer, index);
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + start, bytes, StandardCharsets.UTF_8);
+        }
+        byte[] copy = new byte[bytes];
+        buffer.get(start, copy);
+        return new String(copy, StandardCharsets.UTF_8);
+    }
+
+    public User toUser() {
+        User user = new User(getName(), getEmail(), getAge());
+        user.setId(getId());
+        user.setCreatedAt(getCreatedAt());
+        user.setUpdatedAt(getUpdatedAt());
+        user.setDeletedAt(getDeletedAt());
+        return user;
+    }
+
+    @Override
+    public String toString() {
+        return "UserRecordView{offset=" + offset + ", length=" + length + ", id=" + getId() + '}';
+    }
+}
@@ -0,0 +1,165 @@
+package com.userservice.dao;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Адаптивный ограничитель числа одновременных обращений к базе (AIMD).
+ * Пока задержка запросов ниже latencyThreshold, лимит растет примерно на единицу за "окно"
+ * из limit запросов; при медленном ответе лимит умножается на {@value #BACKOFF_RATIO}.
+ * Сверх лимита в очереди ждут не более maxQueue запросов и не дольше maxWait,
+ * остальные сразу отклоняются с {@link UserDAORejectedException}.
+ */
+public class ConcurrencyLimiter {
+    private static final Logger logger = LogManager.getLogger(ConcurrencyLimiter.class);
+    private static final double BACKOFF_RATIO = 0.9;
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueue;
+    private final long maxWaitNanos;
+    private final long latencyThresholdNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition permitReleased = lock.newCondition();
+    private double limit;
+    private int inFlight;
+    private int queued;
+    private final AtomicLong rejected = new AtomicLong();
+
+    public ConcurrencyLimiter(String name, int initialLimit, int maxLimit) {
+        this(name, initialLimit, 1, maxLimit, maxLimit, Duration.ofMillis(100), Duration.ofMillis(200));
+    }
+
+    public ConcurrencyLimiter(String name, int initialLimit, int minLimit, int maxLimit,
+                              int maxQueue, Duration maxWait, Duration latencyThreshold) {
+        if (minLimit <= 0 || initialLimit < minLimit || maxLimit < initialLimit) {
+            throw new IllegalArgumentException("Limits must satisfy 0 < min <= initial <= max");
+        }
+        if (maxQueue < 0) {
+            throw new IllegalArgumentException("Max queue cannot be negative");
+        }
+        this.name = name;
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.maxQueue = maxQueue;
+        this.maxWaitNanos = maxWait.toNanos();
+        this.latencyThresholdNanos = latencyThreshold.toNanos();
+    }
+
+    /**
+     * Выполняет операцию, заняв разрешение; задержка операции корректирует лимит.
+     */
+    public <T> T execute(Supplier<T> operation) {
+        acquire();
+        long started = System.nanoTime();
+        try {
+            return operation.get();
+        } finally {
+            release(System.nanoTime() - started);
+        }
+    }
+
+    private void acquire() {
+        lock.lock();
+        try {
+            if (inFlight < (int) limit) {
+                inFlight++;
+                return;
+            }
+            if (queued >= maxQueue) {
+                throw reject();
+            }
+            queued++;
+            try {
+                long remaining = maxWaitNanos;
+                while (inFlight >= (int) limit) {
+                    if (remaining <= 0) {
+                        throw reject();
+                    }
+                    remaining = permitReleased.awaitNanos(remaining);
+                }
+                inFlight++;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw reject();
+            } finally {
+                queued--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(long latencyNanos) {
+        lock.lock();
+        try {
+            inFlight--;
+            if (latencyNanos > latencyThresholdNanos) {
+                double reduced = Math.max(minLimit, limit * BACKOFF_RATIO);
+                if ((int) reduced < (int) limit) {
+                    logger.debug("{} limiter: latency {} ms, limit reduced to {}",
+                            name, TimeUnit.NANOSECONDS.toMillis(latencyNanos), (int) reduced);
+                }
+                limit = reduced;
+            } else if (inFlight + 1 >= (int) limit) {
+                // Растем только когда лимит действительно использовался
+                limit = Math.min(maxLimit, limit + 1.0 / limit);
+            }
+            permitReleased.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private UserDAORejectedException reject() {
+        rejected.incrementAndGet();
+        logger.warn("{} limiter rejected request: limit {}, in flight {}, queued {}", name, (int) limit, inFlight, queued);
+        return new UserDAORejectedException(String.format(
+                "Too many concurrent %s requests (limit %d, in flight %d, queued %d)", name, (int) limit, inFlight, queued));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getLimit() {
+        lock.lock();
+        try {
+            return (int) limit;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getInFlight() {
+        lock.lock();
+        try {
+            return inFlight;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+}
@@ -0,0 +1,157 @@
+package com.userservice.dao;
+
+import com.userservice.entity.User;
+import org.hibernate.SessionFactory;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * UserDAO с раздельными ограничителями (bulkhead) для чтений и записей: всплеск записей
+ * не отнимает соединения у чтений и наоборот. Явная единица работы ({@link #inTransaction})
+ * занимает разрешение записи; операции внутри нее повторно разрешений не запрашивают.
+ */
+public class LimitedUserDAO extends UserDAO {
+    private final ConcurrencyLimiter readLimiter;
+    private final ConcurrencyLimiter writeLimiter;
+    // Поток уже держит разрешение: вложенные вызовы (в том числе из методов UserDAO) не ограничиваются
+    private final ThreadLocal<Boolean> holdsPermit = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+    public LimitedUserDAO(SessionFactory sessionFactory, ConcurrencyLimiter readLimiter, ConcurrencyLimiter writeLimiter) {
+        super(sessionFactory);
+        this.readLimiter = readLimiter;
+        this.writeLimiter = writeLimiter;
+    }
+
+    public ConcurrencyLimiter getReadLimiter() {
+        return readLimiter;
+    }
+
+    public ConcurrencyLimiter getWriteLimiter() {
+        return writeLimiter;
+    }
+
+    private <T> T limited(ConcurrencyLimiter limiter, Supplier<T> operation) {
+        if (holdsPermit.get() || isInTransaction()) {
+            return operation.get();
+        }
+        return limiter.execute(() -> {
+            holdsPermit.set(Boolean.TRUE);
+            try {
+                return operation.get();
+            } finally {
+                holdsPermit.set(Boolean.FALSE);
+            }
+        });
+    }
+
+    @Override
+    public <T> T inTransaction(Function<UserDAO, T> work) {
+        return limited(writeLimiter, () -> super.inTransaction(work));
+    }
+
+    @Override
+    public Long create(User user) {
+        return limited(writeLimiter, () -> super.create(user));
+    }
+
+    @Override
+    public List<UpsertResult> upsertAll(List<User> users) {
+        return limited(writeLimiter, () -> super.upsertAll(users));
+    }
+
+    @Override
+    public void update(User user) {
+        limited(writeLimiter, () -> {
+            super.update(user);
+            return null;
+        });
+    }
+
+    @Override
+    public void updateAll(Collection<User> users) {
+        limited(writeLimiter, () -> {
+            super.updateAll(users);
+            return null;
+        });
+    }
+
+    @Override
+    public void delete(Long id) {
+        limited(writeLimiter, () -> {
+            super.delete(id);
+            return null;
+        });
+    }
+
+    @Override
+    public User read(Long id) {
+        return limited(readLimiter, () -> super.read(id));
+    }
+
+    @Override
+    public List<User> readAll() {
+        return limited(readLimiter, super::readAll);
+    }
+
+    @Override
+    public List<User> readByIds(Collection<Long> ids) {
+        return limited(readLimiter, () -> super.readByIds(ids));
+    }
+
+    @Override
+    public Set<String> findExistingEmails(Collection<String> emails) {
+        return limited(readLimiter, () -> super.findExistingEmails(emails));
+    }
+
+    @Override
+    public List<String> findEmailsAfter(String afterEmail, int limit) {
+        return limited(readLimiter, () -> super.findEmailsAfter(afterEmail, limit));
+    }
+
+    @Override
+    public List<User> search(UserQuery query) {
+        return limited(readLimiter, () -> super.search(query));
+    }
+
+    @Override
+    public List<User> changesSince(UserChangeCursor cursor, int limit, Duration safetyLag) {
+        return limited(readLimiter, () -> super.changesSince(cursor, limit, safetyLag));
+    }
+
+    @Override
+    public long count() {
+        return limited(readLimiter, super::count);
+    }
+
+    @Override
+    public long countApproximate() {
+        return limited(readLimiter, super::countApproximate);
+    }
+
+    @Override
+    public List<User> searchByName(String query, int limit) {
+        return limited(readLimiter, () -> super.searchByName(query, limit));
+    }
+
+    @Override
+    public Map<Integer, Long> countByAge() {
+        return limited(readLimiter, super::countByAge);
+    }
+
+    @Override
+    public Map<LocalDate, Long> countByCreationDate() {
+        return limited(readLimiter, super::countByCreationDate);
+    }
+
+    @Override
+    public Map<LocalDate, Long> countByCreationDate(LocalDate from, LocalDate to) {
+        return limited(readLimiter, () -> super.countByCreationDate(from, to));
+    }
+}
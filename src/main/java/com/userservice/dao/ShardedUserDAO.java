@@ -0,0 +1,529 @@
+package com.userservice.dao;
+
+import com.userservice.entity.User;
+import com.userservice.util.HibernateUtil;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.exception.ConstraintViolationException;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Пользователи, распределенные по нескольким базам PostgreSQL (шардам).
+ * <p>
+ * Номер шарда хранится в старших битах ID: последовательность users_id_seq шарда N
+ * выдает значения из диапазона [N << SHARD_SHIFT, (N + 1) << SHARD_SHIFT), поэтому операции
+ * по ID маршрутизируются без обращения к справочнику. Новый пользователь попадает в шард
+ * по хешу email. Глобальная уникальность email и поиск по email обеспечиваются таблицей
+ * user_email_index в шарде 0, которая не зависит от размещения самих пользователей.
+ * <p>
+ * Класс не наследует {@link UserDAO}, поэтому UserService и Main пока не могут работать
+ * через него: шардированное хранилище используется напрямую.
+ */
+public class ShardedUserDAO implements AutoCloseable {
+    private static final Logger logger = LogManager.getLogger(ShardedUserDAO.class);
+    public static final int SHARD_SHIFT = 48;
+    public static final int MAX_SHARDS = 1 << (63 - SHARD_SHIFT);
+    private static final int STREAM_PAGE_SIZE = 500;
+    // Незакрытый Stream, который никто не читает дольше этого срока, считается брошенным
+    private static final long STREAM_IDLE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final long RESERVED_USER_ID = 0L;
+    // Резерв email живет миллисекунды; более старый остался от процесса, упавшего посреди create/update
+    public static final Duration STALE_RESERVATION_AGE = Duration.ofMinutes(10);
+
+    private final List<SessionFactory> sessionFactories;
+    private final List<UserDAO> shards;
+    private final SessionFactory directory;
+    private final ExecutorService executor;
+    private final ExecutorService streamExecutor;
+
+    public ShardedUserDAO(List<SessionFactory> sessionFactories) {
+        if (sessionFactories.isEmpty() || sessionFactories.size() > MAX_SHARDS) {
+            throw new IllegalArgumentException("Shard count must be between 1 and " + MAX_SHARDS);
+        }
+        this.sessionFactories = new ArrayList<>(sessionFactories);
+        this.shards = new ArrayList<>();
+        for (SessionFactory factory : sessionFactories) {
+            shards.add(new UserDAO(factory));
+        }
+        this.directory = sessionFactories.get(0);
+        this.executor = Executors.newFixedThreadPool(sessionFactories.size(), runnable -> {
+            Thread thread = new Thread(runnable, "user-shard-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Курсоры streamAll живут столько, сколько читается Stream, поэтому у них отдельный
+        // пул: медленные или брошенные потоки не занимают потоки count()
+        this.streamExecutor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "user-shard-cursor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        initializeSchema();
+        releaseStaleReservations(STALE_RESERVATION_AGE);
+    }
+
+    /**
+     * Создает шарды по списку URL из системного свойства db.shard.urls или переменной DB_SHARD_URLS
+     * (через запятую, в порядке номеров шардов).
+     */
+    public static ShardedUserDAO fromConfiguredShards() {
+        String urls = System.getProperty("db.shard.urls");
+        if (urls == null || urls.isEmpty()) {
+            urls = System.getenv("DB_SHARD_URLS");
+        }
+        if (urls == null || urls.isEmpty()) {
+            throw new IllegalStateException("Shard URLs are not configured (db.shard.urls or DB_SHARD_URLS)");
+        }
+        List<SessionFactory> factories = new ArrayList<>();
+        for (String url : urls.split(",")) {
+            factories.add(HibernateUtil.buildSessionFactory(url.trim()));
+        }
+        return new ShardedUserDAO(factories);
+    }
+
+    public int shardCount() {
+        return shards.size();
+    }
+
+    public static int shardOf(long id) {
+        return (int) (id >>> SHARD_SHIFT);
+    }
+
+    public int shardForEmail(String email) {
+        return Math.floorMod(normalizeEmail(email).hashCode() * 0x9E3779B9, shards.size());
+    }
+
+    public UserDAO shard(int index) {
+        return shards.get(index);
+    }
+
+    public Long create(User user) {
+        String email = normalizeEmail(user.getEmail());
+        reserveEmail(email);
+        UserDAO shard = shards.get(shardForEmail(email));
+        Long id = null;
+        try {
+            id = shard.create(user);
+            assignEmail(email, id);
+            return id;
+        } catch (RuntimeException e) {
+            if (id != null) {
+                // Пользователь без записи в user_email_index не находился бы по email
+                // и не защищал бы свой адрес, поэтому вставка в шард откатывается
+                discardCreated(shard, id);
+            }
+            releaseEmail(email, RESERVED_USER_ID);
+            throw e;
+        }
+    }
+
+    private void discardCreated(UserDAO shard, Long id) {
+        try {
+            shard.delete(id);
+        } catch (RuntimeException e) {
+            logger.error("Failed to remove user {} after its email index entry could not be written", id, e);
+        }
+    }
+
+    public User read(Long id) {
+        return shardFor(id).read(id);
+    }
+
+    public User readByEmail(String email) {
+        Long id = inDirectory(session -> {
+            Number userId = (Number) session
+                    .createNativeQuery("SELECT user_id FROM user_email_index WHERE email = :email")
+                    .setParameter("email", normalizeEmail(email))
+                    .uniqueResult();
+            return userId == null ? null : userId.longValue();
+        });
+        if (id == null || id == RESERVED_USER_ID) {
+            return null;
+        }
+        return read(id);
+    }
+
+    public void update(User user) {
+        UserDAO shard = shardFor(user.getId());
+        User current = shard.read(user.getId());
+        if (current == null) {
+            throw new RuntimeException("User with ID " + user.getId() + " not found");
+        }
+
+        String oldEmail = normalizeEmail(current.getEmail());
+        String newEmail = normalizeEmail(user.getEmail());
+        if (oldEmail.equals(newEmail)) {
+            shard.update(user);
+            return;
+        }
+
+        reserveEmail(newEmail);
+        try {
+            shard.update(user);
+        } catch (RuntimeException e) {
+            releaseEmail(newEmail, RESERVED_USER_ID);
+            throw e;
+        }
+        assignEmail(newEmail, user.getId());
+        releaseEmail(oldEmail, user.getId());
+    }
+
+    public void delete(Long id) {
+        UserDAO shard = shardFor(id);
+        User current = shard.read(id);
+        if (current == null) {
+            throw new RuntimeException("User with ID " + id + " not found");
+        }
+        shard.delete(id);
+        releaseEmail(normalizeEmail(current.getEmail()), id);
+    }
+
+    /**
+     * Удаляет резервы email (user_id = 0) старше заданного возраста, оставшиеся после сбоя
+     * между резервированием и записью пользователя. Вызывается при создании DAO.
+     */
+    public int releaseStaleReservations(Duration olderThan) {
+        int released = inDirectory(session -> session
+                .createNativeQuery("DELETE FROM user_email_index WHERE user_id = :userId " +
+                        "AND reserved_at < now() - make_interval(secs => :seconds)")
+                .setParameter("userId", RESERVED_USER_ID)
+                .setParameter("seconds", (double) olderThan.getSeconds())
+                .executeUpdate());
+        if (released > 0) {
+            logger.warn("Released {} stale email reservations", released);
+        }
+        return released;
+    }
+
+    /**
+     * Число пользователей во всех шардах; шарды опрашиваются параллельно.
+     */
+    public long count() {
+        List<CompletableFuture<Long>> counts = new ArrayList<>();
+        for (UserDAO shard : shards) {
+            counts.add(CompletableFuture.supplyAsync(shard::count, executor));
+        }
+        try {
+            return counts.stream().mapToLong(CompletableFuture::join).sum();
+        } catch (CompletionException e) {
+            throw unwrap(e);
+        }
+    }
+
+    public List<User> readAll() {
+        try (Stream<User> users = streamAll()) {
+            return users.collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Потоковое слияние всех шардов в порядке (createdAt, id). Каждый шард читается постранично
+     * в своем потоке с keyset-пагинацией, в памяти держится не больше двух страниц на шард.
+     * Stream нужно закрыть, чтобы остановить чтение при досрочном завершении; курсор, страницу
+     * которого не забирают дольше минуты, останавливается сам, и Stream завершается ошибкой.
+     */
+    public Stream<User> streamAll() {
+        List<ShardCursor> cursors = new ArrayList<>();
+        for (UserDAO shard : shards) {
+            ShardCursor cursor = new ShardCursor(shard);
+            cursors.add(cursor);
+            streamExecutor.execute(cursor::produce);
+        }
+        MergingIterator iterator = new MergingIterator(cursors);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator,
+                        Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> cursors.forEach(ShardCursor::cancel));
+    }
+
+    private static final Comparator<User> MERGE_ORDER = Comparator
+            .comparing(User::getCreatedAt)
+            .thenComparing(User::getId);
+
+    private static class ShardCursor {
+        private static final List<User> END = Collections.emptyList();
+
+        private final UserDAO shard;
+        private final BlockingQueue<List<User>> pages = new ArrayBlockingQueue<>(2);
+        private volatile boolean cancelled;
+        private volatile RuntimeException failure;
+        private volatile boolean idleTimeout;
+        private Iterator<User> current = Collections.emptyIterator();
+        private boolean finished;
+
+        private ShardCursor(UserDAO shard) {
+            this.shard = shard;
+        }
+
+        private void produce() {
+            try {
+                UserQuery query = new UserQuery()
+                        .orderBy(UserQuery.SortField.CREATED_AT, false)
+                        .limit(STREAM_PAGE_SIZE);
+                while (!cancelled) {
+                    List<User> page = shard.search(query);
+                    if (!page.isEmpty() && !offer(page)) {
+                        return;
+                    }
+                    if (page.size() < STREAM_PAGE_SIZE) {
+                        break;
+                    }
+                    query = new UserQuery()
+                            .orderBy(UserQuery.SortField.CREATED_AT, false)
+                            .limit(STREAM_PAGE_SIZE)
+                            .after(page.get(page.size() - 1));
+                }
+            } catch (RuntimeException e) {
+                failure = e;
+            }
+            offer(END);
+        }
+
+        private boolean offer(List<User> page) {
+            long deadline = System.currentTimeMillis() + STREAM_IDLE_TIMEOUT_MILLIS;
+            try {
+                while (!cancelled) {
+                    if (pages.offer(page, 100, TimeUnit.MILLISECONDS)) {
+                        return true;
+                    }
+                    if (System.currentTimeMillis() > deadline) {
+                        logger.warn("Shard stream was not read for {} ms, stopping its cursor",
+                                STREAM_IDLE_TIMEOUT_MILLIS);
+                        idleTimeout = true;
+                        cancel();
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return false;
+        }
+
+        private User next() {
+            while (!current.hasNext()) {
+                if (finished) {
+                    return null;
+                }
+                List<User> page;
+                try {
+                    page = pages.poll(100, TimeUnit.MILLISECONDS);
+                    if (page == null) {
+                        if (idleTimeout) {
+                            throw new IllegalStateException("Shard stream was abandoned for longer than "
+                                    + STREAM_IDLE_TIMEOUT_MILLIS + " ms and has been closed");
+                        }
+                        continue;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted while reading shard", e);
+                }
+                if (page == END) {
+                    finished = true;
+                    if (failure != null) {
+                        throw new RuntimeException("Failed to read shard", failure);
+                    }
+                    return null;
+                }
+                current = page.iterator();
+            }
+            return current.next();
+        }
+
+        private void cancel() {
+            cancelled = true;
+            pages.clear();
+        }
+    }
+
+    private static class MergingIterator implements Iterator<User> {
+        private static class Head {
+            private final User user;
+            private final ShardCursor cursor;
+
+            private Head(User user, ShardCursor cursor) {
+                this.user = user;
+                this.cursor = cursor;
+            }
+        }
+
+        private final PriorityQueue<Head> heads =
+                new PriorityQueue<>((a, b) -> MERGE_ORDER.compare(a.user, b.user));
+
+        private MergingIterator(List<ShardCursor> cursors) {
+            for (ShardCursor cursor : cursors) {
+                User first = cursor.next();
+                if (first != null) {
+                    heads.add(new Head(first, cursor));
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public User next() {
+            Head head = heads.poll();
+            if (head == null) {
+                throw new NoSuchElementException();
+            }
+            User following = head.cursor.next();
+            if (following != null) {
+                heads.add(new Head(following, head.cursor));
+            }
+            return head.user;
+        }
+    }
+
+    private UserDAO shardFor(Long id) {
+        if (id == null || id <= 0) {
+            throw new IllegalArgumentException("User ID must be positive");
+        }
+        int shard = shardOf(id);
+        if (shard >= shards.size()) {
+            throw new IllegalArgumentException("User ID " + id + " belongs to unknown shard " + shard);
+        }
+        return shards.get(shard);
+    }
+
+    private void initializeSchema() {
+        inDirectory(session -> session.createNativeQuery(
+                        "CREATE TABLE IF NOT EXISTS user_email_index (" +
+                                "email varchar(100) PRIMARY KEY, user_id bigint NOT NULL, " +
+                                "reserved_at timestamp NOT NULL DEFAULT now())")
+                .executeUpdate());
+        inDirectory(session -> session.createNativeQuery(
+                        "ALTER TABLE user_email_index ADD COLUMN IF NOT EXISTS " +
+                                "reserved_at timestamp NOT NULL DEFAULT now()")
+                .executeUpdate());
+
+        for (int index = 0; index < sessionFactories.size(); index++) {
+            long base = (long) index << SHARD_SHIFT;
+            long first = base + 1;
+            long max = base + (1L << SHARD_SHIFT) - 1;
+            try (Session session = sessionFactories.get(index).openSession()) {
+                Transaction transaction = session.beginTransaction();
+                String sequence = (String) session
+                        .createNativeQuery("SELECT pg_get_serial_sequence('users', 'id')")
+                        .uniqueResult();
+                // Не откатываем последовательность назад, если в шарде уже есть пользователи
+                Number restart = (Number) session
+                        .createNativeQuery("SELECT GREATEST(:first, COALESCE(MAX(id) + 1, 0)) FROM users")
+                        .setParameter("first", first)
+                        .uniqueResult();
+                session.createNativeQuery("ALTER SEQUENCE " + sequence +
+                        " MINVALUE " + first + " MAXVALUE " + max +
+                        " START WITH " + first + " RESTART WITH " + restart.longValue()).executeUpdate();
+                transaction.commit();
+            }
+        }
+        logger.info("Sharded user storage initialized with {} shards", shards.size());
+    }
+
+    private void reserveEmail(String email) {
+        try {
+            inDirectory(session -> session
+                    .createNativeQuery("INSERT INTO user_email_index (email, user_id) VALUES (:email, :userId)")
+                    .setParameter("email", email)
+                    .setParameter("userId", RESERVED_USER_ID)
+                    .executeUpdate());
+        } catch (RuntimeException e) {
+            if (!isConstraintViolation(e)) {
+                throw e;
+            }
+            logger.error("Constraint violation while reserving email: {}", e.getMessage());
+            throw new RuntimeException("User with this email already exists", e);
+        }
+    }
+
+    private void assignEmail(String email, Long id) {
+        inDirectory(session -> session
+                .createNativeQuery("UPDATE user_email_index SET user_id = :userId WHERE email = :email")
+                .setParameter("email", email)
+                .setParameter("userId", id)
+                .executeUpdate());
+    }
+
+    private void releaseEmail(String email, Long id) {
+        try {
+            inDirectory(session -> session
+                    .createNativeQuery("DELETE FROM user_email_index WHERE email = :email AND user_id = :userId")
+                    .setParameter("email", email)
+                    .setParameter("userId", id)
+                    .executeUpdate());
+        } catch (RuntimeException e) {
+            logger.error("Failed to release email index entry for user {}", id, e);
+        }
+    }
+
+    private <T> T inDirectory(Function<Session, T> work) {
+        Session session = directory.openSession();
+        Transaction transaction = null;
+        try {
+            transaction = session.beginTransaction();
+            T result = work.apply(session);
+            transaction.commit();
+            return result;
+        } catch (RuntimeException e) {
+            if (transaction != null && transaction.isActive()) {
+                transaction.rollback();
+            }
+            throw e;
+        } finally {
+            session.close();
+        }
+    }
+
+    // Запросы через Query API оборачивают ConstraintViolationException в PersistenceException
+    private static boolean isConstraintViolation(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConstraintViolationException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String normalizeEmail(String email) {
+        return email == null ? "" : email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static RuntimeException unwrap(CompletionException e) {
+        return e.getCause() instanceof RuntimeException
+                ? (RuntimeException) e.getCause()
+                : new RuntimeException(e.getCause());
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        streamExecutor.shutdownNow();
+    }
+}
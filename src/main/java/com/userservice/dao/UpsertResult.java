@@ -0,0 +1,37 @@
+package com.userservice.dao;
+
+/**
+ * Результат upsert одной записи: ID пользователя и была ли строка вставлена (иначе обновлена).
+ */
+public class UpsertResult {
+    private final Long id;
+    private final String email;
+    private final boolean inserted;
+
+    public UpsertResult(Long id, String email, boolean inserted) {
+        this.id = id;
+        this.email = email;
+        this.inserted = inserted;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public boolean isInserted() {
+        return inserted;
+    }
+
+    @Override
+    public String toString() {
+        return "UpsertResult{" +
+                "id=" + id +
+                ", email='" + email + '\'' +
+                ", inserted=" + inserted +
+                '}';
+    }
+}
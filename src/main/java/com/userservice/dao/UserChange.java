@@ -0,0 +1,66 @@
+package com.userservice.dao;
+
+import com.userservice.entity.User;
+
+/**
+ * Изменение пользователя, зафиксированное в базе. Передается слушателям
+ * {@link UserChangeListener} после коммита транзакции.
+ * before и after - отсоединенные копии состояния до и после изменения
+ * (before равен null для CREATED, after - для DELETED).
+ */
+public class UserChange {
+
+    public enum Kind {
+        CREATED,
+        UPDATED,
+        DELETED
+    }
+
+    private final Kind kind;
+    private final Long id;
+    private final User before;
+    private final User after;
+
+    public UserChange(Kind kind, Long id, User before, User after) {
+        this.kind = kind;
+        this.id = id;
+        this.before = before;
+        this.after = after;
+    }
+
+    public static UserChange created(User after) {
+        return new UserChange(Kind.CREATED, after.getId(), null, after);
+    }
+
+    public static UserChange updated(User before, User after) {
+        return new UserChange(Kind.UPDATED, after.getId(), before, after);
+    }
+
+    public static UserChange deleted(User before) {
+        return new UserChange(Kind.DELETED, before.getId(), before, null);
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public User getBefore() {
+        return before;
+    }
+
+    public User getAfter() {
+        return after;
+    }
+
+    @Override
+    public String toString() {
+        return "UserChange{" +
+                "kind=" + kind +
+                ", id=" + id +
+                '}';
+    }
+}
@@ -0,0 +1,66 @@
+package com.userservice.dao;
+
+import com.userservice.entity.User;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Objects;
+
+/**
+ * Позиция в потоке изменений пользователей: (updated_at, id) последней полученной записи.
+ * Строковая форма ({@link #toString()}) передается клиенту и принимается обратно через {@link #parse}.
+ */
+public final class UserChangeCursor {
+    public static final UserChangeCursor START = new UserChangeCursor(LocalDateTime.of(1970, 1, 1, 0, 0), 0L);
+
+    private final LocalDateTime updatedAt;
+    private final long id;
+
+    public UserChangeCursor(LocalDateTime updatedAt, long id) {
+        this.updatedAt = Objects.requireNonNull(updatedAt, "updatedAt");
+        this.id = id;
+    }
+
+    public static UserChangeCursor after(User user) {
+        return new UserChangeCursor(user.getUpdatedAt(), user.getId());
+    }
+
+    public static UserChangeCursor parse(String token) {
+        int separator = token == null ? -1 : token.lastIndexOf('/');
+        if (separator <= 0) {
+            throw new IllegalArgumentException("Invalid change cursor: " + token);
+        }
+        try {
+            return new UserChangeCursor(LocalDateTime.parse(token.substring(0, separator)),
+                    Long.parseLong(token.substring(separator + 1)));
+        } catch (DateTimeParseException | NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid change cursor: " + token, e);
+        }
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        UserChangeCursor that = (UserChangeCursor) o;
+        return id == that.id && updatedAt.equals(that.updatedAt);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(updatedAt, id);
+    }
+
+    @Override
+    public String toString() {
+        return updatedAt + "/" + id;
+    }
+}
@@ -0,0 +1,11 @@
+package com.userservice.dao;
+
+/**
+ * Получает изменения пользователей от {@link UserDAO} после успешного коммита.
+ * Вызывается в потоке, выполнившем транзакцию, поэтому реализация должна быть быстрой и потокобезопасной.
+ */
+@FunctionalInterface
+public interface UserChangeListener {
+
+    void onChange(UserChange change);
+}
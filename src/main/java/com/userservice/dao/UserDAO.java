@@ -1,19 +1,66 @@
 package com.userservice.dao;
 
 import com.userservice.entity.User;
+import com.userservice.entity.UserOutboxEvent;
+import com.userservice.invalidation.UserInvalidation;
+import com.userservice.partition.PartitionManager;
 import com.userservice.util.HibernateUtil;
+import com.userservice.util.SlowQueryConnectionProvider;
+import com.userservice.util.SqlStatementCounter;
+import org.hibernate.NonUniqueObjectException;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.Transaction;
+import org.hibernate.engine.spi.EntityEntry;
+import org.hibernate.engine.spi.SessionImplementor;
 import org.hibernate.exception.ConstraintViolationException;
+import org.hibernate.query.NativeQuery;
+import org.hibernate.query.Query;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import javax.persistence.LockModeType;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 public class UserDAO {
     private static final Logger logger = LogManager.getLogger(UserDAO.class);
+    private static final Logger slowLog = LogManager.getLogger(SlowQueryConnectionProvider.LOGGER_NAME);
     private final SessionFactory sessionFactory;
+    private final List<UserChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+    // Единица работы (сессия и накопленные изменения), привязанная к потоку
+    private final ThreadLocal<UnitOfWork> currentUnitOfWork = new ThreadLocal<>();
+    private volatile boolean outboxEnabled;
+    private volatile String notifyChannel;
+    private volatile boolean softDelete;
+    private final String nodeId = UUID.randomUUID().toString().substring(0, 8);
+    private volatile long slowOperationNanos = Long.getLong("slow.operation.threshold.ms", 500) * 1_000_000;
+    // 3 параметра на строку; держимся далеко от лимита 32767 параметров протокола PostgreSQL
+    private static final int UPSERT_CHUNK_SIZE = 500;
+
+    private static class UnitOfWork {
+        private final Session session;
+        private final List<UserChange> changes = new ArrayList<>();
+
+        private UnitOfWork(Session session) {
+            this.session = session;
+        }
+    }
 
     public UserDAO() {
         this.sessionFactory = HibernateUtil.getSessionFactory();
@@ -23,137 +70,754 @@ public class UserDAO {
         this.sessionFactory = sessionFactory;
     }
 
-    public Long create(User user) {
+    public void addChangeListener(UserChangeListener listener) {
+        changeListeners.add(listener);
+    }
+
+    public void removeChangeListener(UserChangeListener listener) {
+        changeListeners.remove(listener);
+    }
+
+    /**
+     * Включает запись событий изменения в таблицу user_outbox в той же транзакции, что и само изменение.
+     */
+    public void setOutboxEnabled(boolean outboxEnabled) {
+        this.outboxEnabled = outboxEnabled;
+    }
+
+    public boolean isOutboxEnabled() {
+        return outboxEnabled;
+    }
+
+    /**
+     * Включает мягкое удаление: delete() только выставляет deleted_at, строку позже удаляет
+     * {@link com.userservice.job.TombstonePurger}. Чтения DAO удаленных пользователей не видят
+     * в любом режиме; email удаленного пользователя остается занятым до очистки.
+     */
+    public void setSoftDelete(boolean softDelete) {
+        this.softDelete = softDelete;
+    }
+
+    public boolean isSoftDelete() {
+        return softDelete;
+    }
+
+    /**
+     * Включает рассылку сообщений об изменениях через pg_notify в канал channel (null - выключить).
+     * Сообщение отправляется в транзакции изменения и доставляется другим узлам только после коммита.
+     */
+    public void setChangeNotifications(String channel) {
+        this.notifyChannel = channel;
+    }
+
+    /**
+     * Единицы работы дольше threshold пишутся в журнал медленных запросов (см. SlowQueryConnectionProvider).
+     */
+    public void setSlowOperationThreshold(Duration threshold) {
+        this.slowOperationNanos = threshold.toNanos();
+    }
+
+    /**
+     * Идентификатор этого экземпляра DAO в сообщениях pg_notify, чтобы узел мог пропускать свои же изменения.
+     */
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * Выполняет несколько операций DAO в одной сессии и одной транзакции.
+     * Вложенные вызовы (в том числе обычные методы DAO внутри work) используют
+     * уже открытую сессию; коммит выполняется один раз при выходе из внешнего вызова.
+     */
+    public <T> T inTransaction(Function<UserDAO, T> work) {
+        if (currentUnitOfWork.get() != null) {
+            return work.apply(this);
+        }
+
+        long started = System.nanoTime();
         Session session = sessionFactory.openSession();
+        session.enableFilter(User.ACTIVE_FILTER);
         Transaction transaction = null;
+        UnitOfWork unitOfWork = new UnitOfWork(session);
+        currentUnitOfWork.set(unitOfWork);
         try {
             transaction = session.beginTransaction();
-            
-            Long id = (Long) session.save(user);
+
+            T result = work.apply(this);
             transaction.commit();
-            
-            logger.info("User created successfully with ID: {}", id);
-            return id;
-        } catch (ConstraintViolationException e) {
-            if (transaction != null) {
+
+            currentUnitOfWork.remove();
+            publishChanges(unitOfWork.changes);
+            return result;
+        } catch (RuntimeException e) {
+            if (transaction != null && transaction.isActive()) {
                 transaction.rollback();
             }
+            throw e;
+        } finally {
+            currentUnitOfWork.remove();
+            session.close();
+            long elapsed = System.nanoTime() - started;
+            if (elapsed >= slowOperationNanos) {
+                slowLog.warn("Slow DAO operation {} took {} ms", callerName(), elapsed / 1_000_000);
+            }
+        }
+    }
+
+    /**
+     * Метод, открывший единицу работы (вызывается только для медленных операций).
+     */
+    private static String callerName() {
+        return StackWalker.getInstance().walk(frames -> frames
+                .filter(frame -> !frame.getMethodName().equals("inTransaction")
+                        && !frame.getMethodName().equals("callerName")
+                        && !frame.getMethodName().startsWith("lambda$")
+                        && !frame.getClassName().equals(LimitedUserDAO.class.getName())
+                        && !frame.getClassName().equals(ConcurrencyLimiter.class.getName())
+                        && !frame.getClassName().equals(SqlStatementCounter.class.getName()))
+                .findFirst()
+                .map(frame -> frame.getClassName().substring(frame.getClassName().lastIndexOf('.') + 1)
+                        + "." + frame.getMethodName())
+                .orElse("unknown"));
+    }
+
+    public boolean isInTransaction() {
+        return currentUnitOfWork.get() != null;
+    }
+
+    protected Session currentSession() {
+        UnitOfWork unitOfWork = currentUnitOfWork.get();
+        if (unitOfWork == null) {
+            throw new IllegalStateException("No active unit of work");
+        }
+        return unitOfWork.session;
+    }
+
+    /**
+     * Нужно ли собирать копии состояния для слушателей. Без слушателей DAO не делает лишних копий и запросов.
+     */
+    protected boolean tracksChanges() {
+        return !changeListeners.isEmpty();
+    }
+
+    protected void recordChange(UserChange change) {
+        UnitOfWork unitOfWork = currentUnitOfWork.get();
+        if (unitOfWork != null && tracksChanges()) {
+            unitOfWork.changes.add(change);
+        }
+    }
+
+    /**
+     * Передает изменения слушателям. Вызывается после коммита; изменения, сделанные
+     * в обход DAO (например, пакетными заданиями), можно опубликовать тем же методом.
+     */
+    public void publishChanges(List<UserChange> changes) {
+        if (changes.isEmpty()) {
+            return;
+        }
+        for (UserChangeListener listener : changeListeners) {
+            for (UserChange change : changes) {
+                try {
+                    listener.onChange(change);
+                } catch (RuntimeException e) {
+                    logger.error("User change listener failed for {}", change, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Запись в outbox и уведомление pg_notify - обе в текущей транзакции, если включены.
+     */
+    private void writeChangeEvents(Session session, UserChange.Kind kind, User user) {
+        if (outboxEnabled) {
+            session.persist(new UserOutboxEvent(user.getId(), kind.name(), UserOutboxEvent.toPayload(user)));
+        }
+        String channel = notifyChannel;
+        if (channel != null) {
+            session.createNativeQuery("SELECT 1 FROM pg_notify(:channel, :payload)")
+                    .setParameter("channel", channel)
+                    .setParameter("payload", UserInvalidation.format(kind, user.getId(), nodeId))
+                    .getSingleResult();
+        }
+    }
+
+    /**
+     * Состояние сущности на момент загрузки в текущую сессию (без учета несохраненных изменений).
+     */
+    private User loadedState(Session session, User entity) {
+        EntityEntry entry = ((SessionImplementor) session).getPersistenceContextInternal().getEntry(entity);
+        if (entry == null || entry.getLoadedState() == null) {
+            return new User(entity);
+        }
+        User copy = new User();
+        entry.getPersister().setPropertyValues(copy, entry.getLoadedState());
+        copy.setId((Long) entry.getId());
+        return copy;
+    }
+
+    public Long create(User user) {
+        try {
+            return inTransaction(dao -> {
+                Long id = (Long) currentSession().save(user);
+                writeChangeEvents(currentSession(), UserChange.Kind.CREATED, user);
+                if (tracksChanges()) {
+                    recordChange(UserChange.created(new User(user)));
+                }
+
+                logger.info("User created successfully with ID: {}", id);
+                return id;
+            });
+        } catch (ConstraintViolationException e) {
             logger.error("Constraint violation while creating user: {}", e.getMessage());
             throw new RuntimeException("User with this email already exists", e);
         } catch (Exception e) {
-            if (transaction != null) {
-                transaction.rollback();
-            }
             logger.error("Error creating user", e);
             throw new RuntimeException("Failed to create user", e);
-        } finally {
-            session.close();
         }
     }
 
-    public User read(Long id) {
-        Session session = sessionFactory.openSession();
-        Transaction transaction = null;
+    /**
+     * Создает пользователя или обновляет имя и возраст существующего с тем же email
+     * одним оператором INSERT ... ON CONFLICT (email) DO UPDATE, без гонки между проверкой и записью.
+     */
+    public UpsertResult upsertByEmail(User user) {
+        return upsertAll(List.of(user)).get(0);
+    }
+
+    /**
+     * Пакетный upsert по email. Результаты возвращаются в порядке входного списка.
+     * Повторы одного email внутри пакета схлопываются (побеждает последний), так как
+     * PostgreSQL не позволяет одному оператору изменить строку дважды; такие элементы
+     * получают общий результат. Входным объектам проставляются id, createdAt и updatedAt.
+     * При секционированной таблице users уникального индекса по email нет, поэтому метод
+     * завершается UnsupportedOperationException.
+     */
+    public List<UpsertResult> upsertAll(List<User> users) {
+        if (PartitionManager.isEnabled()) {
+            throw new UnsupportedOperationException("Upsert by email is not supported for partitioned users table");
+        }
+        if (users.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<String, User> byEmail = new LinkedHashMap<>();
+        for (User user : users) {
+            byEmail.put(user.getEmail(), user);
+        }
         try {
-            transaction = session.beginTransaction();
-            
-            User user = session.get(User.class, id);
-            transaction.commit();
-            
-            if (user != null) {
-                logger.info("User found with ID: {}", id);
-            } else {
-                logger.warn("User not found with ID: {}", id);
+            Map<String, UpsertResult> results = inTransaction(dao -> {
+                Map<String, UpsertResult> upserted = new HashMap<>();
+                List<User> unique = new ArrayList<>(byEmail.values());
+                for (int from = 0; from < unique.size(); from += UPSERT_CHUNK_SIZE) {
+                    upsertChunk(unique.subList(from, Math.min(from + UPSERT_CHUNK_SIZE, unique.size())), upserted);
+                }
+                return upserted;
+            });
+
+            List<UpsertResult> ordered = new ArrayList<>(users.size());
+            for (User user : users) {
+                UpsertResult result = results.get(user.getEmail());
+                User written = byEmail.get(user.getEmail());
+                if (written != user) {
+                    user.setId(written.getId());
+                    user.setCreatedAt(written.getCreatedAt());
+                    user.setUpdatedAt(written.getUpdatedAt());
+                }
+                ordered.add(result);
             }
-            return user;
+            logger.info("Upserted {} users", byEmail.size());
+            return ordered;
         } catch (Exception e) {
-            if (transaction != null) {
-                transaction.rollback();
+            logger.error("Error upserting {} users", users.size(), e);
+            throw new RuntimeException("Failed to upsert users", e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void upsertChunk(List<User> chunk, Map<String, UpsertResult> results) {
+        Session session = currentSession();
+        Map<String, User> before = new HashMap<>();
+        if (tracksChanges()) {
+            // Прежнее состояние нужно слушателям; строки блокируются до конца транзакции
+            List<User> existing = session
+                    .createQuery("FROM User u WHERE u.email IN (:emails)", User.class)
+                    .setParameterList("emails", chunk.stream().map(User::getEmail).collect(Collectors.toList()))
+                    .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                    .list();
+            for (User user : existing) {
+                before.put(user.getEmail(), new User(user));
+                // Строка будет изменена в обход сессии - копия в контексте устарела бы
+                session.detach(user);
+            }
+        }
+
+        StringBuilder sql = new StringBuilder("INSERT INTO users (name, email, age, created_at) VALUES ");
+        for (int i = 0; i < chunk.size(); i++) {
+            sql.append(i == 0 ? "" : ", ").append("(:name").append(i).append(", :email").append(i)
+                    .append(", :age").append(i).append(", LOCALTIMESTAMP)");
+        }
+        // Мягко удаленная строка с тем же email восстанавливается с новыми данными
+        sql.append(" ON CONFLICT (email) DO UPDATE SET name = EXCLUDED.name, age = EXCLUDED.age, deleted_at = NULL")
+                .append(" RETURNING id, email, created_at, updated_at, (xmax = 0) AS inserted");
+
+        NativeQuery<?> query = session.createNativeQuery(sql.toString());
+        for (int i = 0; i < chunk.size(); i++) {
+            User user = chunk.get(i);
+            query.setParameter("name" + i, user.getName())
+                    .setParameter("email" + i, user.getEmail())
+                    .setParameter("age" + i, user.getAge());
+        }
+
+        Map<String, User> byEmail = new HashMap<>();
+        chunk.forEach(user -> byEmail.put(user.getEmail(), user));
+        for (Object[] row : (List<Object[]>) query.list()) {
+            User user = byEmail.get((String) row[1]);
+            user.setId(((Number) row[0]).longValue());
+            user.setCreatedAt(((Timestamp) row[2]).toLocalDateTime());
+            user.setUpdatedAt(row[3] == null ? null : ((Timestamp) row[3]).toLocalDateTime());
+            boolean inserted = (Boolean) row[4];
+            results.put(user.getEmail(), new UpsertResult(user.getId(), user.getEmail(), inserted));
+
+            // Восстановленная строка (ее не было среди видимых) для слушателей - новый пользователь
+            User previous = before.get(user.getEmail());
+            boolean created = inserted || (tracksChanges() && previous == null);
+            UserChange.Kind kind = created ? UserChange.Kind.CREATED : UserChange.Kind.UPDATED;
+            writeChangeEvents(session, kind, user);
+            if (tracksChanges()) {
+                recordChange(created ? UserChange.created(new User(user)) : UserChange.updated(previous, new User(user)));
             }
+        }
+    }
+
+    public User read(Long id) {
+        try {
+            return inTransaction(dao -> {
+                User user = currentSession().get(User.class, id);
+                // Фильтр activeUsers не действует на get() по ключу
+                if (user != null && user.isDeleted()) {
+                    user = null;
+                }
+
+                if (user != null) {
+                    logger.info("User found with ID: {}", id);
+                } else {
+                    logger.warn("User not found with ID: {}", id);
+                }
+                return user;
+            });
+        } catch (Exception e) {
             logger.error("Error reading user with ID: {}", id, e);
             throw new RuntimeException("Failed to read user", e);
-        } finally {
-            session.close();
         }
     }
 
     public List<User> readAll() {
-        Session session = sessionFactory.openSession();
-        Transaction transaction = null;
         try {
-            transaction = session.beginTransaction();
-            
-            List<User> users = session.createQuery("FROM User", User.class).list();
-            transaction.commit();
-            
-            logger.info("Retrieved {} users", users.size());
-            return users;
+            return inTransaction(dao -> {
+                List<User> users = currentSession().createQuery("FROM User", User.class).list();
+
+                logger.info("Retrieved {} users", users.size());
+                return users;
+            });
         } catch (Exception e) {
-            if (transaction != null) {
-                transaction.rollback();
-            }
             logger.error("Error reading all users", e);
             throw new RuntimeException("Failed to read all users", e);
-        } finally {
-            session.close();
         }
     }
 
     public void update(User user) {
-        Session session = sessionFactory.openSession();
-        Transaction transaction = null;
         try {
-            transaction = session.beginTransaction();
-            
-            session.update(user);
-            transaction.commit();
-            
-            logger.info("User updated successfully with ID: {}", user.getId());
+            inTransaction(dao -> {
+                Session session = currentSession();
+                applyUpdate(session, user);
+                // Нарушение уникальности должно всплыть здесь, а не при коммите внешней транзакции
+                session.flush();
+
+                logger.info("User updated successfully with ID: {}", user.getId());
+                return null;
+            });
         } catch (ConstraintViolationException e) {
-            if (transaction != null) {
-                transaction.rollback();
-            }
             logger.error("Constraint violation while updating user: {}", e.getMessage());
             throw new RuntimeException("User with this email already exists", e);
         } catch (Exception e) {
-            if (transaction != null) {
-                transaction.rollback();
-            }
             logger.error("Error updating user with ID: {}", user.getId(), e);
             throw new RuntimeException("Failed to update user", e);
-        } finally {
-            session.close();
         }
     }
 
+    /**
+     * Обновляет несколько пользователей в одной транзакции с одним flush в конце,
+     * чтобы Hibernate отправил UPDATE-ы пакетами (hibernate.jdbc.batch_size).
+     */
+    public void updateAll(Collection<User> users) {
+        if (users.isEmpty()) {
+            return;
+        }
+        try {
+            inTransaction(dao -> {
+                Session session = currentSession();
+                for (User user : users) {
+                    applyUpdate(session, user);
+                }
+                session.flush();
+
+                logger.info("Batch updated {} users", users.size());
+                return null;
+            });
+        } catch (ConstraintViolationException e) {
+            logger.error("Constraint violation while updating users: {}", e.getMessage());
+            throw new RuntimeException("User with this email already exists", e);
+        } catch (Exception e) {
+            logger.error("Error updating {} users", users.size(), e);
+            throw new RuntimeException("Failed to update users", e);
+        }
+    }
+
+    private void applyUpdate(Session session, User user) {
+        if (tracksChanges()) {
+            User current = session.contains(user) ? user : session.get(User.class, user.getId());
+            // session.get не применяет фильтр activeUsers: мягко удаленный пользователь считается отсутствующим
+            if (current == null || current.isDeleted()) {
+                throw new RuntimeException("User with ID " + user.getId() + " not found");
+            }
+            User before = loadedState(session, current);
+            if (current != user) {
+                session.merge(user);
+            }
+            recordChange(UserChange.updated(before, new User(current)));
+        } else if (!session.contains(user)) {
+            try {
+                session.update(user);
+            } catch (NonUniqueObjectException e) {
+                // В этой единице работы уже загружен другой экземпляр с тем же ID
+                session.merge(user);
+            }
+        }
+        writeChangeEvents(session, UserChange.Kind.UPDATED, user);
+    }
+
     public void delete(Long id) {
-        Session session = sessionFactory.openSession();
-        Transaction transaction = null;
         try {
-            transaction = session.beginTransaction();
-            
-            User user = session.get(User.class, id);
-            if (user != null) {
-                session.delete(user);
-                transaction.commit();
+            inTransaction(dao -> {
+                Session session = currentSession();
+                // Один запрос вместо SELECT + DELETE: удаленная строка возвращается через RETURNING
+                String sql = softDelete
+                        ? "UPDATE users SET deleted_at = LOCALTIMESTAMP WHERE id = :id AND deleted_at IS NULL RETURNING *"
+                        : "DELETE FROM users WHERE id = :id AND deleted_at IS NULL RETURNING *";
+                @SuppressWarnings("unchecked")
+                List<User> deleted = session.createNativeQuery(sql)
+                        .addEntity(User.class)
+                        .setParameter("id", id)
+                        .getResultList();
+                if (deleted.isEmpty()) {
+                    logger.warn("User not found with ID: {}, nothing to delete", id);
+                    throw new RuntimeException("User with ID " + id + " not found");
+                }
+                User user = deleted.get(0);
+                if (tracksChanges()) {
+                    recordChange(UserChange.deleted(loadedState(session, user)));
+                }
+                // Строка удалена или скрыта: сущность не должна попасть в flush этой единицы работы
+                session.evict(user);
+                writeChangeEvents(session, UserChange.Kind.DELETED, user);
+
                 logger.info("User deleted successfully with ID: {}", id);
+                return null;
+            });
+        } catch (RuntimeException e) {
+            logger.error("Error deleting user with ID: {}", id, e);
+            throw e;
+        }
+    }
+
+    public List<User> readByIds(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        try {
+            return inTransaction(dao -> currentSession()
+                    .createQuery("FROM User u WHERE u.id IN (:ids)", User.class)
+                    .setParameterList("ids", ids)
+                    .list());
+        } catch (Exception e) {
+            logger.error("Error reading {} users by ID", ids.size(), e);
+            throw new RuntimeException("Failed to read users", e);
+        }
+    }
+
+    /**
+     * Возвращает те из переданных email, которые уже заняты, одним запросом.
+     * Email мягко удаленных пользователей тоже считаются занятыми (уникальный индекс их держит).
+     */
+    @SuppressWarnings("unchecked")
+    public Set<String> findExistingEmails(Collection<String> emails) {
+        if (emails.isEmpty()) {
+            return new HashSet<>();
+        }
+        try {
+            return inTransaction(dao -> new HashSet<String>(currentSession()
+                    .createNativeQuery("SELECT email FROM users WHERE email IN (:emails)")
+                    .setParameterList("emails", emails)
+                    .list()));
+        } catch (Exception e) {
+            logger.error("Error checking {} emails", emails.size(), e);
+            throw new RuntimeException("Failed to check emails", e);
+        }
+    }
+
+    public boolean existsByEmail(String email) {
+        return !findExistingEmails(List.of(email)).isEmpty();
+    }
+
+    /**
+     * Страница email всех строк users после afterEmail в порядке email (keyset по уникальному индексу).
+     * В отличие от search, включает мягко удаленных пользователей: их email по-прежнему заняты.
+     * Первая страница - afterEmail = "".
+     */
+    public List<String> findEmailsAfter(String afterEmail, int limit) {
+        try {
+            return inTransaction(dao -> {
+                List<?> emails = currentSession()
+                        .createNativeQuery("SELECT email FROM users WHERE email > :after ORDER BY email LIMIT :limit")
+                        .setParameter("after", afterEmail)
+                        .setParameter("limit", limit)
+                        .list();
+                return emails.stream().map(String.class::cast).collect(Collectors.toList());
+            });
+        } catch (Exception e) {
+            logger.error("Error reading emails after {}", afterEmail, e);
+            throw new RuntimeException("Failed to read emails", e);
+        }
+    }
+
+    public List<User> search(UserQuery query) {
+        try {
+            return inTransaction(dao -> {
+                Map<String, Object> parameters = new HashMap<>();
+                String hql = buildSearchQuery(query, parameters);
+
+                Query<User> q = currentSession().createQuery(hql, User.class);
+                parameters.forEach(q::setParameter);
+                q.setMaxResults(query.getLimit());
+                List<User> users = q.list();
+
+                logger.info("Search returned {} users", users.size());
+                return users;
+            });
+        } catch (Exception e) {
+            logger.error("Error searching users", e);
+            throw new RuntimeException("Failed to search users", e);
+        }
+    }
+
+    static String buildSearchQuery(UserQuery query, Map<String, Object> parameters) {
+        StringBuilder hql = new StringBuilder("FROM User u WHERE 1 = 1");
+
+        if (query.getNamePrefix() != null && !query.getNamePrefix().isEmpty()) {
+            // Только префиксный LIKE без ведущего '%' может использовать индекс text_pattern_ops
+            hql.append(" AND u.name LIKE :namePrefix ESCAPE '!'");
+            parameters.put("namePrefix", escapeLike(query.getNamePrefix()) + "%");
+        }
+        if (query.getMinAge() != null) {
+            hql.append(" AND u.age >= :minAge");
+            parameters.put("minAge", query.getMinAge());
+        }
+        if (query.getMaxAge() != null) {
+            hql.append(" AND u.age <= :maxAge");
+            parameters.put("maxAge", query.getMaxAge());
+        }
+        if (query.getCreatedFrom() != null) {
+            hql.append(" AND u.createdAt >= :createdFrom");
+            parameters.put("createdFrom", query.getCreatedFrom());
+        }
+        if (query.getCreatedTo() != null) {
+            hql.append(" AND u.createdAt < :createdTo");
+            parameters.put("createdTo", query.getCreatedTo());
+        }
+
+        String sortProperty = "u." + query.getSortField().getProperty();
+        String comparison = query.isDescending() ? "<" : ">";
+        String direction = query.isDescending() ? " DESC" : " ASC";
+
+        if (query.hasAfter()) {
+            if (query.getSortField() == UserQuery.SortField.ID) {
+                hql.append(" AND u.id ").append(comparison).append(" :afterId");
             } else {
-                transaction.rollback();
-                logger.warn("User not found with ID: {}, nothing to delete", id);
-                throw new RuntimeException("User with ID " + id + " not found");
+                // Сравнение кортежей, как в changesSince: в отличие от раскрытого OR, PostgreSQL
+                // использует его как границу диапазона в составном индексе (поле, id)
+                hql.append(" AND (").append(sortProperty).append(", u.id) ").append(comparison)
+                        .append(" (:afterValue, :afterId)");
+                parameters.put("afterValue", query.getAfterValue());
             }
+            parameters.put("afterId", query.getAfterId());
+        }
+
+        hql.append(" ORDER BY ");
+        if (query.getSortField() != UserQuery.SortField.ID) {
+            hql.append(sortProperty).append(direction).append(", ");
+        }
+        hql.append("u.id").append(direction);
+        return hql.toString();
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("!", "!!").replace("%", "!%").replace("_", "!_");
+    }
+
+    /**
+     * Пользователи, измененные после позиции cursor, в порядке (updated_at, id).
+     * Возвращаются только строки старше safetyLag по часам базы: транзакция, начатая раньше,
+     * но закоммиченная позже, не должна оказаться позади уже выданного курсора.
+     * Мягко удаленные пользователи попадают в поток с заполненным deletedAt (до очистки),
+     * жесткие удаления - нет.
+     */
+    public List<User> changesSince(UserChangeCursor cursor, int limit, Duration safetyLag) {
+        try {
+            return inTransaction(dao -> currentSession()
+                    .createNativeQuery("SELECT * FROM users " +
+                            "WHERE updated_at < clock_timestamp() - make_interval(secs => :lagSeconds) " +
+                            "AND (updated_at, id) > (:updatedAt, :id) " +
+                            "ORDER BY updated_at, id LIMIT :limit", User.class)
+                    .setParameter("lagSeconds", safetyLag.toMillis() / 1000.0)
+                    .setParameter("updatedAt", cursor.getUpdatedAt())
+                    .setParameter("id", cursor.getId())
+                    .setParameter("limit", limit)
+                    .list());
         } catch (Exception e) {
-            if (transaction != null) {
-                transaction.rollback();
-            }
-            logger.error("Error deleting user with ID: {}", id, e);
-            if (e instanceof RuntimeException) {
-                throw e;
+            logger.error("Error reading user changes since {}", cursor, e);
+            throw new RuntimeException("Failed to read user changes", e);
+        }
+    }
+
+    public long count() {
+        try {
+            return inTransaction(dao -> currentSession()
+                    .createQuery("SELECT COUNT(u) FROM User u", Long.class)
+                    .uniqueResult());
+        } catch (Exception e) {
+            logger.error("Error counting users", e);
+            throw new RuntimeException("Failed to count users", e);
+        }
+    }
+
+    /**
+     * Оценка числа строк из статистики PostgreSQL (pg_class.reltuples) без сканирования таблицы.
+     * Для секционированной таблицы суммируются оценки секций. Мягко удаленные строки, которые
+     * {@link #count()} не видит, вычитаются по оценке частичного индекса idx_users_deleted_at.
+     * Точность зависит от давности последнего ANALYZE/autovacuum; если статистики еще нет,
+     * выполняется точный подсчет.
+     */
+    public long countApproximate() {
+        try {
+            Number estimate = inTransaction(dao -> (Number) currentSession()
+                    .createNativeQuery("WITH relations AS (SELECT CAST('users' AS regclass) AS oid " +
+                            "UNION ALL SELECT inhrelid FROM pg_inherits WHERE inhparent = CAST('users' AS regclass)) " +
+                            "SELECT CAST(CASE WHEN MIN(c.reltuples) < 0 THEN -1 ELSE SUM(c.reltuples) - " +
+                            "(SELECT COALESCE(SUM(GREATEST(i.reltuples, 0)), 0) FROM pg_index x " +
+                            "JOIN pg_class i ON i.oid = x.indexrelid WHERE i.relkind <> 'I' " +
+                            "AND x.indrelid IN (SELECT oid FROM relations) " +
+                            "AND pg_get_expr(x.indpred, x.indrelid) = '(deleted_at IS NOT NULL)') END AS bigint) " +
+                            "FROM pg_class c WHERE c.relkind <> 'p' AND c.oid IN (SELECT oid FROM relations)")
+                    .uniqueResult());
+            if (estimate == null || estimate.longValue() < 0) {
+                logger.debug("No planner statistics for users table yet, falling back to exact count");
+                return count();
             }
-            throw new RuntimeException("Failed to delete user", e);
-        } finally {
-            session.close();
+            return Math.max(estimate.longValue(), 0);
+        } catch (RuntimeException e) {
+            logger.error("Error estimating user count", e);
+            throw new RuntimeException("Failed to count users", e);
         }
     }
-}
 
+    /**
+     * Нечеткий поиск по имени через pg_trgm: похожие (оператор %) и содержащие подстроку имена,
+     * отсортированные по similarity. Оба условия обслуживаются GIN-индексом idx_users_name_trgm.
+     * Если расширение pg_trgm недоступно, выполняется поиск подстроки без учета регистра.
+     */
+    public List<User> searchByName(String query, int limit) {
+        String pattern = "%" + escapeLike(query) + "%";
+        try {
+            return inTransaction(dao -> currentSession()
+                    .createNativeQuery("SELECT * FROM users WHERE (name % :query OR name ILIKE :pattern ESCAPE '!') " +
+                            "AND deleted_at IS NULL " +
+                            "ORDER BY similarity(name, :query) DESC, id LIMIT :limit", User.class)
+                    .setParameter("query", query)
+                    .setParameter("pattern", pattern)
+                    .setParameter("limit", limit)
+                    .list());
+        } catch (RuntimeException e) {
+            logger.warn("Trigram search failed, falling back to substring search: {}", e.getMessage());
+        }
+
+        try {
+            return inTransaction(dao -> currentSession()
+                    .createQuery("FROM User u WHERE LOWER(u.name) LIKE LOWER(:pattern) ESCAPE '!' ORDER BY u.id", User.class)
+                    .setParameter("pattern", pattern)
+                    .setMaxResults(limit)
+                    .list());
+        } catch (Exception e) {
+            logger.error("Error searching users by name", e);
+            throw new RuntimeException("Failed to search users by name", e);
+        }
+    }
+
+    public Map<Integer, Long> countByAge() {
+        try {
+            return inTransaction(dao -> {
+                Map<Integer, Long> result = new TreeMap<>();
+                currentSession()
+                        .createQuery("SELECT u.age, COUNT(u) FROM User u GROUP BY u.age", Object[].class)
+                        .list()
+                        .forEach(row -> result.put((Integer) row[0], (Long) row[1]));
+                return result;
+            });
+        } catch (Exception e) {
+            logger.error("Error counting users by age", e);
+            throw new RuntimeException("Failed to count users by age", e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public Map<LocalDate, Long> countByCreationDate() {
+        try {
+            return inTransaction(dao -> {
+                Map<LocalDate, Long> result = new TreeMap<>();
+                List<Object[]> rows = currentSession()
+                        .createNativeQuery("SELECT CAST(created_at AS date), COUNT(*) FROM users " +
+                                "WHERE deleted_at IS NULL GROUP BY 1")
+                        .list();
+                rows.forEach(row -> result.put(((Date) row[0]).toLocalDate(), ((Number) row[1]).longValue()));
+                return result;
+            });
+        } catch (Exception e) {
+            logger.error("Error counting users by creation date", e);
+            throw new RuntimeException("Failed to count users by creation date", e);
+        }
+    }
+
+    /**
+     * Число пользователей по дням создания в диапазоне [from, to). Условие по created_at
+     * задано диапазоном без функций над столбцом, поэтому используется индекс, а в
+     * секционированной таблице (см. PartitionManager) читаются только секции нужных месяцев.
+     */
+    @SuppressWarnings("unchecked")
+    public Map<LocalDate, Long> countByCreationDate(LocalDate from, LocalDate to) {
+        try {
+            return inTransaction(dao -> {
+                Map<LocalDate, Long> result = new TreeMap<>();
+                List<Object[]> rows = currentSession()
+                        .createNativeQuery("SELECT CAST(created_at AS date), COUNT(*) FROM users " +
+                                "WHERE created_at >= :from AND created_at < :to AND deleted_at IS NULL GROUP BY 1")
+                        .setParameter("from", Timestamp.valueOf(from.atStartOfDay()))
+                        .setParameter("to", Timestamp.valueOf(to.atStartOfDay()))
+                        .list();
+                rows.forEach(row -> result.put(((Date) row[0]).toLocalDate(), ((Number) row[1]).longValue()));
+                return result;
+            });
+        } catch (Exception e) {
+            logger.error("Error counting users by creation date", e);
+            throw new RuntimeException("Failed to count users by creation date", e);
+        }
+    }
+}
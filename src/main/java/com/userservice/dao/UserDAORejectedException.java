@@ -0,0 +1,13 @@
+package com.userservice.dao;
+
+/**
+ * Запрос к базе отклонен ограничителем нагрузки, не дожидаясь соединения.
+ * Вызывающий код может повторить запрос позже или вернуть клиенту ошибку перегрузки.
+ */
+public class UserDAORejectedException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public UserDAORejectedException(String message) {
+        super(message);
+    }
+}
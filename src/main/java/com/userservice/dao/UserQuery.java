@@ -0,0 +1,165 @@
+package com.userservice.dao;
+
+import com.userservice.entity.User;
+
+import java.time.LocalDateTime;
+
+/**
+ * Критерии поиска пользователей для {@link UserDAO#search(UserQuery)}.
+ * Все фильтры необязательны; пагинация keyset-ная: следующая страница
+ * запрашивается через {@link #after(User)} с последним пользователем предыдущей.
+ */
+public class UserQuery {
+    public static final int DEFAULT_LIMIT = 50;
+    public static final int MAX_LIMIT = 1000;
+
+    public enum SortField {
+        ID("id"),
+        NAME("name"),
+        AGE("age"),
+        CREATED_AT("createdAt");
+
+        private final String property;
+
+        SortField(String property) {
+            this.property = property;
+        }
+
+        public String getProperty() {
+            return property;
+        }
+
+        Object valueOf(User user) {
+            switch (this) {
+                case NAME:
+                    return user.getName();
+                case AGE:
+                    return user.getAge();
+                case CREATED_AT:
+                    return user.getCreatedAt();
+                default:
+                    return user.getId();
+            }
+        }
+    }
+
+    private String namePrefix;
+    private Integer minAge;
+    private Integer maxAge;
+    private LocalDateTime createdFrom;
+    private LocalDateTime createdTo;
+    private SortField sortField = SortField.ID;
+    private boolean descending;
+    private int limit = DEFAULT_LIMIT;
+    private User after;
+
+    public UserQuery() {
+    }
+
+    /**
+     * Копия критериев (включая позицию keyset), которую можно менять независимо от исходной.
+     */
+    public UserQuery(UserQuery other) {
+        this.namePrefix = other.namePrefix;
+        this.minAge = other.minAge;
+        this.maxAge = other.maxAge;
+        this.createdFrom = other.createdFrom;
+        this.createdTo = other.createdTo;
+        this.sortField = other.sortField;
+        this.descending = other.descending;
+        this.limit = other.limit;
+        this.after = other.after;
+    }
+
+    public UserQuery nameStartsWith(String prefix) {
+        this.namePrefix = prefix;
+        return this;
+    }
+
+    public UserQuery ageBetween(Integer min, Integer max) {
+        this.minAge = min;
+        this.maxAge = max;
+        return this;
+    }
+
+    /**
+     * Диапазон даты создания: from включительно, to не включительно.
+     */
+    public UserQuery createdBetween(LocalDateTime from, LocalDateTime to) {
+        this.createdFrom = from;
+        this.createdTo = to;
+        return this;
+    }
+
+    public UserQuery orderBy(SortField field, boolean descending) {
+        if (field == null) {
+            throw new IllegalArgumentException("Sort field cannot be null");
+        }
+        this.sortField = field;
+        this.descending = descending;
+        return this;
+    }
+
+    public UserQuery limit(int limit) {
+        if (limit <= 0 || limit > MAX_LIMIT) {
+            throw new IllegalArgumentException("Limit must be between 1 and " + MAX_LIMIT);
+        }
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * Продолжает выборку после указанного пользователя (последнего на предыдущей странице).
+     */
+    public UserQuery after(User last) {
+        if (last == null || last.getId() == null) {
+            throw new IllegalArgumentException("Keyset position requires a persisted user");
+        }
+        this.after = last;
+        return this;
+    }
+
+    public String getNamePrefix() {
+        return namePrefix;
+    }
+
+    public Integer getMinAge() {
+        return minAge;
+    }
+
+    public Integer getMaxAge() {
+        return maxAge;
+    }
+
+    public LocalDateTime getCreatedFrom() {
+        return createdFrom;
+    }
+
+    public LocalDateTime getCreatedTo() {
+        return createdTo;
+    }
+
+    public SortField getSortField() {
+        return sortField;
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public boolean hasAfter() {
+        return after != null;
+    }
+
+    public Object getAfterValue() {
+        return after == null ? null : sortField.valueOf(after);
+    }
+
+    public Long getAfterId() {
+        return after == null ? null : after.getId();
+    }
+}
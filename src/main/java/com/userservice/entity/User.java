@@ -1,14 +1,30 @@
 package com.userservice.entity;
 
 import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.Filter;
+import org.hibernate.annotations.FilterDef;
+import org.hibernate.annotations.ResultCheckStyle;
+import org.hibernate.annotations.SQLUpdate;
+import org.hibernate.annotations.UpdateTimestamp;
 
 import javax.persistence.*;
+import java.io.Serializable;
 import java.time.LocalDateTime;
 import java.util.Objects;
 
 @Entity
 @Table(name = "users")
-public class User {
+@FilterDef(name = User.ACTIVE_FILTER)
+@Filter(name = User.ACTIVE_FILTER, condition = "deleted_at IS NULL")
+// Мягко удаленная строка не обновляется: UPDATE не затронет ее, и проверка числа строк даст ошибку.
+// Порядок столбцов - порядок свойств Hibernate (по алфавиту: age, email, name, updatedAt)
+@SQLUpdate(sql = "UPDATE users SET age = ?, email = ?, name = ?, updated_at = ? WHERE id = ? AND deleted_at IS NULL",
+        check = ResultCheckStyle.COUNT)
+public class User implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    /** Фильтр Hibernate, скрывающий мягко удаленных пользователей (включается в сессиях UserDAO). */
+    public static final String ACTIVE_FILTER = "activeUsers";
 
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -28,6 +44,15 @@ public class User {
     @CreationTimestamp
     private LocalDateTime createdAt;
 
+    // В базе значение выставляет триггер (db/schema.sql), в том числе для записей в обход Hibernate
+    @Column(name = "updated_at")
+    @UpdateTimestamp
+    private LocalDateTime updatedAt;
+
+    // Момент мягкого удаления; пишется только запросами UserDAO, поэтому обычный update не "воскресит" строку
+    @Column(name = "deleted_at", insertable = false, updatable = false)
+    private LocalDateTime deletedAt;
+
     public User() {
     }
 
@@ -37,6 +62,16 @@ public class User {
         this.age = age;
     }
 
+    public User(User other) {
+        this.id = other.id;
+        this.name = other.name;
+        this.email = other.email;
+        this.age = other.age;
+        this.createdAt = other.createdAt;
+        this.updatedAt = other.updatedAt;
+        this.deletedAt = other.deletedAt;
+    }
+
     public Long getId() {
         return id;
     }
@@ -77,6 +112,26 @@ public class User {
         this.createdAt = createdAt;
     }
 
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(LocalDateTime updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+    public LocalDateTime getDeletedAt() {
+        return deletedAt;
+    }
+
+    public void setDeletedAt(LocalDateTime deletedAt) {
+        this.deletedAt = deletedAt;
+    }
+
+    public boolean isDeleted() {
+        return deletedAt != null;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -98,6 +153,8 @@ public class User {
                 ", email='" + email + '\'' +
                 ", age=" + age +
                 ", createdAt=" + createdAt +
+                ", updatedAt=" + updatedAt +
+                (deletedAt != null ? ", deletedAt=" + deletedAt : "") +
                 '}';
     }
 }
@@ -0,0 +1,138 @@
+package com.userservice.entity;
+
+import org.hibernate.annotations.CreationTimestamp;
+
+import javax.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * Событие изменения пользователя в таблице outbox. Записывается в той же транзакции,
+ * что и само изменение, и доставляется наружу фоновым публикатором.
+ */
+@Entity
+@Table(name = "user_outbox")
+public class UserOutboxEvent {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id")
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "kind", nullable = false, length = 16)
+    private String kind;
+
+    @Column(name = "payload", columnDefinition = "text")
+    private String payload;
+
+    @Column(name = "created_at", nullable = false, updatable = false)
+    @CreationTimestamp
+    private LocalDateTime createdAt;
+
+    public UserOutboxEvent() {
+    }
+
+    public UserOutboxEvent(Long userId, String kind, String payload) {
+        this.userId = userId;
+        this.kind = kind;
+        this.payload = payload;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public String getKind() {
+        return kind;
+    }
+
+    public void setKind(String kind) {
+        this.kind = kind;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public void setPayload(String payload) {
+        this.payload = payload;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    /**
+     * JSON-представление пользователя для payload события.
+     */
+    public static String toPayload(User user) {
+        return "{\"id\":" + user.getId() +
+                ",\"name\":" + quote(user.getName()) +
+                ",\"email\":" + quote(user.getEmail()) +
+                ",\"age\":" + user.getAge() +
+                ",\"createdAt\":" + quote(user.getCreatedAt() == null ? null : user.getCreatedAt().toString()) +
+                "}";
+    }
+
+    private static String quote(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder sb = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    @Override
+    public String toString() {
+        return "UserOutboxEvent{" +
+                "id=" + id +
+                ", userId=" + userId +
+                ", kind='" + kind + '\'' +
+                ", createdAt=" + createdAt +
+                '}';
+    }
+}
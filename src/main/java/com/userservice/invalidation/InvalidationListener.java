@@ -0,0 +1,214 @@
+package com.userservice.invalidation;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Слушатель сообщений pg_notify об изменениях пользователей на других узлах.
+ * Держит отдельное соединение с базой (не из пула Hibernate) и выполняет на нем LISTEN.
+ * Сообщения, пришедшие в пределах batchWindowMillis, объединяются в один вызов
+ * {@link UserCacheInvalidator#invalidate}. Пока соединения нет, сообщения теряются,
+ * поэтому после переподключения локальные кеши сбрасываются целиком.
+ */
+public class InvalidationListener implements AutoCloseable {
+    private static final Logger logger = LogManager.getLogger(InvalidationListener.class);
+    private static final int POLL_MILLIS = 500;
+    private static final int MAX_BATCH = 1000;
+    private static final long MAX_RECONNECT_DELAY_MILLIS = 5000;
+
+    private final String jdbcUrl;
+    private final String username;
+    private final String password;
+    private final String channel;
+    private final String ownNodeId;
+    private final int batchWindowMillis;
+    private final List<UserCacheInvalidator> invalidators = new CopyOnWriteArrayList<>();
+
+    private final AtomicLong receivedMessages = new AtomicLong();
+    private final AtomicLong appliedBatches = new AtomicLong();
+    private final AtomicLong fullFlushes = new AtomicLong();
+    private volatile boolean running;
+    private volatile boolean listening;
+    private Thread thread;
+
+    /**
+     * @param ownNodeId ID узла (см. UserDAO#getNodeId()), чьи сообщения пропускаются
+     */
+    public InvalidationListener(SessionFactory sessionFactory, String channel, String ownNodeId, int batchWindowMillis) {
+        if (!channel.matches("[A-Za-z_][A-Za-z0-9_]*")) {
+            throw new IllegalArgumentException("Invalid channel name: " + channel);
+        }
+        // SessionFactory#getProperties() маскирует учетные данные, поэтому берем исходные настройки
+        Map<?, ?> properties = ((SessionFactoryImplementor) sessionFactory).getServiceRegistry()
+                .getService(ConfigurationService.class).getSettings();
+        this.jdbcUrl = (String) properties.get("hibernate.connection.url");
+        this.username = (String) properties.get("hibernate.connection.username");
+        this.password = (String) properties.get("hibernate.connection.password");
+        this.channel = channel;
+        this.ownNodeId = ownNodeId;
+        this.batchWindowMillis = batchWindowMillis;
+    }
+
+    public void addInvalidator(UserCacheInvalidator invalidator) {
+        invalidators.add(invalidator);
+    }
+
+    public synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        running = true;
+        thread = new Thread(this::run, "user-invalidation-listener");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Активна ли подписка LISTEN (сообщения, отправленные раньше, не будут получены).
+     */
+    public boolean isListening() {
+        return listening;
+    }
+
+    public long getReceivedMessages() {
+        return receivedMessages.get();
+    }
+
+    public long getAppliedBatches() {
+        return appliedBatches.get();
+    }
+
+    public long getFullFlushes() {
+        return fullFlushes.get();
+    }
+
+    private void run() {
+        boolean connectedBefore = false;
+        long reconnectDelay = 100;
+        while (running) {
+            try (Connection connection = DriverManager.getConnection(jdbcUrl, username, password)) {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("LISTEN " + channel);
+                }
+                listening = true;
+                reconnectDelay = 100;
+                if (connectedBefore) {
+                    logger.warn("Reconnected to invalidation channel {}, flushing local caches", channel);
+                    flushAll();
+                }
+                connectedBefore = true;
+                logger.info("Listening for user invalidations on channel {}", channel);
+                listen(connection.unwrap(PGConnection.class));
+            } catch (SQLException e) {
+                listening = false;
+                if (!running) {
+                    break;
+                }
+                logger.warn("Invalidation listener connection lost: {}, retrying in {} ms", e.getMessage(), reconnectDelay);
+                connectedBefore = true;
+                sleep(reconnectDelay);
+                reconnectDelay = Math.min(reconnectDelay * 2, MAX_RECONNECT_DELAY_MILLIS);
+            }
+        }
+        listening = false;
+    }
+
+    private void listen(PGConnection connection) throws SQLException {
+        while (running) {
+            PGNotification[] notifications = connection.getNotifications(POLL_MILLIS);
+            if (notifications == null || notifications.length == 0) {
+                continue;
+            }
+            Set<Long> ids = new HashSet<>();
+            collect(notifications, ids);
+            // Добираем сообщения, пришедшие следом, чтобы применить их одним пакетом
+            while (ids.size() < MAX_BATCH) {
+                notifications = connection.getNotifications(batchWindowMillis);
+                if (notifications == null || notifications.length == 0) {
+                    break;
+                }
+                collect(notifications, ids);
+            }
+            if (!ids.isEmpty()) {
+                apply(ids);
+            }
+        }
+    }
+
+    private void collect(PGNotification[] notifications, Set<Long> ids) {
+        for (PGNotification notification : notifications) {
+            receivedMessages.incrementAndGet();
+            UserInvalidation invalidation = UserInvalidation.parse(notification.getParameter());
+            if (invalidation == null) {
+                logger.warn("Ignoring malformed invalidation message: {}", notification.getParameter());
+            } else if (!invalidation.getNodeId().equals(ownNodeId)) {
+                ids.add(invalidation.getId());
+            }
+        }
+    }
+
+    private void apply(Set<Long> ids) {
+        for (UserCacheInvalidator invalidator : invalidators) {
+            try {
+                invalidator.invalidate(ids);
+            } catch (RuntimeException e) {
+                logger.error("Cache invalidation failed for {} users, flushing cache", ids.size(), e);
+                invalidator.invalidateAll();
+            }
+        }
+        appliedBatches.incrementAndGet();
+        logger.debug("Applied invalidation batch of {} users", ids.size());
+    }
+
+    private void flushAll() {
+        fullFlushes.incrementAndGet();
+        for (UserCacheInvalidator invalidator : invalidators) {
+            try {
+                invalidator.invalidateAll();
+            } catch (RuntimeException e) {
+                logger.error("Full cache flush failed", e);
+            }
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() {
+        Thread listenerThread;
+        synchronized (this) {
+            running = false;
+            listenerThread = thread;
+            thread = null;
+        }
+        if (listenerThread != null) {
+            try {
+                listenerThread.join(POLL_MILLIS * 4L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.userservice.invalidation;
+
+import java.util.Set;
+
+/**
+ * Локальный кеш данных пользователей, который сбрасывается по изменениям с других узлов.
+ */
+public interface UserCacheInvalidator {
+
+    /**
+     * Пользователи с этими ID изменены, созданы или удалены на другом узле.
+     */
+    void invalidate(Set<Long> ids);
+
+    /**
+     * Часть сообщений могла быть потеряна (например, при переподключении) - кеш нужно сбросить целиком.
+     */
+    void invalidateAll();
+}
@@ -0,0 +1,71 @@
+package com.userservice.invalidation;
+
+import com.userservice.dao.UserChange;
+
+/**
+ * Компактное сообщение об изменении пользователя для pg_notify: "U:42:a1b2c3d4"
+ * (первая буква вида изменения, ID пользователя, ID узла-отправителя).
+ */
+public class UserInvalidation {
+    public static final String DEFAULT_CHANNEL = "user_changes";
+
+    private final UserChange.Kind kind;
+    private final long id;
+    private final String nodeId;
+
+    public UserInvalidation(UserChange.Kind kind, long id, String nodeId) {
+        this.kind = kind;
+        this.id = id;
+        this.nodeId = nodeId;
+    }
+
+    public static String format(UserChange.Kind kind, long id, String nodeId) {
+        return kind.name().charAt(0) + ":" + id + ":" + nodeId;
+    }
+
+    /**
+     * Разбирает сообщение; для нераспознанного формата возвращает null.
+     */
+    public static UserInvalidation parse(String payload) {
+        String[] parts = payload == null ? new String[0] : payload.split(":", 3);
+        if (parts.length != 3 || parts[0].length() != 1) {
+            return null;
+        }
+        UserChange.Kind kind;
+        switch (parts[0].charAt(0)) {
+            case 'C':
+                kind = UserChange.Kind.CREATED;
+                break;
+            case 'U':
+                kind = UserChange.Kind.UPDATED;
+                break;
+            case 'D':
+                kind = UserChange.Kind.DELETED;
+                break;
+            default:
+                return null;
+        }
+        try {
+            return new UserInvalidation(kind, Long.parseLong(parts[1]), parts[2]);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public UserChange.Kind getKind() {
+        return kind;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public String toString() {
+        return format(kind, id, nodeId);
+    }
+}
@@ -0,0 +1,104 @@
+package com.userservice.job;
+
+import java.time.Duration;
+
+/**
+ * Снимок состояния задания: диапазоны, пользователи и скорость обработки.
+ */
+public class JobProgress {
+    private final String jobName;
+    private final int totalChunks;
+    private final int completedChunks;
+    private final int skippedChunks;
+    private final int failedChunks;
+    private final long processedUsers;
+    private final long updatedUsers;
+    private final long conflictedUsers;
+    private final Duration elapsed;
+
+    public JobProgress(String jobName, int totalChunks, int completedChunks, int skippedChunks, int failedChunks,
+                       long processedUsers, long updatedUsers, Duration elapsed) {
+        this(jobName, totalChunks, completedChunks, skippedChunks, failedChunks, processedUsers, updatedUsers, 0, elapsed);
+    }
+
+    public JobProgress(String jobName, int totalChunks, int completedChunks, int skippedChunks, int failedChunks,
+                       long processedUsers, long updatedUsers, long conflictedUsers, Duration elapsed) {
+        this.jobName = jobName;
+        this.totalChunks = totalChunks;
+        this.completedChunks = completedChunks;
+        this.skippedChunks = skippedChunks;
+        this.failedChunks = failedChunks;
+        this.processedUsers = processedUsers;
+        this.updatedUsers = updatedUsers;
+        this.conflictedUsers = conflictedUsers;
+        this.elapsed = elapsed;
+    }
+
+    public String getJobName() {
+        return jobName;
+    }
+
+    public int getTotalChunks() {
+        return totalChunks;
+    }
+
+    /**
+     * Диапазоны, обработанные в этом запуске.
+     */
+    public int getCompletedChunks() {
+        return completedChunks;
+    }
+
+    /**
+     * Диапазоны, пропущенные как завершенные в предыдущих запусках.
+     */
+    public int getSkippedChunks() {
+        return skippedChunks;
+    }
+
+    public int getFailedChunks() {
+        return failedChunks;
+    }
+
+    public long getProcessedUsers() {
+        return processedUsers;
+    }
+
+    public long getUpdatedUsers() {
+        return updatedUsers;
+    }
+
+    /**
+     * Пользователи, измененные другими транзакциями между чтением и записью диапазона:
+     * их изменения задания не записаны, чтобы не затереть чужое обновление. Диапазоны с такими
+     * пользователями считаются неудавшимися и обрабатываются повторным запуском.
+     */
+    public long getConflictedUsers() {
+        return conflictedUsers;
+    }
+
+    public Duration getElapsed() {
+        return elapsed;
+    }
+
+    public boolean isFinished() {
+        return completedChunks + skippedChunks + failedChunks >= totalChunks;
+    }
+
+    public double getPercentDone() {
+        return totalChunks == 0 ? 100.0 : 100.0 * (completedChunks + skippedChunks) / totalChunks;
+    }
+
+    public double getUsersPerSecond() {
+        double seconds = elapsed.toNanos() / 1_000_000_000.0;
+        return seconds <= 0 ? 0 : processedUsers / seconds;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Job %s: %d/%d chunks (%.1f%%), %d failed, %d users processed, %d updated, "
+                        + "%d skipped as concurrently changed, %.0f users/s",
+                jobName, completedChunks + skippedChunks, totalChunks, getPercentDone(), failedChunks,
+                processedUsers, updatedUsers, conflictedUsers, getUsersPerSecond());
+    }
+}
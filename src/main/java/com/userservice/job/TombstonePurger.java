@@ -0,0 +1,227 @@
+package com.userservice.job;
+
+import com.userservice.dao.ConcurrencyLimiter;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Фоновая очистка мягко удаленных пользователей (см. UserDAO#setSoftDelete).
+ * <p>
+ * Строки, удаленные раньше чем retention назад, удаляются физически небольшими пакетами,
+ * каждый в своей короткой транзакции: блокировки держатся недолго, а строки, занятые
+ * другими транзакциями, пропускаются (SKIP LOCKED). Скорость ограничена maxRowsPerSecond;
+ * перед каждым пакетом проверяется условие "тихого периода", и при нагрузке проход
+ * прерывается до следующего запуска. retention оставляет время потребителям changesSince
+ * увидеть удаление.
+ */
+public class TombstonePurger implements AutoCloseable {
+    private static final Logger logger = LogManager.getLogger(TombstonePurger.class);
+    public static final int DEFAULT_BATCH_SIZE = 500;
+    public static final int DEFAULT_MAX_ROWS_PER_SECOND = 2000;
+    public static final Duration DEFAULT_RETENTION = Duration.ofHours(1);
+
+    private final SessionFactory sessionFactory;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private int maxRowsPerSecond = DEFAULT_MAX_ROWS_PER_SECOND;
+    private Duration retention = DEFAULT_RETENTION;
+    private BooleanSupplier quietPeriod = () -> true;
+
+    private final AtomicLong purgedRows = new AtomicLong();
+    private final AtomicLong purgedBatches = new AtomicLong();
+    private final AtomicLong deferredRuns = new AtomicLong();
+    private volatile long backlog = -1;
+    private volatile double lastRunRowsPerSecond;
+    private volatile boolean closed;
+    private ScheduledExecutorService scheduler;
+
+    public TombstonePurger(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    public TombstonePurger batchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    public TombstonePurger maxRowsPerSecond(int maxRowsPerSecond) {
+        if (maxRowsPerSecond <= 0) {
+            throw new IllegalArgumentException("Purge rate must be positive");
+        }
+        this.maxRowsPerSecond = maxRowsPerSecond;
+        return this;
+    }
+
+    /**
+     * Сколько мягко удаленная строка хранится до физического удаления.
+     */
+    public TombstonePurger retention(Duration retention) {
+        if (retention.isNegative()) {
+            throw new IllegalArgumentException("Retention cannot be negative");
+        }
+        this.retention = retention;
+        return this;
+    }
+
+    /**
+     * Очистка выполняется, только пока условие истинно (например, ночное окно или низкая нагрузка).
+     */
+    public TombstonePurger onlyWhen(BooleanSupplier quietPeriod) {
+        this.quietPeriod = quietPeriod;
+        return this;
+    }
+
+    /**
+     * Тихий период по ограничителю LimitedUserDAO: не больше maxInFlight выполняющихся операций.
+     */
+    public static BooleanSupplier quietWhen(ConcurrencyLimiter limiter, int maxInFlight) {
+        return () -> limiter.getInFlight() <= maxInFlight && limiter.getQueueDepth() == 0;
+    }
+
+    public synchronized void start(Duration interval) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "tombstone-purger");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                purge();
+            } catch (RuntimeException e) {
+                logger.error("Tombstone purge failed, will retry on the next run", e);
+            }
+        }, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+        logger.info("Tombstone purger started: every {} s, batches of {}, up to {} rows/s, retention {}",
+                interval.getSeconds(), batchSize, maxRowsPerSecond, retention);
+    }
+
+    /**
+     * Один проход очистки: пакеты до исчерпания подходящих строк, конца тихого периода или закрытия.
+     * Возвращает число удаленных строк.
+     */
+    public int purge() {
+        long started = System.nanoTime();
+        int purged = 0;
+        while (!closed) {
+            if (!quietPeriod.getAsBoolean()) {
+                deferredRuns.incrementAndGet();
+                logger.debug("Tombstone purge deferred: not a quiet period");
+                break;
+            }
+            long batchStarted = System.nanoTime();
+            int deleted = purgeBatch();
+            purged += deleted;
+            if (deleted < batchSize) {
+                break;
+            }
+            // Не быстрее maxRowsPerSecond: пакет из deleted строк должен занять не меньше deleted / rate секунд
+            long minimumNanos = deleted * 1_000_000_000L / maxRowsPerSecond;
+            long sleepNanos = minimumNanos - (System.nanoTime() - batchStarted);
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+        long elapsed = System.nanoTime() - started;
+        lastRunRowsPerSecond = elapsed == 0 ? 0 : purged * 1_000_000_000.0 / elapsed;
+        refreshBacklog();
+        if (purged > 0) {
+            logger.info("Purged {} soft-deleted users in {} ms ({} rows/s), backlog {}",
+                    purged, elapsed / 1_000_000, Math.round(lastRunRowsPerSecond), backlog);
+        }
+        return purged;
+    }
+
+    private int purgeBatch() {
+        StatelessSession session = sessionFactory.openStatelessSession();
+        Transaction transaction = null;
+        try {
+            transaction = session.beginTransaction();
+            int deleted = session.createNativeQuery("DELETE FROM users WHERE id IN (" +
+                            "SELECT id FROM users WHERE deleted_at < LOCALTIMESTAMP - make_interval(secs => :retention) " +
+                            "ORDER BY deleted_at LIMIT :batch FOR UPDATE SKIP LOCKED)")
+                    .setParameter("retention", retention.toMillis() / 1000.0)
+                    .setParameter("batch", batchSize)
+                    .executeUpdate();
+            transaction.commit();
+            purgedRows.addAndGet(deleted);
+            if (deleted > 0) {
+                purgedBatches.incrementAndGet();
+            }
+            return deleted;
+        } catch (RuntimeException e) {
+            if (transaction != null && transaction.isActive()) {
+                transaction.rollback();
+            }
+            throw e;
+        } finally {
+            session.close();
+        }
+    }
+
+    private void refreshBacklog() {
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            Number count = (Number) session
+                    .createNativeQuery("SELECT COUNT(*) FROM users WHERE deleted_at IS NOT NULL")
+                    .uniqueResult();
+            backlog = count.longValue();
+        }
+    }
+
+    /**
+     * Мягко удаленные строки, еще не удаленные физически (включая те, чей retention не истек),
+     * по состоянию на конец последнего прохода; -1, если проходов еще не было.
+     */
+    public long getBacklog() {
+        return backlog;
+    }
+
+    public long getPurgedRows() {
+        return purgedRows.get();
+    }
+
+    public long getPurgedBatches() {
+        return purgedBatches.get();
+    }
+
+    public long getDeferredRuns() {
+        return deferredRuns.get();
+    }
+
+    public double getLastRunRowsPerSecond() {
+        return lastRunRowsPerSecond;
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (scheduler != null) {
+            scheduler.shutdown();
+            try {
+                scheduler.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            scheduler = null;
+        }
+    }
+}
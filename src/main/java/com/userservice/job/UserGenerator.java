@@ -0,0 +1,66 @@
+package com.userservice.job;
+
+import com.userservice.entity.User;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.SplittableRandom;
+
+/**
+ * Генератор правдоподобных синтетических пользователей для нагрузочных тестов.
+ * <p>
+ * Пользователь с номером index зависит только от seed и index, поэтому результат не зависит
+ * от числа потоков и порядка генерации. Email уникальны в пределах одного генератора (номер
+ * входит в локальную часть), возраст распределен нормально вокруг 38 лет, а created_at
+ * равномерно растет к концу диапазона, как у сервиса с растущей аудиторией.
+ */
+public class UserGenerator {
+    public static final int MIN_AGE = 18;
+    public static final int MAX_AGE = 90;
+
+    private static final String[] FIRST_NAMES = {
+            "Alexander", "Anna", "Dmitry", "Elena", "Ivan", "Maria", "Sergey", "Olga", "Andrey", "Natalia",
+            "Mikhail", "Tatiana", "Nikolai", "Irina", "Pavel", "Svetlana", "Alexey", "Ekaterina", "Yuri", "Daria",
+            "Oleg", "Yulia", "Vladimir", "Ksenia", "Artem", "Polina", "Roman", "Victoria", "Maxim", "Sofia"
+    };
+    private static final String[] LAST_NAMES = {
+            "Ivanov", "Smirnov", "Kuznetsov", "Popov", "Vasiliev", "Petrov", "Sokolov", "Mikhailov", "Novikov",
+            "Fedorov", "Morozov", "Volkov", "Alekseev", "Lebedev", "Semenov", "Egorov", "Pavlov", "Kozlov",
+            "Stepanov", "Nikolaev", "Orlov", "Andreev", "Makarov", "Nikitin", "Zakharov"
+    };
+    private static final String[] DOMAINS = {
+            "example.com", "mail.example.org", "test.example.net", "inbox.example.com", "corp.example.io"
+    };
+
+    private final long seed;
+    private final LocalDateTime createdFrom;
+    private final long spanSeconds;
+
+    public UserGenerator(long seed, LocalDateTime createdFrom, LocalDateTime createdTo) {
+        if (!createdFrom.isBefore(createdTo)) {
+            throw new IllegalArgumentException("Creation range must not be empty");
+        }
+        this.seed = seed;
+        this.createdFrom = createdFrom;
+        this.spanSeconds = ChronoUnit.SECONDS.between(createdFrom, createdTo);
+    }
+
+    public User generate(long index) {
+        SplittableRandom random = new SplittableRandom(seed ^ (index * 0x9E3779B97F4A7C15L));
+        String firstName = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)];
+        String lastName = LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+        boolean female = firstName.endsWith("a");
+        String surname = female ? lastName + "a" : lastName;
+
+        String email = firstName.toLowerCase() + "." + surname.toLowerCase() + "." + Long.toString(index, 36)
+                + "@" + DOMAINS[random.nextInt(DOMAINS.length)];
+        int age = (int) Math.round(38 + random.nextGaussian() * 14);
+        age = Math.max(MIN_AGE, Math.min(MAX_AGE, age));
+        // Плотность растет линейно к концу диапазона: sqrt от равномерной величины
+        long offset = (long) (Math.sqrt(random.nextDouble()) * spanSeconds);
+
+        User user = new User(firstName + " " + surname, email, age);
+        user.setCreatedAt(createdFrom.plusSeconds(Math.min(offset, spanSeconds - 1)));
+        return user;
+    }
+}
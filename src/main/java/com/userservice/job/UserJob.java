@@ -0,0 +1,319 @@
+package com.userservice.job;
+
+import com.userservice.dao.UserChange;
+import com.userservice.dao.UserDAO;
+import com.userservice.entity.User;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Параллельная обработка всей таблицы users диапазонами ID.
+ * <p>
+ * Пространство ID делится на диапазоны [k * chunkSize, (k + 1) * chunkSize); рабочие потоки
+ * забирают их по очереди. Каждый диапазон обрабатывается в своей StatelessSession и одной
+ * транзакции: чтение, {@link UserTask}, пакетный UPDATE измененных строк и запись контрольной
+ * точки в user_job_checkpoint. Поэтому повторный запуск задания с тем же именем пропускает
+ * завершенные диапазоны и продолжает с места остановки. Число потоков не стоит делать больше
+ * размера пула соединений (hibernate.connection.pool_size).
+ */
+public class UserJob {
+    private static final Logger logger = LogManager.getLogger(UserJob.class);
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    private final String name;
+    private final SessionFactory sessionFactory;
+    private final UserTask task;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private int parallelism = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private UserDAO changeTarget;
+
+    private volatile int totalChunks;
+    private final AtomicInteger completedChunks = new AtomicInteger();
+    private final AtomicInteger skippedChunks = new AtomicInteger();
+    private final AtomicInteger failedChunks = new AtomicInteger();
+    private final AtomicLong processedUsers = new AtomicLong();
+    private final AtomicLong updatedUsers = new AtomicLong();
+    private final AtomicLong conflictedUsers = new AtomicLong();
+    private volatile long startedAtNanos;
+    private volatile long finishedAtNanos;
+
+    public UserJob(String name, SessionFactory sessionFactory, UserTask task) {
+        if (name == null || name.trim().isEmpty() || name.length() > 100) {
+            throw new IllegalArgumentException("Job name must be 1 to 100 characters");
+        }
+        this.name = name;
+        this.sessionFactory = sessionFactory;
+        this.task = task;
+    }
+
+    public UserJob chunkSize(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    public UserJob parallelism(int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Изменения каждого завершенного диапазона передаются слушателям этого DAO (кешам, индексам).
+     */
+    public UserJob publishChangesTo(UserDAO userDAO) {
+        this.changeTarget = userDAO;
+        return this;
+    }
+
+    /**
+     * Выполняет задание до конца и возвращает итог. Сбойные диапазоны пропускаются
+     * (см. {@link JobProgress#getFailedChunks()}) и обрабатываются при следующем запуске.
+     */
+    public JobProgress run() {
+        resetCounters();
+        long[] range = idRange();
+        if (range == null) {
+            finishedAtNanos = System.nanoTime();
+            logger.info("Job {}: users table is empty, nothing to do", name);
+            return progress();
+        }
+        long firstChunk = Math.floorDiv(range[0], chunkSize);
+        long lastChunk = Math.floorDiv(range[1], chunkSize);
+        totalChunks = (int) (lastChunk - firstChunk + 1);
+        Set<Long> done = completedChunkStarts();
+        logger.info("Job {} started: IDs {}..{}, {} chunks of {}, {} already done, {} threads",
+                name, range[0], range[1], totalChunks, chunkSize, done.size(), parallelism);
+
+        AtomicLong nextChunk = new AtomicLong(firstChunk);
+        AtomicInteger lastReportedDecile = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "user-job-" + name);
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < parallelism; i++) {
+            workers.execute(() -> {
+                long chunk;
+                while ((chunk = nextChunk.getAndIncrement()) <= lastChunk) {
+                    long from = chunk * chunkSize;
+                    if (done.contains(from)) {
+                        skippedChunks.incrementAndGet();
+                    } else {
+                        processChunk(from, from + chunkSize);
+                    }
+                    reportProgress(lastReportedDecile);
+                }
+            });
+        }
+        workers.shutdown();
+        try {
+            while (!workers.awaitTermination(1, TimeUnit.MINUTES)) {
+                logger.info("{}", progress());
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+            logger.warn("Job {} interrupted, completed chunks are checkpointed", name);
+        }
+        finishedAtNanos = System.nanoTime();
+
+        JobProgress result = progress();
+        logger.info("Job {} finished: {}", name, result);
+        return result;
+    }
+
+    /**
+     * Текущее состояние; можно вызывать из другого потока во время run().
+     */
+    public JobProgress progress() {
+        long end = finishedAtNanos != 0 ? finishedAtNanos : System.nanoTime();
+        Duration elapsed = startedAtNanos == 0 ? Duration.ZERO : Duration.ofNanos(end - startedAtNanos);
+        return new JobProgress(name, totalChunks, completedChunks.get(), skippedChunks.get(), failedChunks.get(),
+                processedUsers.get(), updatedUsers.get(), conflictedUsers.get(), elapsed);
+    }
+
+    /**
+     * Удаляет контрольные точки задания, чтобы следующий запуск прошел всю таблицу заново.
+     */
+    public void reset() {
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            Transaction transaction = session.beginTransaction();
+            int deleted = session.createNativeQuery("DELETE FROM user_job_checkpoint WHERE job_name = :job")
+                    .setParameter("job", name)
+                    .executeUpdate();
+            transaction.commit();
+            logger.info("Job {} reset, {} checkpoints removed", name, deleted);
+        }
+    }
+
+    private void processChunk(long from, long to) {
+        StatelessSession session = sessionFactory.openStatelessSession();
+        Transaction transaction = null;
+        try {
+            transaction = session.beginTransaction();
+            List<User> users = session
+                    .createQuery("FROM User u WHERE u.id >= :from AND u.id < :to AND u.deletedAt IS NULL ORDER BY u.id", User.class)
+                    .setParameter("from", from)
+                    .setParameter("to", to)
+                    .list();
+
+            List<User> changed = new ArrayList<>();
+            List<User> before = new ArrayList<>();
+            for (User user : users) {
+                User original = new User(user);
+                if (task.process(user)) {
+                    changed.add(user);
+                    before.add(original);
+                }
+            }
+            boolean[] written = writeBatch(session, changed, before);
+            List<UserChange> changes = new ArrayList<>();
+            int conflicts = 0;
+            for (int i = 0; i < changed.size(); i++) {
+                if (!written[i]) {
+                    conflicts++;
+                } else if (changeTarget != null) {
+                    changes.add(UserChange.updated(before.get(i), new User(changed.get(i))));
+                }
+            }
+            if (conflicts == 0) {
+                session.createNativeQuery("INSERT INTO user_job_checkpoint (job_name, chunk_start, processed, updated) " +
+                                "VALUES (:job, :start, :processed, :updated) ON CONFLICT DO NOTHING")
+                        .setParameter("job", name)
+                        .setParameter("start", from)
+                        .setParameter("processed", users.size())
+                        .setParameter("updated", changed.size())
+                        .executeUpdate();
+            }
+            transaction.commit();
+
+            processedUsers.addAndGet(users.size());
+            updatedUsers.addAndGet(changed.size() - conflicts);
+            conflictedUsers.addAndGet(conflicts);
+            if (conflicts == 0) {
+                completedChunks.incrementAndGet();
+            } else {
+                // Записанные строки сохраняются, но без контрольной точки: повторный запуск
+                // перечитает диапазон и применит задачу к строкам, измененным параллельно
+                failedChunks.incrementAndGet();
+                logger.warn("Job {}: {} users in chunk [{}, {}) changed concurrently and were not rewritten, "
+                        + "the chunk will be retried on the next run", name, conflicts, from, to);
+            }
+            if (changeTarget != null) {
+                changeTarget.publishChanges(changes);
+            }
+        } catch (RuntimeException | SQLException e) {
+            if (transaction != null && transaction.isActive()) {
+                transaction.rollback();
+            }
+            failedChunks.incrementAndGet();
+            logger.error("Job {}: chunk [{}, {}) failed and will be retried on the next run", name, from, to, e);
+        } finally {
+            session.close();
+        }
+    }
+
+    /**
+     * Пишет измененных пользователей; строка обновляется, только если ее updated_at не изменился
+     * с момента чтения (оптимистическая проверка без блокировки диапазона). Возвращает признак
+     * записи для каждого пользователя.
+     */
+    private static boolean[] writeBatch(StatelessSession session, List<User> users, List<User> before) throws SQLException {
+        boolean[] written = new boolean[users.size()];
+        if (users.isEmpty()) {
+            return written;
+        }
+        // Соединение сессии: запись идет в той же транзакции, что и контрольная точка
+        Connection connection = ((SharedSessionContractImplementor) session)
+                .getJdbcCoordinator().getLogicalConnection().getPhysicalConnection();
+        try (PreparedStatement statement = connection.prepareStatement(
+                "UPDATE users SET name = ?, email = ?, age = ? " +
+                        "WHERE id = ? AND updated_at IS NOT DISTINCT FROM ? AND deleted_at IS NULL")) {
+            for (int i = 0; i < users.size(); i++) {
+                User user = users.get(i);
+                LocalDateTime readUpdatedAt = before.get(i).getUpdatedAt();
+                statement.setString(1, user.getName());
+                statement.setString(2, user.getEmail());
+                statement.setInt(3, user.getAge());
+                statement.setLong(4, user.getId());
+                statement.setTimestamp(5, readUpdatedAt == null ? null : Timestamp.valueOf(readUpdatedAt));
+                statement.addBatch();
+            }
+            int[] counts = statement.executeBatch();
+            for (int i = 0; i < counts.length; i++) {
+                written[i] = counts[i] > 0;
+            }
+        }
+        return written;
+    }
+
+    private long[] idRange() {
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            Object[] row = session.createQuery("SELECT MIN(u.id), MAX(u.id) FROM User u", Object[].class)
+                    .uniqueResult();
+            if (row == null || row[0] == null) {
+                return null;
+            }
+            return new long[]{(Long) row[0], (Long) row[1]};
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Set<Long> completedChunkStarts() {
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            List<Number> starts = session
+                    .createNativeQuery("SELECT chunk_start FROM user_job_checkpoint WHERE job_name = :job")
+                    .setParameter("job", name)
+                    .list();
+            Set<Long> result = new HashSet<>();
+            starts.forEach(start -> result.add(start.longValue()));
+            return result;
+        }
+    }
+
+    private void reportProgress(AtomicInteger lastReportedDecile) {
+        int total = totalChunks;
+        int decile = total == 0 ? 10 : (completedChunks.get() + skippedChunks.get() + failedChunks.get()) * 10 / total;
+        int previous = lastReportedDecile.get();
+        if (decile > previous && lastReportedDecile.compareAndSet(previous, decile)) {
+            logger.info("{}", progress());
+        }
+    }
+
+    private void resetCounters() {
+        completedChunks.set(0);
+        skippedChunks.set(0);
+        failedChunks.set(0);
+        processedUsers.set(0);
+        updatedUsers.set(0);
+        conflictedUsers.set(0);
+        totalChunks = 0;
+        startedAtNanos = System.nanoTime();
+        finishedAtNanos = 0;
+    }
+}
@@ -0,0 +1,256 @@
+package com.userservice.job;
+
+import com.userservice.entity.User;
+import com.userservice.partition.PartitionManager;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.postgresql.PGConnection;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Заполнение таблицы users синтетическими пользователями ({@link UserGenerator}) для
+ * нагрузочных тестов и бенчмарков на миллионах строк.
+ * <p>
+ * Номера пользователей [firstIndex, firstIndex + count) делятся на пакеты по batchSize;
+ * рабочие потоки забирают их по очереди, и каждый пакет загружается в своей StatelessSession
+ * и транзакции. Если драйвер - PostgreSQL, пакет передается одной командой COPY FROM STDIN,
+ * иначе (или при useCopy(false)) - пакетным INSERT. Данные зависят только от seed и номеров,
+ * поэтому повторный запуск с теми же параметрами дает те же строки; чтобы дописать строки в
+ * уже заполненную таблицу, задайте firstIndex за последним номером предыдущего запуска.
+ * Для секционированной таблицы заранее создаются секции всех месяцев диапазона created_at.
+ */
+public class UserSeeder {
+    private static final Logger logger = LogManager.getLogger(UserSeeder.class);
+    public static final int DEFAULT_BATCH_SIZE = 10_000;
+    public static final long DEFAULT_SEED = 42;
+
+    private final SessionFactory sessionFactory;
+    private long seed = DEFAULT_SEED;
+    private long firstIndex;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private int parallelism = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private boolean useCopy = true;
+    private LocalDateTime createdFrom = LocalDate.now().minusYears(2).atStartOfDay();
+    private LocalDateTime createdTo = LocalDate.now().atStartOfDay();
+
+    private final AtomicInteger completedBatches = new AtomicInteger();
+    private final AtomicInteger failedBatches = new AtomicInteger();
+    private final AtomicLong insertedUsers = new AtomicLong();
+
+    public UserSeeder(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    public UserSeeder seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Номер первого генерируемого пользователя.
+     */
+    public UserSeeder firstIndex(long firstIndex) {
+        if (firstIndex < 0) {
+            throw new IllegalArgumentException("First index cannot be negative");
+        }
+        this.firstIndex = firstIndex;
+        return this;
+    }
+
+    public UserSeeder batchSize(int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    public UserSeeder parallelism(int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+        this.parallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Загружать через COPY (по умолчанию) или пакетными INSERT.
+     */
+    public UserSeeder useCopy(boolean useCopy) {
+        this.useCopy = useCopy;
+        return this;
+    }
+
+    /**
+     * Диапазон created_at [from, to); по умолчанию два последних года.
+     */
+    public UserSeeder createdBetween(LocalDateTime from, LocalDateTime to) {
+        if (!from.isBefore(to)) {
+            throw new IllegalArgumentException("Creation range must not be empty");
+        }
+        this.createdFrom = from;
+        this.createdTo = to;
+        return this;
+    }
+
+    /**
+     * Загружает count пользователей и возвращает итог со скоростью загрузки. Сбойные пакеты
+     * пропускаются (см. {@link JobProgress#getFailedChunks()}).
+     */
+    public JobProgress run(long count) {
+        if (count < 0) {
+            throw new IllegalArgumentException("Count cannot be negative");
+        }
+        completedBatches.set(0);
+        failedBatches.set(0);
+        insertedUsers.set(0);
+        String name = "seed-" + seed;
+        int totalBatches = (int) ((count + batchSize - 1) / batchSize);
+        UserGenerator generator = new UserGenerator(seed, createdFrom, createdTo);
+        preparePartitions();
+
+        logger.info("Seeding {} users (seed {}, from #{}) in {} batches of {} on {} threads via {}",
+                count, seed, firstIndex, totalBatches, batchSize, parallelism, useCopy ? "COPY" : "batched INSERT");
+        long started = System.nanoTime();
+        AtomicLong nextBatch = new AtomicLong();
+        AtomicInteger lastReportedDecile = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "user-seeder");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < parallelism; i++) {
+            workers.execute(() -> {
+                long batch;
+                while ((batch = nextBatch.getAndIncrement()) < totalBatches) {
+                    long from = firstIndex + batch * batchSize;
+                    long to = Math.min(from + batchSize, firstIndex + count);
+                    loadBatch(generator, from, to);
+                    int decile = (completedBatches.get() + failedBatches.get()) * 10 / totalBatches;
+                    int previous = lastReportedDecile.get();
+                    if (decile > previous && lastReportedDecile.compareAndSet(previous, decile)) {
+                        logger.info("{}", progress(name, totalBatches, started));
+                    }
+                }
+            });
+        }
+        workers.shutdown();
+        try {
+            while (!workers.awaitTermination(1, TimeUnit.MINUTES)) {
+                logger.info("{}", progress(name, totalBatches, started));
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+            logger.warn("Seeding interrupted, committed batches are kept");
+        }
+
+        JobProgress result = progress(name, totalBatches, started);
+        analyze();
+        logger.info("Seeding finished: {}", result);
+        return result;
+    }
+
+    private JobProgress progress(String name, int totalBatches, long started) {
+        return new JobProgress(name, totalBatches, completedBatches.get(), 0, failedBatches.get(),
+                insertedUsers.get(), 0, Duration.ofNanos(System.nanoTime() - started));
+    }
+
+    private void preparePartitions() {
+        PartitionManager partitionManager = new PartitionManager(sessionFactory);
+        if (!partitionManager.isPartitioned()) {
+            return;
+        }
+        // Иначе строки прошлых месяцев попадут в секцию по умолчанию
+        for (YearMonth month = YearMonth.from(createdFrom); !month.isAfter(YearMonth.from(createdTo)); month = month.plusMonths(1)) {
+            partitionManager.createPartition(month);
+        }
+    }
+
+    private void loadBatch(UserGenerator generator, long from, long to) {
+        StatelessSession session = sessionFactory.openStatelessSession();
+        Transaction transaction = null;
+        try {
+            transaction = session.beginTransaction();
+            Connection connection = ((SharedSessionContractImplementor) session)
+                    .getJdbcCoordinator().getLogicalConnection().getPhysicalConnection();
+            if (useCopy && connection.isWrapperFor(PGConnection.class)) {
+                copyBatch(connection.unwrap(PGConnection.class), generator, from, to);
+            } else {
+                insertBatch(connection, generator, from, to);
+            }
+            transaction.commit();
+            insertedUsers.addAndGet(to - from);
+            completedBatches.incrementAndGet();
+        } catch (RuntimeException | SQLException | IOException e) {
+            if (transaction != null && transaction.isActive()) {
+                transaction.rollback();
+            }
+            failedBatches.incrementAndGet();
+            logger.error("Seeding batch [{}, {}) failed", from, to, e);
+        } finally {
+            session.close();
+        }
+    }
+
+    private static void copyBatch(PGConnection connection, UserGenerator generator, long from, long to)
+            throws SQLException, IOException {
+        // Имена и email генератора не содержат табуляций, переводов строк и обратной косой черты
+        StringBuilder rows = new StringBuilder((int) (to - from) * 80);
+        for (long index = from; index < to; index++) {
+            User user = generator.generate(index);
+            rows.append(user.getName()).append('\t')
+                    .append(user.getEmail()).append('\t')
+                    .append(user.getAge()).append('\t')
+                    .append(Timestamp.valueOf(user.getCreatedAt())).append('\n');
+        }
+        connection.getCopyAPI().copyIn("COPY users (name, email, age, created_at) FROM STDIN",
+                new StringReader(rows.toString()));
+    }
+
+    private static void insertBatch(Connection connection, UserGenerator generator, long from, long to)
+            throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "INSERT INTO users (name, email, age, created_at) VALUES (?, ?, ?, ?)")) {
+            for (long index = from; index < to; index++) {
+                User user = generator.generate(index);
+                statement.setString(1, user.getName());
+                statement.setString(2, user.getEmail());
+                statement.setInt(3, user.getAge());
+                statement.setTimestamp(4, Timestamp.valueOf(user.getCreatedAt()));
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+    }
+
+    // Свежая статистика планировщика: без нее запросы сразу после загрузки строят плохие планы
+    private void analyze() {
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            Transaction transaction = session.beginTransaction();
+            session.createNativeQuery("ANALYZE users").executeUpdate();
+            transaction.commit();
+        } catch (RuntimeException e) {
+            logger.warn("Could not analyze users after seeding: {}", e.getMessage());
+        }
+    }
+}
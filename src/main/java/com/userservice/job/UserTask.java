@@ -0,0 +1,17 @@
+package com.userservice.job;
+
+import com.userservice.entity.User;
+
+/**
+ * Обработка одного пользователя в задании {@link UserJob}. Вызывается из рабочих потоков
+ * параллельно, поэтому реализация должна быть потокобезопасной.
+ */
+@FunctionalInterface
+public interface UserTask {
+
+    /**
+     * Проверяет или изменяет пользователя. true - пользователь изменен и должен быть записан.
+     * Исключение отменяет весь текущий диапазон; он будет повторен при следующем запуске.
+     */
+    boolean process(User user);
+}
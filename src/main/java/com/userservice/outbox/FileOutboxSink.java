@@ -0,0 +1,40 @@
+package com.userservice.outbox;
+
+import com.userservice.entity.UserOutboxEvent;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Дописывает события в локальный файл, по одной JSON-строке на событие.
+ */
+public class FileOutboxSink implements OutboxSink {
+    private final Path file;
+
+    public FileOutboxSink(Path file) {
+        this.file = file;
+    }
+
+    @Override
+    public synchronized void publish(List<UserOutboxEvent> events) {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            for (UserOutboxEvent event : events) {
+                writer.write("{\"eventId\":" + event.getId() +
+                        ",\"kind\":\"" + event.getKind() + "\"" +
+                        ",\"userId\":" + event.getUserId() +
+                        ",\"createdAt\":\"" + event.getCreatedAt() + "\"" +
+                        ",\"user\":" + event.getPayload() + "}");
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write outbox events to " + file, e);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package com.userservice.outbox;
+
+import com.userservice.entity.UserOutboxEvent;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Фоновый публикатор событий из таблицы user_outbox. Забирает события пачками
+ * через FOR UPDATE SKIP LOCKED (несколько публикаторов не мешают друг другу),
+ * передает их в {@link OutboxSink} и удаляет в той же транзакции.
+ */
+public class OutboxPublisher implements AutoCloseable {
+    private static final Logger logger = LogManager.getLogger(OutboxPublisher.class);
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    private final SessionFactory sessionFactory;
+    private final OutboxSink sink;
+    private final int batchSize;
+
+    private final AtomicLong publishedEvents = new AtomicLong();
+    private final AtomicLong publishedBatches = new AtomicLong();
+    private final AtomicLong lastLagMillis = new AtomicLong();
+    private final AtomicLong maxLagMillis = new AtomicLong();
+    private final long startedAtNanos = System.nanoTime();
+    private ScheduledExecutorService scheduler;
+
+    public OutboxPublisher(SessionFactory sessionFactory, OutboxSink sink) {
+        this(sessionFactory, sink, DEFAULT_BATCH_SIZE);
+    }
+
+    public OutboxPublisher(SessionFactory sessionFactory, OutboxSink sink, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        this.sessionFactory = sessionFactory;
+        this.sink = sink;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Публикует одну пачку событий. Возвращает число опубликованных событий (0, если outbox пуст).
+     */
+    @SuppressWarnings("unchecked")
+    public int publishBatch() {
+        Session session = sessionFactory.openSession();
+        Transaction transaction = null;
+        try {
+            transaction = session.beginTransaction();
+
+            List<UserOutboxEvent> events = session
+                    .createNativeQuery("SELECT * FROM user_outbox ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED",
+                            UserOutboxEvent.class)
+                    .setParameter("limit", batchSize)
+                    .list();
+            if (events.isEmpty()) {
+                transaction.commit();
+                return 0;
+            }
+
+            sink.publish(events);
+
+            List<Long> ids = new ArrayList<>(events.size());
+            events.forEach(event -> ids.add(event.getId()));
+            session.createQuery("DELETE FROM UserOutboxEvent e WHERE e.id IN (:ids)")
+                    .setParameterList("ids", ids)
+                    .executeUpdate();
+            transaction.commit();
+
+            recordBatch(events);
+            return events.size();
+        } catch (RuntimeException e) {
+            if (transaction != null && transaction.isActive()) {
+                transaction.rollback();
+            }
+            logger.error("Error publishing outbox events", e);
+            throw e;
+        } finally {
+            session.close();
+        }
+    }
+
+    /**
+     * Публикует пачки, пока outbox не опустеет. Возвращает общее число событий.
+     */
+    public long drain() {
+        long total = 0;
+        int published;
+        do {
+            published = publishBatch();
+            total += published;
+        } while (published == batchSize);
+        return total;
+    }
+
+    public synchronized void start(Duration pollInterval) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "user-outbox-publisher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = pollInterval.toMillis();
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                drain();
+            } catch (RuntimeException e) {
+                // Ошибка уже залогирована, события останутся в outbox до следующей попытки
+            }
+        }, 0, period, TimeUnit.MILLISECONDS);
+        logger.info("Outbox publisher started, batch size {}, poll interval {} ms", batchSize, period);
+    }
+
+    public long pendingEvents() {
+        try (Session session = sessionFactory.openSession()) {
+            return session.createQuery("SELECT COUNT(e) FROM UserOutboxEvent e", Long.class).uniqueResult();
+        }
+    }
+
+    public long getPublishedEvents() {
+        return publishedEvents.get();
+    }
+
+    public long getPublishedBatches() {
+        return publishedBatches.get();
+    }
+
+    /**
+     * Задержка доставки самого старого события последней пачки (от записи в outbox до публикации).
+     */
+    public long getLastLagMillis() {
+        return lastLagMillis.get();
+    }
+
+    public long getMaxLagMillis() {
+        return maxLagMillis.get();
+    }
+
+    public double getThroughputPerSecond() {
+        double seconds = (System.nanoTime() - startedAtNanos) / 1_000_000_000.0;
+        return seconds <= 0 ? 0 : publishedEvents.get() / seconds;
+    }
+
+    private void recordBatch(List<UserOutboxEvent> events) {
+        publishedEvents.addAndGet(events.size());
+        publishedBatches.incrementAndGet();
+        LocalDateTime oldest = events.get(0).getCreatedAt();
+        if (oldest != null) {
+            long lag = Math.max(0, Duration.between(oldest, LocalDateTime.now()).toMillis());
+            lastLagMillis.set(lag);
+            maxLagMillis.accumulateAndGet(lag, Math::max);
+        }
+        logger.debug("Published {} outbox events", events.size());
+    }
+
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+            try {
+                scheduler.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            scheduler = null;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.userservice.outbox;
+
+import com.userservice.entity.UserOutboxEvent;
+
+import java.util.List;
+
+/**
+ * Получатель событий из outbox. Доставка "как минимум один раз": если транзакция
+ * публикатора не закоммитится после publish, те же события будут переданы повторно,
+ * поэтому получатель должен быть идемпотентным по id события.
+ */
+@FunctionalInterface
+public interface OutboxSink {
+
+    void publish(List<UserOutboxEvent> events);
+}
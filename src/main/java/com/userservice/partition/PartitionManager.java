@@ -0,0 +1,317 @@
+package com.userservice.partition;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.jdbc.ReturningWork;
+import org.postgresql.PGConnection;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Секционирование таблицы users по месяцам created_at (PARTITION BY RANGE) и архивирование
+ * старых секций. Включается системным свойством db.partitioned=true (или DB_PARTITIONED);
+ * тогда hbm2ddl не трогает users (см. {@link PartitionedSchemaFilterProvider}), а схему
+ * создает или переводит {@link #install()}.
+ * <p>
+ * Первичный ключ секционированной таблицы - (id, created_at), поэтому глобальная уникальность
+ * email обеспечивается таблицей user_emails, которую поддерживает триггер. Вставка с занятым
+ * email по-прежнему завершается нарушением уникальности. UserDAO#upsertAll (ON CONFLICT (email))
+ * в этом режиме не поддерживается.
+ */
+public class PartitionManager {
+    private static final Logger logger = LogManager.getLogger(PartitionManager.class);
+    public static final String PARTITIONED_PROPERTY = "db.partitioned";
+    public static final int DEFAULT_MONTHS_AHEAD = 3;
+    public static final String DEFAULT_PARTITION = "users_default";
+    private static final DateTimeFormatter NAME_FORMAT = DateTimeFormatter.ofPattern("yyyyMM");
+
+    private static final String COLUMNS = "id, name, email, age, created_at, updated_at, deleted_at";
+
+    private final SessionFactory sessionFactory;
+
+    public PartitionManager(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    /**
+     * Включено ли секционирование: системное свойство db.partitioned или переменная DB_PARTITIONED.
+     */
+    public static boolean isEnabled() {
+        String value = System.getProperty(PARTITIONED_PROPERTY);
+        if (value == null || value.isEmpty()) {
+            value = System.getenv("DB_PARTITIONED");
+        }
+        return Boolean.parseBoolean(value);
+    }
+
+    public static String partitionName(YearMonth month) {
+        return "users_p" + month.format(NAME_FORMAT);
+    }
+
+    /**
+     * Создает секционированную таблицу users или переводит в нее существующую обычную таблицу
+     * (в одной транзакции, с переносом строк), затем создает секции на monthsAhead месяцев вперед.
+     * Вызывается до SchemaInitializer, который добавляет индексы и триггеры из db/schema.sql.
+     */
+    public void install() {
+        if (!isPartitioned()) {
+            inTransaction(connection -> {
+                try (Statement statement = connection.createStatement()) {
+                    boolean exists = tableExists(statement, "users");
+                    YearMonth first = YearMonth.now();
+                    YearMonth last = YearMonth.now();
+                    if (exists) {
+                        statement.execute("LOCK TABLE users IN ACCESS EXCLUSIVE MODE");
+                        try (ResultSet range = statement.executeQuery("SELECT MIN(created_at), MAX(created_at) FROM users")) {
+                            range.next();
+                            if (range.getTimestamp(1) != null) {
+                                first = min(first, YearMonth.from(range.getTimestamp(1).toLocalDateTime()));
+                                last = max(last, YearMonth.from(range.getTimestamp(2).toLocalDateTime()));
+                            }
+                        }
+                    }
+
+                    statement.execute("CREATE SEQUENCE IF NOT EXISTS users_id_seq");
+                    // Последовательность переживает удаление старой таблицы
+                    statement.execute("ALTER SEQUENCE users_id_seq OWNED BY NONE");
+                    statement.execute("CREATE TABLE users_partitioned (" +
+                            "id bigint NOT NULL DEFAULT nextval('users_id_seq'), " +
+                            "name varchar(100) NOT NULL, " +
+                            "email varchar(100) NOT NULL, " +
+                            "age integer NOT NULL, " +
+                            "created_at timestamp NOT NULL, " +
+                            "updated_at timestamp, " +
+                            "deleted_at timestamp, " +
+                            "CONSTRAINT users_partitioned_pkey PRIMARY KEY (id, created_at)" +
+                            ") PARTITION BY RANGE (created_at)");
+                    statement.execute("CREATE TABLE " + DEFAULT_PARTITION + " PARTITION OF users_partitioned DEFAULT");
+                    for (YearMonth month = first; !month.isAfter(last.plusMonths(DEFAULT_MONTHS_AHEAD)); month = month.plusMonths(1)) {
+                        statement.execute(createPartitionSql("users_partitioned", month));
+                    }
+                    if (exists) {
+                        int moved = statement.executeUpdate("INSERT INTO users_partitioned (" + COLUMNS + ") " +
+                                "SELECT " + COLUMNS + " FROM users");
+                        statement.execute("DROP TABLE users");
+                        logger.info("Moved {} users into the partitioned table", moved);
+                    }
+                    statement.execute("ALTER TABLE users_partitioned RENAME TO users");
+                    statement.execute("ALTER SEQUENCE users_id_seq OWNED BY users.id");
+                    installEmailIndex(statement);
+                }
+                return null;
+            });
+            logger.info("Users table is now partitioned by created_at month");
+        }
+        int created = ensurePartitions(DEFAULT_MONTHS_AHEAD);
+        logger.info("Partitioned users table ready, {} new partitions", created);
+    }
+
+    private static void installEmailIndex(Statement statement) throws SQLException {
+        // Таблица строится заново из users, поэтому старое содержимое не нужно
+        statement.execute("DROP TABLE IF EXISTS user_emails");
+        statement.execute("CREATE TABLE user_emails (email varchar(100) PRIMARY KEY, user_id bigint NOT NULL)");
+        statement.execute("INSERT INTO user_emails (email, user_id) SELECT email, id FROM users");
+        statement.execute("CREATE OR REPLACE FUNCTION users_sync_emails() RETURNS trigger AS $$\n" +
+                "BEGIN\n" +
+                "    IF TG_OP = 'INSERT' THEN\n" +
+                "        INSERT INTO user_emails (email, user_id) VALUES (NEW.email, NEW.id);\n" +
+                "    ELSIF TG_OP = 'UPDATE' THEN\n" +
+                "        IF NEW.email IS DISTINCT FROM OLD.email THEN\n" +
+                "            UPDATE user_emails SET email = NEW.email WHERE email = OLD.email;\n" +
+                "        END IF;\n" +
+                "    ELSE\n" +
+                "        DELETE FROM user_emails WHERE email = OLD.email;\n" +
+                "    END IF;\n" +
+                "    RETURN NULL;\n" +
+                "END;\n" +
+                "$$ LANGUAGE plpgsql");
+        statement.execute("CREATE TRIGGER trg_users_emails AFTER INSERT OR UPDATE OR DELETE ON users " +
+                "FOR EACH ROW EXECUTE FUNCTION users_sync_emails()");
+    }
+
+    public boolean isPartitioned() {
+        return inTransaction(connection -> {
+            try (Statement statement = connection.createStatement();
+                 ResultSet result = statement.executeQuery(
+                         "SELECT relkind FROM pg_class WHERE oid = to_regclass('users')")) {
+                return result.next() && "p".equals(result.getString(1));
+            }
+        });
+    }
+
+    /**
+     * Секции, подключенные к users, по имени (включая users_default).
+     */
+    public List<String> listPartitions() {
+        return inTransaction(connection -> {
+            List<String> partitions = new ArrayList<>();
+            try (Statement statement = connection.createStatement();
+                 ResultSet result = statement.executeQuery("SELECT c.relname FROM pg_inherits i " +
+                         "JOIN pg_class c ON c.oid = i.inhrelid WHERE i.inhparent = 'users'::regclass ORDER BY 1")) {
+                while (result.next()) {
+                    partitions.add(result.getString(1));
+                }
+            }
+            return partitions;
+        });
+    }
+
+    /**
+     * Создает недостающие секции от текущего месяца на monthsAhead месяцев вперед; возвращает число созданных.
+     */
+    public int ensurePartitions(int monthsAhead) {
+        int created = 0;
+        YearMonth current = YearMonth.now();
+        for (int i = 0; i <= monthsAhead; i++) {
+            if (createPartition(current.plusMonths(i))) {
+                created++;
+            }
+        }
+        return created;
+    }
+
+    /**
+     * Создает секцию месяца, если ее нет. Строки этого месяца, попавшие в users_default,
+     * переносятся в новую секцию в той же транзакции с исходными значениями updated_at.
+     */
+    public boolean createPartition(YearMonth month) {
+        String name = partitionName(month);
+        return inTransaction(connection -> {
+            try (Statement statement = connection.createStatement()) {
+                if (tableExists(statement, name)) {
+                    return false;
+                }
+                String range = rangeCondition(month);
+                int moved = statement.executeUpdate("CREATE TEMP TABLE users_moving ON COMMIT DROP AS " +
+                        "SELECT " + COLUMNS + " FROM " + DEFAULT_PARTITION + " WHERE " + range);
+                if (moved > 0) {
+                    statement.executeUpdate("DELETE FROM " + DEFAULT_PARTITION + " WHERE " + range);
+                }
+                statement.execute(createPartitionSql("users", month));
+                if (moved > 0) {
+                    // Перенос не изменение: updated_at сохраняется, иначе строки всплыли бы в changesSince
+                    statement.execute("ALTER TABLE users DISABLE TRIGGER trg_users_updated_at");
+                    statement.executeUpdate("INSERT INTO users (" + COLUMNS + ") SELECT " + COLUMNS + " FROM users_moving");
+                    statement.execute("ALTER TABLE users ENABLE TRIGGER trg_users_updated_at");
+                    logger.info("Moved {} users from {} into {}", moved, DEFAULT_PARTITION, name);
+                }
+                logger.info("Created partition {}", name);
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Отключает секцию месяца, потоково выгружает ее через COPY в сжатый CSV-файл
+     * directory/users_pYYYYMM.csv.gz и удаляет. Отключение - короткая транзакция; выгрузка
+     * идет уже без блокировки users. Если выгрузка не удалась, отключенная таблица остается
+     * и повторный вызов продолжит с нее. Слушатели UserDAO об архивированных строках не уведомляются.
+     */
+    public Path archive(YearMonth month, Path directory) {
+        String name = partitionName(month);
+        inTransaction(connection -> {
+            try (Statement statement = connection.createStatement()) {
+                if (!tableExists(statement, name)) {
+                    throw new IllegalArgumentException("Partition " + name + " does not exist");
+                }
+                if (isAttached(statement, name)) {
+                    statement.execute("ALTER TABLE users DETACH PARTITION " + name);
+                    // Email архивированных пользователей освобождаются
+                    statement.executeUpdate("DELETE FROM user_emails WHERE user_id IN (SELECT id FROM " + name + ")");
+                    logger.info("Detached partition {}", name);
+                }
+            }
+            return null;
+        });
+
+        Path target = directory.resolve(name + ".csv.gz");
+        long rows = inTransaction(connection -> {
+            try {
+                Files.createDirectories(directory);
+                Path temporary = Files.createTempFile(directory, name, ".tmp");
+                long copied;
+                try (OutputStream out = new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                    copied = connection.unwrap(PGConnection.class).getCopyAPI()
+                            .copyOut("COPY " + name + " (" + COLUMNS + ") TO STDOUT WITH (FORMAT csv, HEADER)", out);
+                }
+                Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("DROP TABLE " + name);
+                }
+                return copied;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to archive partition " + name, e);
+            }
+        });
+        logger.info("Archived {} users from partition {} to {}", rows, name, target);
+        return target;
+    }
+
+    private static String createPartitionSql(String table, YearMonth month) {
+        return "CREATE TABLE IF NOT EXISTS " + partitionName(month) + " PARTITION OF " + table +
+                " FOR VALUES FROM ('" + Timestamp.valueOf(month.atDay(1).atStartOfDay()) + "')" +
+                " TO ('" + Timestamp.valueOf(month.plusMonths(1).atDay(1).atStartOfDay()) + "')";
+    }
+
+    private static String rangeCondition(YearMonth month) {
+        return "created_at >= '" + Timestamp.valueOf(month.atDay(1).atStartOfDay()) + "' AND created_at < '" +
+                Timestamp.valueOf(month.plusMonths(1).atDay(1).atStartOfDay()) + "'";
+    }
+
+    private static boolean tableExists(Statement statement, String name) throws SQLException {
+        try (ResultSet result = statement.executeQuery("SELECT to_regclass('" + name + "') IS NOT NULL")) {
+            result.next();
+            return result.getBoolean(1);
+        }
+    }
+
+    private static boolean isAttached(Statement statement, String name) throws SQLException {
+        try (ResultSet result = statement.executeQuery("SELECT EXISTS (SELECT 1 FROM pg_inherits " +
+                "WHERE inhrelid = '" + name + "'::regclass AND inhparent = 'users'::regclass)")) {
+            result.next();
+            return result.getBoolean(1);
+        }
+    }
+
+    private static YearMonth min(YearMonth a, YearMonth b) {
+        return a.isBefore(b) ? a : b;
+    }
+
+    private static YearMonth max(YearMonth a, YearMonth b) {
+        return a.isAfter(b) ? a : b;
+    }
+
+    private <T> T inTransaction(ReturningWork<T> work) {
+        try (Session session = sessionFactory.openSession()) {
+            session.beginTransaction();
+            try {
+                T result = session.doReturningWork(work);
+                session.getTransaction().commit();
+                return result;
+            } catch (RuntimeException e) {
+                if (session.getTransaction().isActive()) {
+                    session.getTransaction().rollback();
+                }
+                throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package com.userservice.service;
+
+import com.userservice.dao.UserChange;
+import com.userservice.dao.UserChangeListener;
+import com.userservice.dao.UserDAO;
+import com.userservice.invalidation.UserCacheInvalidator;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Фильтр Блума по нормализованным email (trim + нижний регистр) для дешевой предпроверки дубликатов.
+ * Ответ "нет" точен: такого email в базе нет, и вставку можно делать без предварительного запроса.
+ * Ответ "возможно" требует точной проверки в базе. Удаление из фильтра невозможно, поэтому
+ * после массовых удалений доля ложных срабатываний растет - фильтр нужно периодически
+ * перестраивать через {@link #rebuild(UserDAO)}.
+ * <p>
+ * Фильтр загружается из всех строк users, включая мягко удаленные (их email занят уникальным
+ * индексом), и дальше следит за событиями DAO и, если подключен к InvalidationListener, за
+ * изменениями других узлов. Записи в обход слушателей DAO - {@link com.userservice.job.UserSeeder}
+ * и {@link com.userservice.job.UserJob} без publishChangesTo - фильтр не видит: после них нужен
+ * {@link #rebuild(UserDAO)}, иначе ответ "нет" может оказаться неверным.
+ */
+public class EmailBloomFilter implements UserChangeListener, UserCacheInvalidator {
+    private static final Logger logger = LogManager.getLogger(EmailBloomFilter.class);
+    private static final int LOAD_PAGE_SIZE = 1000;
+
+    private final int bitCount;
+    private final int hashCount;
+    private volatile AtomicLongArray bits;
+    // Во время перестройки новые email пишутся и в строящийся массив
+    private volatile AtomicLongArray building;
+    private final AtomicLong insertions = new AtomicLong();
+    private final AtomicLong negatives = new AtomicLong();
+    private final AtomicLong truePositives = new AtomicLong();
+    private final AtomicLong falsePositives = new AtomicLong();
+    private volatile UserDAO source;
+
+    /**
+     * @param expectedEmails ожидаемое число email в базе
+     * @param falsePositiveRate целевая доля ложных срабатываний при этом числе
+     */
+    public EmailBloomFilter(long expectedEmails, double falsePositiveRate) {
+        if (expectedEmails <= 0) {
+            throw new IllegalArgumentException("Expected emails must be positive");
+        }
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("False positive rate must be between 0 and 1");
+        }
+        long optimalBits = (long) Math.ceil(-expectedEmails * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.bitCount = (int) Math.min(Math.max(optimalBits, 64), Integer.MAX_VALUE - 63);
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedEmails * Math.log(2)));
+        this.bits = new AtomicLongArray((bitCount + 63) / 64);
+    }
+
+    /**
+     * Заполняет фильтр email всех пользователей и подписывает его на последующие изменения.
+     */
+    public void load(UserDAO userDAO) {
+        userDAO.addChangeListener(this);
+        source = userDAO;
+        fill(userDAO, bits);
+        insertions.set(estimateInsertions(bits));
+        logger.info("Email Bloom filter loaded: {} emails, {} bits, {} hashes", insertions.get(), bitCount, hashCount);
+    }
+
+    /**
+     * Строит фильтр заново (сбрасывая email удаленных пользователей) и атомарно подменяет текущий.
+     */
+    public synchronized void rebuild(UserDAO userDAO) {
+        AtomicLongArray fresh = new AtomicLongArray(bits.length());
+        building = fresh;
+        try {
+            fill(userDAO, fresh);
+            bits = fresh;
+        } finally {
+            building = null;
+        }
+        insertions.set(estimateInsertions(fresh));
+        negatives.set(0);
+        truePositives.set(0);
+        falsePositives.set(0);
+        logger.info("Email Bloom filter rebuilt: {} emails", insertions.get());
+    }
+
+    private void fill(UserDAO userDAO, AtomicLongArray target) {
+        String after = "";
+        List<String> page;
+        do {
+            page = userDAO.findEmailsAfter(after, LOAD_PAGE_SIZE);
+            page.forEach(email -> addTo(target, email));
+            if (!page.isEmpty()) {
+                after = page.get(page.size() - 1);
+            }
+        } while (page.size() == LOAD_PAGE_SIZE);
+    }
+
+    /**
+     * Добавляет email в текущий массив и в строящийся. Если во время записи rebuild успел
+     * подменить массив, запись повторяется в новый: иначе email мог бы попасть только в старый.
+     */
+    public void add(String email) {
+        if (email == null) {
+            return;
+        }
+        AtomicLongArray target = bits;
+        while (true) {
+            AtomicLongArray next = building;
+            addTo(target, email);
+            if (next != null && next != target) {
+                addTo(next, email);
+            }
+            AtomicLongArray current = bits;
+            if (current == target) {
+                return;
+            }
+            target = current;
+        }
+    }
+
+    private void addTo(AtomicLongArray target, String email) {
+        long[] hashes = hash(email);
+        boolean changed = false;
+        for (int i = 0; i < hashCount; i++) {
+            int bit = bitIndex(hashes, i);
+            long mask = 1L << bit;
+            long word;
+            do {
+                word = target.get(bit >>> 6);
+                if ((word & mask) != 0) {
+                    break;
+                }
+            } while (!target.compareAndSet(bit >>> 6, word, word | mask));
+            changed |= (word & mask) == 0;
+        }
+        // Повторно добавленный email не меняет ни одного бита и не учитывается
+        if (changed && target == bits) {
+            insertions.incrementAndGet();
+        }
+    }
+
+    /**
+     * false - email точно не встречался; true - возможно встречался, нужна точная проверка.
+     */
+    public boolean mightContain(String email) {
+        if (email == null) {
+            return false;
+        }
+        AtomicLongArray current = bits;
+        long[] hashes = hash(email);
+        for (int i = 0; i < hashCount; i++) {
+            int bit = bitIndex(hashes, i);
+            if ((current.get(bit >>> 6) & (1L << bit)) == 0) {
+                negatives.incrementAndGet();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Учитывает результат точной проверки после положительного ответа фильтра.
+     */
+    public void recordCheck(boolean exists) {
+        (exists ? truePositives : falsePositives).incrementAndGet();
+    }
+
+    @Override
+    public void onChange(UserChange change) {
+        if (change.getKind() != UserChange.Kind.DELETED) {
+            add(change.getAfter().getEmail());
+        }
+    }
+
+    /**
+     * Пользователи созданы или изменены на другом узле: их email добавляются в фильтр.
+     */
+    @Override
+    public void invalidate(Set<Long> ids) {
+        UserDAO userDAO = source;
+        if (userDAO == null) {
+            return;
+        }
+        userDAO.readByIds(ids).forEach(user -> add(user.getEmail()));
+    }
+
+    @Override
+    public void invalidateAll() {
+        UserDAO userDAO = source;
+        if (userDAO != null) {
+            rebuild(userDAO);
+        }
+    }
+
+    public long getNegatives() {
+        return negatives.get();
+    }
+
+    public long getTruePositives() {
+        return truePositives.get();
+    }
+
+    public long getFalsePositives() {
+        return falsePositives.get();
+    }
+
+    /**
+     * Наблюдаемая доля ложных срабатываний: среди проверенных email, которых нет в базе,
+     * доля тех, на которые фильтр ответил "возможно".
+     */
+    public double getObservedFalsePositiveRate() {
+        long fp = falsePositives.get();
+        long absent = fp + negatives.get();
+        return absent == 0 ? 0.0 : (double) fp / absent;
+    }
+
+    /**
+     * Теоретическая доля ложных срабатываний при текущем числе добавленных email.
+     */
+    public double getExpectedFalsePositiveRate() {
+        return Math.pow(1 - Math.exp(-(double) hashCount * insertions.get() / bitCount), hashCount);
+    }
+
+    /**
+     * Оценка числа различных email по доле установленных битов (Swamidass-Baldi).
+     */
+    private long estimateInsertions(AtomicLongArray target) {
+        long setBits = 0;
+        for (int i = 0; i < target.length(); i++) {
+            setBits += Long.bitCount(target.get(i));
+        }
+        if (setBits >= bitCount) {
+            return Long.MAX_VALUE;
+        }
+        return Math.round(-(double) bitCount / hashCount * Math.log(1 - (double) setBits / bitCount));
+    }
+
+    public long getApproximateCount() {
+        return insertions.get();
+    }
+
+    public int getBitCount() {
+        return bitCount;
+    }
+
+    public int getHashCount() {
+        return hashCount;
+    }
+
+    static String normalize(String email) {
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private int bitIndex(long[] hashes, int i) {
+        // Двойное хеширование (Kirsch-Mitzenmacher): h1 + i * h2
+        long combined = hashes[0] + i * hashes[1];
+        return (int) ((combined & Long.MAX_VALUE) % bitCount);
+    }
+
+    private static long[] hash(String email) {
+        byte[] bytes = normalize(email).getBytes(StandardCharsets.UTF_8);
+        long h1 = 0xcbf29ce484222325L;
+        long h2 = 0x84222325cbf29ce4L;
+        for (byte b : bytes) {
+            h1 = (h1 ^ (b & 0xff)) * 0x100000001b3L;
+            h2 = (h2 ^ (b & 0xff)) * 0x9E3779B97F4A7C15L;
+        }
+        return new long[]{mix(h1), mix(h2) | 1};
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb93e9ef2a135L;
+        return h ^ (h >>> 33);
+    }
+}
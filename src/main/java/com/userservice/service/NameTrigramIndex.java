@@ -0,0 +1,264 @@
+package com.userservice.service;
+
+import com.userservice.dao.UserChange;
+import com.userservice.dao.UserChangeListener;
+import com.userservice.dao.UserDAO;
+import com.userservice.dao.UserQuery;
+import com.userservice.entity.User;
+import com.userservice.invalidation.UserCacheInvalidator;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Инвертированный индекс триграмм имен в памяти процесса для мгновенного typeahead-поиска.
+ * Триграммы строятся так же, как в pg_trgm (слова в нижнем регистре, дополненные пробелами),
+ * поэтому результаты близки к {@link UserDAO#searchByName(String, int)}.
+ * Индекс подписывается на изменения {@link UserDAO} и поддерживается в актуальном состоянии.
+ */
+public class NameTrigramIndex implements UserChangeListener, UserCacheInvalidator {
+    private static final Logger logger = LogManager.getLogger(NameTrigramIndex.class);
+    private static final int LOAD_PAGE_SIZE = 1000;
+    public static final double DEFAULT_THRESHOLD = 0.3;
+
+    private volatile Postings current = new Postings();
+    // Изменения, пришедшие во время полной перестройки; после замены они перечитываются
+    private volatile Set<Long> changedDuringRebuild;
+    private final double threshold;
+    private volatile UserDAO source;
+
+    /**
+     * Содержимое индекса; полная перестройка заполняет новый экземпляр и подменяет ссылку,
+     * поэтому поиск никогда не видит частично загруженный индекс.
+     */
+    private static class Postings {
+        private final Map<String, Set<Long>> postings = new ConcurrentHashMap<>();
+        private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+
+        private void put(User user) {
+            remove(user.getId());
+            Entry entry = new Entry(new User(user), trigrams(user.getName()));
+            entries.put(user.getId(), entry);
+            for (String trigram : entry.trigrams) {
+                postings.computeIfAbsent(trigram, key -> ConcurrentHashMap.newKeySet()).add(user.getId());
+            }
+        }
+
+        private void remove(Long id) {
+            Entry entry = entries.remove(id);
+            if (entry == null) {
+                return;
+            }
+            for (String trigram : entry.trigrams) {
+                Set<Long> ids = postings.get(trigram);
+                if (ids != null) {
+                    ids.remove(id);
+                }
+            }
+        }
+    }
+
+    private static class Entry {
+        private final User user;
+        private final Set<String> trigrams;
+        private final String lowerName;
+
+        private Entry(User user, Set<String> trigrams) {
+            this.user = user;
+            this.trigrams = trigrams;
+            this.lowerName = user.getName().toLowerCase(Locale.ROOT);
+        }
+    }
+
+    private static class Match {
+        private final Entry entry;
+        private final double score;
+
+        private Match(Entry entry, double score) {
+            this.entry = entry;
+            this.score = score;
+        }
+    }
+
+    public NameTrigramIndex() {
+        this(DEFAULT_THRESHOLD);
+    }
+
+    public NameTrigramIndex(double threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * Загружает всех пользователей постранично и подписывает индекс на последующие изменения.
+     */
+    public void load(UserDAO userDAO) {
+        userDAO.addChangeListener(this);
+        source = userDAO;
+        fill(userDAO, current);
+    }
+
+    private static void fill(UserDAO userDAO, Postings target) {
+        UserQuery query = new UserQuery().limit(LOAD_PAGE_SIZE);
+        List<User> page;
+        do {
+            page = userDAO.search(query);
+            for (User user : page) {
+                if (user.getId() != null && user.getName() != null) {
+                    target.put(user);
+                }
+            }
+            if (!page.isEmpty()) {
+                query = new UserQuery().limit(LOAD_PAGE_SIZE).after(page.get(page.size() - 1));
+            }
+        } while (page.size() == LOAD_PAGE_SIZE);
+        logger.info("Name trigram index loaded: {} users, {} trigrams", target.entries.size(), target.postings.size());
+    }
+
+    public void put(User user) {
+        if (user.getId() == null || user.getName() == null) {
+            return;
+        }
+        markChanged(user.getId());
+        current.put(user);
+    }
+
+    public void remove(Long id) {
+        markChanged(id);
+        current.remove(id);
+    }
+
+    private void markChanged(Long id) {
+        Set<Long> changed = changedDuringRebuild;
+        if (changed != null) {
+            changed.add(id);
+        }
+    }
+
+    public int size() {
+        return current.entries.size();
+    }
+
+    public List<User> search(String query, int limit) {
+        Postings index = current;
+        String lowerQuery = query.toLowerCase(Locale.ROOT).trim();
+        Set<String> queryTrigrams = trigrams(lowerQuery);
+
+        Map<Long, Integer> shared = new HashMap<>();
+        for (String trigram : queryTrigrams) {
+            Set<Long> ids = index.postings.get(trigram);
+            if (ids != null) {
+                for (Long id : ids) {
+                    shared.merge(id, 1, Integer::sum);
+                }
+            }
+        }
+
+        // Без слова из трех символов подстрока может не дать ни одной общей триграммы
+        // ("an" внутри "ivanov"), поэтому кандидатами становятся все записи индекса
+        Set<Long> candidates = shared.isEmpty() || !hasFullTrigram(lowerQuery)
+                ? index.entries.keySet() : shared.keySet();
+
+        List<Match> matches = new ArrayList<>();
+        for (Long id : candidates) {
+            Entry entry = index.entries.get(id);
+            if (entry == null) {
+                continue;
+            }
+            int common = shared.getOrDefault(id, 0);
+            double similarity = (double) common / (queryTrigrams.size() + entry.trigrams.size() - common);
+            if (similarity >= threshold || entry.lowerName.contains(lowerQuery)) {
+                matches.add(new Match(entry, similarity));
+            }
+        }
+
+        matches.sort(Comparator.comparingDouble((Match match) -> match.score).reversed()
+                .thenComparing(match -> match.entry.user.getId()));
+        List<User> result = new ArrayList<>(Math.min(limit, matches.size()));
+        for (int i = 0; i < matches.size() && i < limit; i++) {
+            result.add(new User(matches.get(i).entry.user));
+        }
+        return result;
+    }
+
+    @Override
+    public void onChange(UserChange change) {
+        if (change.getKind() == UserChange.Kind.DELETED) {
+            remove(change.getId());
+        } else {
+            put(change.getAfter());
+        }
+    }
+
+    /**
+     * Перечитывает из базы пользователей, измененных на других узлах.
+     */
+    @Override
+    public void invalidate(Set<Long> ids) {
+        UserDAO userDAO = source;
+        if (userDAO == null) {
+            return;
+        }
+        Set<Long> missing = new HashSet<>(ids);
+        for (User user : userDAO.readByIds(ids)) {
+            put(user);
+            missing.remove(user.getId());
+        }
+        missing.forEach(this::remove);
+    }
+
+    /**
+     * Перестраивает индекс в новых картах и подменяет ими текущие; до подмены поиск работает
+     * по старому индексу. Пользователи, изменившиеся во время перестройки, затем перечитываются.
+     */
+    @Override
+    public synchronized void invalidateAll() {
+        UserDAO userDAO = source;
+        if (userDAO == null) {
+            return;
+        }
+        Set<Long> changed = ConcurrentHashMap.newKeySet();
+        changedDuringRebuild = changed;
+        try {
+            Postings rebuilt = new Postings();
+            fill(userDAO, rebuilt);
+            current = rebuilt;
+        } finally {
+            changedDuringRebuild = null;
+        }
+        if (!changed.isEmpty()) {
+            invalidate(changed);
+        }
+    }
+
+    private static boolean hasFullTrigram(String lowerQuery) {
+        for (String word : lowerQuery.split("[^\\p{L}\\p{N}]+")) {
+            if (word.length() >= 3) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static Set<String> trigrams(String text) {
+        Set<String> result = new HashSet<>();
+        for (String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            String padded = "  " + word + " ";
+            for (int i = 0; i + 3 <= padded.length(); i++) {
+                result.add(padded.substring(i, i + 3));
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,39 @@
+package com.userservice.service;
+
+import com.userservice.entity.User;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Страница потока изменений: измененные пользователи и курсор, с которого продолжать синхронизацию.
+ */
+public class UserChangesPage {
+    private final List<User> users;
+    private final String nextCursor;
+    private final boolean hasMore;
+
+    public UserChangesPage(List<User> users, String nextCursor, boolean hasMore) {
+        this.users = Collections.unmodifiableList(users);
+        this.nextCursor = nextCursor;
+        this.hasMore = hasMore;
+    }
+
+    public List<User> getUsers() {
+        return users;
+    }
+
+    /**
+     * Курсор для следующего вызова; если изменений не было, совпадает с переданным.
+     */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    /**
+     * Страница заполнена целиком - вероятно, есть еще изменения, их стоит запросить сразу.
+     */
+    public boolean hasMore() {
+        return hasMore;
+    }
+}
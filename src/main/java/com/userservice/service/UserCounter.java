@@ -0,0 +1,92 @@
+package com.userservice.service;
+
+import com.userservice.dao.UserChange;
+import com.userservice.dao.UserChangeListener;
+import com.userservice.dao.UserDAO;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Счетчик пользователей в памяти процесса. Изменяется по событиям создания и удаления из {@link UserDAO}
+ * и периодически сверяется с точным COUNT(*), чтобы исправить расхождения
+ * (изменения с других узлов или в обход DAO).
+ */
+public class UserCounter implements UserChangeListener, AutoCloseable {
+    private static final Logger logger = LogManager.getLogger(UserCounter.class);
+
+    private final UserDAO userDAO;
+    private final AtomicLong count = new AtomicLong();
+    private volatile boolean initialized;
+    private ScheduledExecutorService scheduler;
+
+    public UserCounter(UserDAO userDAO) {
+        this.userDAO = userDAO;
+        userDAO.addChangeListener(this);
+    }
+
+    public long get() {
+        if (!initialized) {
+            reconcile();
+        }
+        return count.get();
+    }
+
+    /**
+     * Заменяет значение счетчика точным числом строк. Изменения, закоммиченные во время
+     * подсчета, могут быть учтены дважды или пропущены - это исправит следующая сверка.
+     */
+    public synchronized void reconcile() {
+        long exact = userDAO.count();
+        long previous = count.getAndSet(exact);
+        if (initialized && previous != exact) {
+            logger.info("User counter reconciled: {} -> {}", previous, exact);
+        }
+        initialized = true;
+    }
+
+    public synchronized void start(Duration reconcileInterval) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "user-counter-reconcile");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = reconcileInterval.toMillis();
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                reconcile();
+            } catch (RuntimeException e) {
+                logger.error("User counter reconciliation failed", e);
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void onChange(UserChange change) {
+        if (!initialized) {
+            return;
+        }
+        if (change.getKind() == UserChange.Kind.CREATED) {
+            count.incrementAndGet();
+        } else if (change.getKind() == UserChange.Kind.DELETED) {
+            count.decrementAndGet();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        userDAO.removeChangeListener(this);
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.userservice.service;
+
+import com.userservice.dao.UserChange;
+import com.userservice.dao.UserChangeListener;
+import com.userservice.dao.UserDAO;
+import com.userservice.entity.User;
+import com.userservice.invalidation.UserCacheInvalidator;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Чтение пользователя по ID с объединением одновременных запросов (single-flight)
+ * и кратковременным кешем отсутствующих ID. Параллельные запросы одного ID ждут один
+ * запрос к базе и получают каждый свою копию результата. Отсутствие ID запоминается
+ * на negativeTtl; создание пользователя через этот узел сбрасывает запись сразу.
+ * Промах не кешируется, если ID инвалидировали, пока шло чтение: иначе созданный
+ * в это время пользователь был бы скрыт до конца negativeTtl.
+ */
+public class UserLookup implements UserChangeListener, UserCacheInvalidator {
+    private static final Logger logger = LogManager.getLogger(UserLookup.class);
+    private static final int INVALIDATION_STRIPES = 64;
+
+    private final UserDAO userDAO;
+    private final long negativeTtlNanos;
+    private final int maxNegativeEntries;
+    private final Map<Long, CompletableFuture<User>> inFlight = new ConcurrentHashMap<>();
+    private final Map<Long, Long> missingUntil = new ConcurrentHashMap<>();
+    // Счетчики инвалидаций по полосам ID (ограниченная память вместо версии на каждый ID)
+    private final AtomicLongArray invalidationStamps = new AtomicLongArray(INVALIDATION_STRIPES);
+    private final AtomicLong databaseReads = new AtomicLong();
+    private final AtomicLong coalescedReads = new AtomicLong();
+    private final AtomicLong negativeHits = new AtomicLong();
+
+    public UserLookup(UserDAO userDAO, Duration negativeTtl, int maxNegativeEntries) {
+        if (maxNegativeEntries <= 0) {
+            throw new IllegalArgumentException("Max negative entries must be positive");
+        }
+        this.userDAO = userDAO;
+        this.negativeTtlNanos = negativeTtl.toNanos();
+        this.maxNegativeEntries = maxNegativeEntries;
+        userDAO.addChangeListener(this);
+    }
+
+    /**
+     * Возвращает копию пользователя или null, если его нет.
+     */
+    public User find(Long id) {
+        Long expires = missingUntil.get(id);
+        if (expires != null) {
+            if (System.nanoTime() - expires < 0) {
+                negativeHits.incrementAndGet();
+                return null;
+            }
+            missingUntil.remove(id, expires);
+        }
+
+        CompletableFuture<User> mine = new CompletableFuture<>();
+        CompletableFuture<User> existing = inFlight.putIfAbsent(id, mine);
+        if (existing != null) {
+            coalescedReads.incrementAndGet();
+            return copy(join(existing));
+        }
+
+        try {
+            long stamp = invalidationStamp(id);
+            databaseReads.incrementAndGet();
+            User user = userDAO.read(id);
+            if (user == null) {
+                rememberMissing(id, stamp);
+            }
+            mine.complete(user);
+            return copy(user);
+        } catch (RuntimeException e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(id, mine);
+        }
+    }
+
+    private int stripe(Long id) {
+        return Long.hashCode(id * 0x9E3779B97F4A7C15L) & (INVALIDATION_STRIPES - 1);
+    }
+
+    private long invalidationStamp(Long id) {
+        return invalidationStamps.get(stripe(id));
+    }
+
+    /**
+     * Запоминает промах, прочитанный при значении счетчика инвалидаций stamp. Запись сначала
+     * добавляется, затем счетчик проверяется повторно: инвалидация, прошедшая между проверкой
+     * и добавлением, иначе не увидела бы запись и не удалила бы ее.
+     */
+    private void rememberMissing(Long id, long stamp) {
+        if (missingUntil.size() >= maxNegativeEntries) {
+            long now = System.nanoTime();
+            missingUntil.values().removeIf(expires -> now - expires >= 0);
+            if (missingUntil.size() >= maxNegativeEntries) {
+                logger.debug("Negative cache is full ({} entries), not caching ID {}", maxNegativeEntries, id);
+                return;
+            }
+        }
+        Long expires = System.nanoTime() + negativeTtlNanos;
+        missingUntil.put(id, expires);
+        if (invalidationStamp(id) != stamp) {
+            missingUntil.remove(id, expires);
+        }
+    }
+
+    private static User join(CompletableFuture<User> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static User copy(User user) {
+        return user == null ? null : new User(user);
+    }
+
+    @Override
+    public void onChange(UserChange change) {
+        if (change.getKind() == UserChange.Kind.CREATED) {
+            invalidate(change.getId());
+        }
+    }
+
+    public void invalidate(Long id) {
+        invalidationStamps.incrementAndGet(stripe(id));
+        missingUntil.remove(id);
+    }
+
+    @Override
+    public void invalidate(Set<Long> ids) {
+        for (Long id : ids) {
+            invalidationStamps.incrementAndGet(stripe(id));
+        }
+        missingUntil.keySet().removeAll(ids);
+    }
+
+    @Override
+    public void invalidateAll() {
+        for (int i = 0; i < INVALIDATION_STRIPES; i++) {
+            invalidationStamps.incrementAndGet(i);
+        }
+        missingUntil.clear();
+    }
+
+    public long getDatabaseReads() {
+        return databaseReads.get();
+    }
+
+    public long getCoalescedReads() {
+        return coalescedReads.get();
+    }
+
+    public long getNegativeHits() {
+        return negativeHits.get();
+    }
+
+    public int negativeCacheSize() {
+        return missingUntil.size();
+    }
+}
@@ -0,0 +1,175 @@
+package com.userservice.service;
+
+import com.userservice.dao.UserDAO;
+import com.userservice.dao.UserQuery;
+import com.userservice.entity.User;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+
+/**
+ * Flow.Publisher пользователей с обратным давлением. Строки читаются keyset-страницами
+ * через {@link UserDAO#search(UserQuery)} только по мере запросов подписчика (request(n));
+ * сессия и соединение заняты лишь на время чтения одной страницы, поэтому медленный
+ * или брошенный подписчик не держит соединение из пула. Каждый подписчик получает
+ * независимый проход по выборке; сигналы одному подписчику выдаются последовательно.
+ */
+public class UserPublisher implements Flow.Publisher<User> {
+    private static final Logger logger = LogManager.getLogger(UserPublisher.class);
+    private static final ExecutorService DEFAULT_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "user-publisher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final UserDAO userDAO;
+    private final UserQuery query;
+    private final Executor executor;
+    private final UnaryOperator<User> mapper;
+
+    /**
+     * @param query критерии и порядок выборки; limit задает размер страницы
+     */
+    public UserPublisher(UserDAO userDAO, UserQuery query) {
+        this(userDAO, query, DEFAULT_EXECUTOR, UnaryOperator.identity());
+    }
+
+    /**
+     * @param mapper применяется к каждому пользователю перед выдачей подписчику
+     */
+    public UserPublisher(UserDAO userDAO, UserQuery query, UnaryOperator<User> mapper) {
+        this(userDAO, query, DEFAULT_EXECUTOR, mapper);
+    }
+
+    public UserPublisher(UserDAO userDAO, UserQuery query, Executor executor, UnaryOperator<User> mapper) {
+        this.userDAO = userDAO;
+        this.query = new UserQuery(query);
+        this.executor = executor;
+        this.mapper = mapper;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super User> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("Subscriber cannot be null");
+        }
+        UserSubscription subscription = new UserSubscription(subscriber, new UserQuery(query));
+        subscriber.onSubscribe(subscription);
+    }
+
+    private class UserSubscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super User> subscriber;
+        private final UserQuery pageQuery;
+        private final Deque<User> buffer = new ArrayDeque<>();
+        private final AtomicLong demand = new AtomicLong();
+        // Счетчик запросов на обработку: цикл drain выполняет только один поток
+        private final AtomicInteger pendingDrains = new AtomicInteger();
+        private volatile boolean cancelled;
+        private boolean exhausted;
+        private boolean terminated;
+        private Throwable invalidRequest;
+
+        private UserSubscription(Flow.Subscriber<? super User> subscriber, UserQuery pageQuery) {
+            this.subscriber = subscriber;
+            this.pageQuery = pageQuery;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException("Requested count must be positive, got " + n);
+            } else {
+                demand.accumulateAndGet(n, (current, added) -> {
+                    long sum = current + added;
+                    return sum < 0 ? Long.MAX_VALUE : sum;
+                });
+            }
+            scheduleDrain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            scheduleDrain();
+        }
+
+        private void scheduleDrain() {
+            if (pendingDrains.getAndIncrement() == 0) {
+                executor.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            int missed = 1;
+            do {
+                drainOnce();
+                missed = pendingDrains.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void drainOnce() {
+            if (terminated) {
+                return;
+            }
+            if (cancelled) {
+                terminate();
+                return;
+            }
+            if (invalidRequest != null) {
+                terminate();
+                subscriber.onError(invalidRequest);
+                return;
+            }
+            try {
+                while (demand.get() > 0 && !cancelled) {
+                    if (buffer.isEmpty()) {
+                        if (exhausted) {
+                            break;
+                        }
+                        fetchPage();
+                        continue;
+                    }
+                    demand.decrementAndGet();
+                    subscriber.onNext(buffer.poll());
+                }
+                if (cancelled) {
+                    terminate();
+                } else if (buffer.isEmpty() && exhausted) {
+                    terminate();
+                    subscriber.onComplete();
+                }
+            } catch (RuntimeException e) {
+                logger.error("User stream failed", e);
+                terminate();
+                subscriber.onError(e);
+            }
+        }
+
+        private void fetchPage() {
+            List<User> page = userDAO.search(pageQuery);
+            if (page.size() < pageQuery.getLimit()) {
+                exhausted = true;
+            }
+            if (!page.isEmpty()) {
+                // Копия: mapper может изменить пользователя, а позиция keyset должна остаться исходной
+                pageQuery.after(new User(page.get(page.size() - 1)));
+                page.forEach(user -> buffer.add(mapper.apply(user)));
+            }
+        }
+
+        private void terminate() {
+            terminated = true;
+            buffer.clear();
+        }
+    }
+}
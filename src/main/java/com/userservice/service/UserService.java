@@ -1,53 +1,315 @@
 package com.userservice.service;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Flow;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import com.userservice.dao.UpsertResult;
+import com.userservice.dao.UserChangeCursor;
 import com.userservice.dao.UserDAO;
+import com.userservice.dao.UserQuery;
 import com.userservice.entity.User;
+import com.userservice.util.SqlStatementCounter;
 
 public class UserService {
     private static final Logger logger = LogManager.getLogger(UserService.class);
     private final UserDAO userDAO;
+    private UserCounter userCounter;
+    private NameTrigramIndex nameIndex;
+    private UserStatsCollector statsCollector;
+    private WriteBehindBuffer writeBehindBuffer;
+    private EmailBloomFilter emailFilter;
+    private UserLookup userLookup;
+    private Duration changeSafetyLag = DEFAULT_CHANGE_SAFETY_LAG;
+    private final UserValidator validator = new UserValidator();
+
+    public static final Duration DEFAULT_CHANGE_SAFETY_LAG = Duration.ofSeconds(1);
+
+    public enum CountMode {
+        /** Точный COUNT(*) по таблице. */
+        EXACT,
+        /** Оценка из статистики планировщика PostgreSQL. */
+        APPROXIMATE,
+        /** Счетчик в памяти процесса (требует {@link #setUserCounter(UserCounter)}). */
+        CACHED
+    }
 
     public UserService(UserDAO userDAO) {
         this.userDAO = userDAO;
     }
 
+    public void setUserCounter(UserCounter userCounter) {
+        this.userCounter = userCounter;
+    }
+
     public User createUser(String name, String email, Integer age) {
         logger.debug("Creating user with name: {}, email: {}, age: {}", name, email, age);
         
         validateUserData(name, email, age);
         
         User user = new User(name, email, age);
-        Long id = userDAO.create(user);
+        Long id = SqlStatementCounter.track("UserService.createUser", () -> {
+            checkEmailAvailable(email);
+            return userDAO.create(user);
+        });
         user.setId(id);
+        if (emailFilter != null) {
+            emailFilter.add(email);
+        }
         
         logger.info("User created successfully with ID: {}", id);
         return user;
     }
 
+    /**
+     * Создает пользователя или, если email уже занят, обновляет его имя и возраст - атомарно, одним запросом.
+     */
+    public UpsertResult upsertUser(String name, String email, Integer age) {
+        return upsertUsers(List.of(new User(name, email, age))).get(0);
+    }
+
+    /**
+     * Пакетный вариант upsertUser; все записи проверяются до обращения к базе.
+     * При нарушениях бросается {@link UserValidationException} со всеми нарушениями пакета.
+     */
+    public List<UpsertResult> upsertUsers(List<User> users) {
+        logger.debug("Upserting {} users", users.size());
+        SortedMap<Integer, List<UserValidator.Violation>> invalid = validateUsers(users);
+        if (!invalid.isEmpty()) {
+            logger.warn("Rejected upsert batch: {} of {} users are invalid, first at index {}: {}",
+                    invalid.size(), users.size(), invalid.firstKey(), invalid.get(invalid.firstKey()));
+            throw new UserValidationException(invalid);
+        }
+
+        List<UpsertResult> results = SqlStatementCounter.track("UserService.upsertUsers", () -> userDAO.upsertAll(users));
+        if (emailFilter != null) {
+            users.forEach(user -> emailFilter.add(user.getEmail()));
+        }
+        if (writeBehindBuffer != null) {
+            // Значения из upsert новее отложенных изменений
+            results.stream().filter(result -> !result.isInserted())
+                    .forEach(result -> writeBehindBuffer.discard(result.getId()));
+        }
+        logger.info("Upserted {} users, {} inserted", results.size(),
+                results.stream().filter(UpsertResult::isInserted).count());
+        return results;
+    }
+
+    /**
+     * Проверяет пакет без обращения к базе и без исключений: все нарушения по индексам
+     * некорректных записей (например, для отчета об импорте). Большие пакеты проверяются параллельно.
+     */
+    public SortedMap<Integer, List<UserValidator.Violation>> validateUsers(List<User> users) {
+        if (users == null) {
+            throw new IllegalArgumentException("Users cannot be null");
+        }
+        return validator.validateAll(users);
+    }
+
+    /**
+     * Включает предпроверку дубликатов email по фильтру Блума: для заведомо нового email
+     * createUser сразу выполняет вставку, для возможного дубликата - проверяет его запросом
+     * вместо неудачной вставки с откатом.
+     */
+    public void setEmailFilter(EmailBloomFilter emailFilter) {
+        this.emailFilter = emailFilter;
+    }
+
+    private void checkEmailAvailable(String email) {
+        if (emailFilter == null || !emailFilter.mightContain(email)) {
+            return;
+        }
+        boolean exists = userDAO.existsByEmail(email);
+        emailFilter.recordCheck(exists);
+        if (exists) {
+            logger.warn("Email {} is already taken", email);
+            throw new IllegalArgumentException("User with this email already exists");
+        }
+    }
+
+    /**
+     * Возвращает email из пакета, которые уже заняты или повторяются внутри пакета.
+     * В базу отправляется один запрос и только для email, на которые фильтр ответил "возможно".
+     */
+    public Set<String> findDuplicateEmails(Collection<String> emails) {
+        if (emails == null) {
+            throw new IllegalArgumentException("Emails cannot be null");
+        }
+        Set<String> duplicates = new LinkedHashSet<>();
+        Set<String> seen = new HashSet<>();
+        List<String> candidates = new ArrayList<>();
+        for (String email : emails) {
+            if (email == null) {
+                continue;
+            }
+            if (!seen.add(email)) {
+                duplicates.add(email);
+            } else if (emailFilter == null || emailFilter.mightContain(email)) {
+                candidates.add(email);
+            }
+        }
+
+        Set<String> existing = userDAO.findExistingEmails(candidates);
+        if (emailFilter != null) {
+            candidates.forEach(email -> emailFilter.recordCheck(existing.contains(email)));
+        }
+        duplicates.addAll(existing);
+        logger.debug("Found {} duplicate emails in batch of {}, {} checked in database",
+                duplicates.size(), emails.size(), candidates.size());
+        return duplicates;
+    }
+
+    /**
+     * Включает объединение одновременных чтений одного ID и кеш отсутствующих ID для getUserById.
+     */
+    public void setUserLookup(UserLookup userLookup) {
+        this.userLookup = userLookup;
+    }
+
     public User getUserById(Long id) {
+        return findUserById(id).orElseThrow(() -> {
+            logger.warn("User with ID {} not found", id);
+            return new IllegalArgumentException("User with ID " + id + " not found");
+        });
+    }
+
+    /**
+     * Как getUserById, но отсутствие пользователя - обычный результат, а не исключение.
+     */
+    public Optional<User> findUserById(Long id) {
         logger.debug("Getting user by ID: {}", id);
         
         if (id == null || id <= 0) {
             throw new IllegalArgumentException("User ID must be positive");
         }
         
-        User user = userDAO.read(id);
-        if (user == null) {
-            logger.warn("User with ID {} not found", id);
-            throw new IllegalArgumentException("User with ID " + id + " not found");
-        }
-        
-        return user;
+        User user = SqlStatementCounter.track("UserService.findUserById",
+                () -> userLookup != null ? userLookup.find(id) : userDAO.read(id));
+        return Optional.ofNullable(overlayPending(user));
     }
 
     public List<User> getAllUsers() {
         logger.debug("Getting all users");
-        return userDAO.readAll();
+        return overlayPending(SqlStatementCounter.track("UserService.getAllUsers", userDAO::readAll));
+    }
+
+    public void setNameIndex(NameTrigramIndex nameIndex) {
+        this.nameIndex = nameIndex;
+    }
+
+    public List<User> searchByName(String query, int limit) {
+        logger.debug("Searching users by name: {}", query);
+        if (query == null || query.trim().isEmpty()) {
+            throw new IllegalArgumentException("Search query cannot be empty");
+        }
+        if (limit <= 0 || limit > UserQuery.MAX_LIMIT) {
+            throw new IllegalArgumentException("Limit must be between 1 and " + UserQuery.MAX_LIMIT);
+        }
+        if (nameIndex != null) {
+            return nameIndex.search(query.trim(), limit);
+        }
+        return userDAO.searchByName(query.trim(), limit);
+    }
+
+    /**
+     * Включает режим отложенной записи для updateUser. Чтения через сервис видят еще не записанные изменения.
+     */
+    public void setWriteBehindBuffer(WriteBehindBuffer writeBehindBuffer) {
+        this.writeBehindBuffer = writeBehindBuffer;
+    }
+
+    public void setStatsCollector(UserStatsCollector statsCollector) {
+        this.statsCollector = statsCollector;
+    }
+
+    public UserStats stats() {
+        logger.debug("Getting user statistics");
+        if (statsCollector != null) {
+            return statsCollector.snapshot();
+        }
+
+        // Без сборщика агрегаты считаются в базе, без выгрузки пользователей в память
+        long[] ages = new long[UserStats.MAX_AGE + 1];
+        userDAO.countByAge().forEach((age, count) -> {
+            if (age >= 0 && age <= UserStats.MAX_AGE) {
+                ages[age] = count;
+            }
+        });
+        return new UserStats(ages, new TreeMap<>(userDAO.countByCreationDate()));
+    }
+
+    public long countUsers() {
+        return countUsers(userCounter != null ? CountMode.CACHED : CountMode.EXACT);
+    }
+
+    public long countUsers(CountMode mode) {
+        logger.debug("Counting users, mode: {}", mode);
+        switch (mode) {
+            case APPROXIMATE:
+                return userDAO.countApproximate();
+            case CACHED:
+                if (userCounter == null) {
+                    throw new IllegalStateException("Cached count requires a UserCounter");
+                }
+                return userCounter.get();
+            default:
+                return userDAO.count();
+        }
+    }
+
+    public List<User> searchUsers(UserQuery query) {
+        logger.debug("Searching users");
+        if (query == null) {
+            throw new IllegalArgumentException("Query cannot be null");
+        }
+        return overlayPending(userDAO.search(query));
+    }
+
+    /**
+     * Задержка, после которой изменение попадает в changesSince; должна превышать
+     * длительность самой долгой пишущей транзакции.
+     */
+    public void setChangeSafetyLag(Duration changeSafetyLag) {
+        this.changeSafetyLag = changeSafetyLag;
+    }
+
+    /**
+     * Пользователи, созданные или измененные после позиции cursor (null - с самого начала).
+     * Клиент сохраняет {@link UserChangesPage#getNextCursor()} и продолжает с него.
+     */
+    public UserChangesPage changesSince(String cursor, int limit) {
+        logger.debug("Getting user changes since {}", cursor);
+        if (limit <= 0 || limit > UserQuery.MAX_LIMIT) {
+            throw new IllegalArgumentException("Limit must be between 1 and " + UserQuery.MAX_LIMIT);
+        }
+        UserChangeCursor position = cursor == null || cursor.isEmpty()
+                ? UserChangeCursor.START : UserChangeCursor.parse(cursor);
+
+        List<User> users = userDAO.changesSince(position, limit, changeSafetyLag);
+        if (!users.isEmpty()) {
+            position = UserChangeCursor.after(users.get(users.size() - 1));
+        }
+        return new UserChangesPage(users, position.toString(), users.size() == limit);
+    }
+
+    /**
+     * Потоковое чтение пользователей с обратным давлением вместо списка getAllUsers().
+     * query задает фильтры, порядок и размер страницы (limit); null - все пользователи по ID.
+     */
+    public Flow.Publisher<User> streamUsers(UserQuery query) {
+        logger.debug("Streaming users");
+        return new UserPublisher(userDAO, query != null ? query : new UserQuery().limit(UserQuery.MAX_LIMIT), this::overlayPending);
     }
 
     public User updateUser(Long id, String name, String email, Integer age) {
@@ -57,29 +319,73 @@ public class UserService {
             throw new IllegalArgumentException("User ID must be positive");
         }
         
-        User user = userDAO.read(id);
+        if (writeBehindBuffer != null) {
+            return updateUserWriteBehind(id, name, email, age);
+        }
+
+        // Чтение, валидация и обновление выполняются в одной сессии и с одним коммитом
+        User updated = SqlStatementCounter.track("UserService.updateUser", () -> userDAO.inTransaction(dao -> {
+            User user = dao.read(id);
+            if (user == null) {
+                throw new IllegalArgumentException("User with ID " + id + " not found");
+            }
+
+            if (name != null && !name.trim().isEmpty()) {
+                validateName(name);
+                user.setName(name.trim());
+            }
+
+            if (email != null && !email.trim().isEmpty()) {
+                validateEmail(email);
+                user.setEmail(email.trim());
+            }
+
+            if (age != null) {
+                validateAge(age);
+                user.setAge(age);
+            }
+
+            dao.update(user);
+            return user;
+        }));
+        logger.info("User with ID {} updated successfully", id);
+        return updated;
+    }
+
+    private User updateUserWriteBehind(Long id, String name, String email, Integer age) {
+        User user = overlayPending(userDAO.read(id));
         if (user == null) {
             throw new IllegalArgumentException("User with ID " + id + " not found");
         }
-        
+
+        String newName = null;
+        String newEmail = null;
         if (name != null && !name.trim().isEmpty()) {
             validateName(name);
-            user.setName(name.trim());
+            newName = name.trim();
         }
-        
         if (email != null && !email.trim().isEmpty()) {
             validateEmail(email);
-            user.setEmail(email.trim());
+            newEmail = email.trim();
         }
-        
         if (age != null) {
             validateAge(age);
-            user.setAge(age);
         }
-        
-        userDAO.update(user);
-        logger.info("User with ID {} updated successfully", id);
-        return user;
+
+        writeBehindBuffer.enqueue(id, newName, newEmail, age);
+        logger.info("User with ID {} update buffered", id);
+        return writeBehindBuffer.overlay(user);
+    }
+
+    private User overlayPending(User user) {
+        return writeBehindBuffer == null ? user : writeBehindBuffer.overlay(user);
+    }
+
+    private List<User> overlayPending(List<User> users) {
+        if (writeBehindBuffer != null) {
+            users.forEach(writeBehindBuffer::overlay);
+        }
+        return users;
     }
 
     public void deleteUser(Long id) {
@@ -89,7 +395,10 @@ public class UserService {
             throw new IllegalArgumentException("User ID must be positive");
         }
         
-        userDAO.delete(id);
+        if (writeBehindBuffer != null) {
+            writeBehindBuffer.discard(id);
+        }
+        SqlStatementCounter.track("UserService.deleteUser", () -> userDAO.delete(id));
         logger.info("User with ID {} deleted successfully", id);
     }
 
@@ -100,32 +409,20 @@ public class UserService {
     }
 
     private void validateName(String name) {
-        if (name == null || name.trim().isEmpty()) {
-            throw new IllegalArgumentException("Name cannot be empty");
-        }
-        if (name.length() > 100) {
-            throw new IllegalArgumentException("Name cannot exceed 100 characters");
-        }
+        throwIfInvalid(validator.checkName(name));
     }
 
     private void validateEmail(String email) {
-        if (email == null || email.trim().isEmpty()) {
-            throw new IllegalArgumentException("Email cannot be empty");
-        }
-        if (!email.matches("^[A-Za-z0-9+_.-]+@[A-Za-z0-9.-]+\\.[A-Za-z]{2,}$")) {
-            throw new IllegalArgumentException("Invalid email format");
-        }
-        if (email.length() > 100) {
-            throw new IllegalArgumentException("Email cannot exceed 100 characters");
-        }
+        throwIfInvalid(validator.checkEmail(email));
     }
 
     private void validateAge(Integer age) {
-        if (age == null) {
-            throw new IllegalArgumentException("Age cannot be null");
-        }
-        if (age < 0 || age > 150) {
-            throw new IllegalArgumentException("Age must be between 0 and 150");
+        throwIfInvalid(validator.checkAge(age));
+    }
+
+    private static void throwIfInvalid(String violation) {
+        if (violation != null) {
+            throw new IllegalArgumentException(violation);
         }
     }
 }
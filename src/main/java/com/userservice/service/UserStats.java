@@ -0,0 +1,62 @@
+package com.userservice.service;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Неизменяемый снимок агрегатов по пользователям: гистограмма возрастов 0..150
+ * и число регистраций по дням created_at.
+ */
+public class UserStats {
+    public static final int MAX_AGE = 150;
+
+    private final long[] ageHistogram;
+    private final SortedMap<LocalDate, Long> signupsPerDay;
+    private final long total;
+
+    public UserStats(long[] ageHistogram, SortedMap<LocalDate, Long> signupsPerDay) {
+        if (ageHistogram.length != MAX_AGE + 1) {
+            throw new IllegalArgumentException("Age histogram must have " + (MAX_AGE + 1) + " buckets");
+        }
+        this.ageHistogram = ageHistogram.clone();
+        this.signupsPerDay = Collections.unmodifiableSortedMap(new TreeMap<>(signupsPerDay));
+        long sum = 0;
+        for (long count : ageHistogram) {
+            sum += count;
+        }
+        this.total = sum;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public long countWithAge(int age) {
+        if (age < 0 || age > MAX_AGE) {
+            throw new IllegalArgumentException("Age must be between 0 and " + MAX_AGE);
+        }
+        return ageHistogram[age];
+    }
+
+    public long[] getAgeHistogram() {
+        return ageHistogram.clone();
+    }
+
+    public SortedMap<LocalDate, Long> getSignupsPerDay() {
+        return signupsPerDay;
+    }
+
+    public long signupsOn(LocalDate day) {
+        return signupsPerDay.getOrDefault(day, 0L);
+    }
+
+    @Override
+    public String toString() {
+        return "UserStats{" +
+                "total=" + total +
+                ", days=" + signupsPerDay.size() +
+                '}';
+    }
+}
@@ -0,0 +1,135 @@
+package com.userservice.service;
+
+import com.userservice.dao.UserChange;
+import com.userservice.dao.UserChangeListener;
+import com.userservice.dao.UserDAO;
+import com.userservice.entity.User;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Агрегаты по пользователям в памяти процесса. Начальные значения загружаются двумя
+ * GROUP BY-запросами, дальше счетчики изменяются по событиям {@link UserDAO},
+ * так что {@link #snapshot()} не зависит от размера таблицы.
+ * <p>
+ * Во время загрузки события буферизуются. Событие, пришедшее до начала запроса, уже учтено
+ * в его результате и к этому агрегату не применяется, остальные применяются после загрузки.
+ * События публикуются сразу после коммита, поэтому граница определяется моментом запроса.
+ */
+public class UserStatsCollector implements UserChangeListener {
+    private static final Logger logger = LogManager.getLogger(UserStatsCollector.class);
+
+    private final AtomicLongArray ageHistogram = new AtomicLongArray(UserStats.MAX_AGE + 1);
+    private final Map<LocalDate, LongAdder> signupsPerDay = new ConcurrentHashMap<>();
+    private final Object loadLock = new Object();
+    // События, пришедшие во время load; null вне загрузки
+    private volatile List<UserChange> buffered;
+
+    public void load(UserDAO userDAO) {
+        synchronized (loadLock) {
+            buffered = new ArrayList<>();
+        }
+        try {
+            userDAO.addChangeListener(this);
+            int ageCutoff = bufferedCount();
+            Map<Integer, Long> ages = userDAO.countByAge();
+            int dayCutoff = bufferedCount();
+            Map<LocalDate, Long> days = userDAO.countByCreationDate();
+
+            synchronized (loadLock) {
+                ages.forEach((age, count) -> addAge(age, count));
+                days.forEach((day, count) -> addDay(day, count));
+                List<UserChange> changes = buffered;
+                for (int i = 0; i < changes.size(); i++) {
+                    apply(changes.get(i), i >= ageCutoff, i >= dayCutoff);
+                }
+                logger.info("User statistics loaded: {} days of signups, {} changes replayed",
+                        signupsPerDay.size(), changes.size());
+            }
+        } finally {
+            synchronized (loadLock) {
+                buffered = null;
+            }
+        }
+    }
+
+    private int bufferedCount() {
+        synchronized (loadLock) {
+            return buffered.size();
+        }
+    }
+
+    public UserStats snapshot() {
+        long[] ages = new long[UserStats.MAX_AGE + 1];
+        for (int age = 0; age < ages.length; age++) {
+            ages[age] = ageHistogram.get(age);
+        }
+        TreeMap<LocalDate, Long> days = new TreeMap<>();
+        signupsPerDay.forEach((day, count) -> {
+            long value = count.sum();
+            if (value > 0) {
+                days.put(day, value);
+            }
+        });
+        return new UserStats(ages, days);
+    }
+
+    @Override
+    public void onChange(UserChange change) {
+        if (buffered != null) {
+            synchronized (loadLock) {
+                if (buffered != null) {
+                    buffered.add(change);
+                    return;
+                }
+            }
+        }
+        apply(change, true, true);
+    }
+
+    private void apply(UserChange change, boolean ages, boolean days) {
+        switch (change.getKind()) {
+            case CREATED:
+                add(change.getAfter(), 1, ages, days);
+                break;
+            case DELETED:
+                add(change.getBefore(), -1, ages, days);
+                break;
+            default:
+                if (ages) {
+                    if (change.getBefore() != null) {
+                        addAge(change.getBefore().getAge(), -1);
+                    }
+                    addAge(change.getAfter().getAge(), 1);
+                }
+        }
+    }
+
+    private void add(User user, int delta, boolean ages, boolean days) {
+        if (ages) {
+            addAge(user.getAge(), delta);
+        }
+        if (days && user.getCreatedAt() != null) {
+            addDay(user.getCreatedAt().toLocalDate(), delta);
+        }
+    }
+
+    private void addDay(LocalDate day, long delta) {
+        signupsPerDay.computeIfAbsent(day, key -> new LongAdder()).add(delta);
+    }
+
+    private void addAge(Integer age, long delta) {
+        if (age != null && age >= 0 && age <= UserStats.MAX_AGE) {
+            ageHistogram.addAndGet(age, delta);
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.userservice.service;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Пакет пользователей отклонен проверкой. Сообщение - первое нарушение (как у одиночных
+ * операций), а {@link #getViolations()} содержит все нарушения по индексам записей пакета.
+ */
+public class UserValidationException extends IllegalArgumentException {
+    private static final long serialVersionUID = 1L;
+
+    private final SortedMap<Integer, List<UserValidator.Violation>> violations;
+
+    public UserValidationException(SortedMap<Integer, List<UserValidator.Violation>> violations) {
+        super(violations.get(violations.firstKey()).get(0).getMessage());
+        this.violations = Collections.unmodifiableSortedMap(new TreeMap<>(violations));
+    }
+
+    public SortedMap<Integer, List<UserValidator.Violation>> getViolations() {
+        return violations;
+    }
+}
@@ -0,0 +1,182 @@
+package com.userservice.service;
+
+import com.userservice.entity.User;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.stream.IntStream;
+
+/**
+ * Проверка данных пользователя без исключений: все нарушения полей собираются в список.
+ * Сообщения и порядок проверок те же, что у исключений UserService (имя, email, возраст;
+ * для email - пустота, формат, длина). Формат email проверяется однопроходным разбором,
+ * эквивалентным {@link #EMAIL_REGEX}, без регулярных выражений и выделения памяти.
+ * Для корректных данных методы не создают объектов. Класс не хранит состояния и потокобезопасен.
+ */
+public class UserValidator {
+    public static final String EMAIL_REGEX = "^[A-Za-z0-9+_.-]+@[A-Za-z0-9.-]+\\.[A-Za-z]{2,}$";
+    public static final int MAX_NAME_LENGTH = 100;
+    public static final int MAX_EMAIL_LENGTH = 100;
+    public static final int MIN_AGE = 0;
+    public static final int MAX_AGE = 150;
+    // Меньшие пакеты быстрее проверить в одном потоке, чем распределять по пулу
+    public static final int PARALLEL_THRESHOLD = 4096;
+
+    public enum Field {
+        NAME, EMAIL, AGE
+    }
+
+    public static class Violation implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final Field field;
+        private final String message;
+
+        public Violation(Field field, String message) {
+            this.field = field;
+            this.message = message;
+        }
+
+        public Field getField() {
+            return field;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return field.name().toLowerCase() + ": " + message;
+        }
+    }
+
+    /**
+     * Сообщение о нарушении или null, если имя корректно.
+     */
+    public String checkName(String name) {
+        if (name == null || name.trim().isEmpty()) {
+            return "Name cannot be empty";
+        }
+        if (name.length() > MAX_NAME_LENGTH) {
+            return "Name cannot exceed 100 characters";
+        }
+        return null;
+    }
+
+    public String checkEmail(String email) {
+        if (email == null || email.trim().isEmpty()) {
+            return "Email cannot be empty";
+        }
+        if (!isValidEmailFormat(email)) {
+            return "Invalid email format";
+        }
+        if (email.length() > MAX_EMAIL_LENGTH) {
+            return "Email cannot exceed 100 characters";
+        }
+        return null;
+    }
+
+    public String checkAge(Integer age) {
+        if (age == null) {
+            return "Age cannot be null";
+        }
+        if (age < MIN_AGE || age > MAX_AGE) {
+            return "Age must be between 0 and 150";
+        }
+        return null;
+    }
+
+    /**
+     * Все нарушения в порядке полей; пустой неизменяемый список, если данные корректны.
+     */
+    public List<Violation> validate(String name, String email, Integer age) {
+        String nameError = checkName(name);
+        String emailError = checkEmail(email);
+        String ageError = checkAge(age);
+        if (nameError == null && emailError == null && ageError == null) {
+            return Collections.emptyList();
+        }
+        List<Violation> violations = new ArrayList<>(3);
+        if (nameError != null) {
+            violations.add(new Violation(Field.NAME, nameError));
+        }
+        if (emailError != null) {
+            violations.add(new Violation(Field.EMAIL, emailError));
+        }
+        if (ageError != null) {
+            violations.add(new Violation(Field.AGE, ageError));
+        }
+        return violations;
+    }
+
+    public List<Violation> validate(User user) {
+        return validate(user.getName(), user.getEmail(), user.getAge());
+    }
+
+    /**
+     * Проверяет пакет (большие пакеты - параллельно) и возвращает нарушения по индексам
+     * некорректных записей в порядке возрастания; пустая карта - все записи корректны.
+     */
+    public SortedMap<Integer, List<Violation>> validateAll(List<User> users) {
+        // Каждый индекс пишется одним потоком, поэтому заполнение по индексу безопасно
+        List<List<Violation>> results = new ArrayList<>(Collections.nCopies(users.size(), null));
+        IntStream indexes = IntStream.range(0, users.size());
+        if (users.size() >= PARALLEL_THRESHOLD) {
+            indexes = indexes.parallel();
+        }
+        indexes.forEach(i -> results.set(i, validate(users.get(i))));
+
+        SortedMap<Integer, List<Violation>> invalid = new TreeMap<>();
+        for (int i = 0; i < results.size(); i++) {
+            if (!results.get(i).isEmpty()) {
+                invalid.put(i, results.get(i));
+            }
+        }
+        return invalid;
+    }
+
+    /**
+     * Однопроходная проверка, эквивалентная EMAIL_REGEX: один '@' с непустой локальной частью
+     * из [A-Za-z0-9+_.-], домен из [A-Za-z0-9.-], в котором после последней точки не меньше
+     * двух латинских букв, а перед ней - хотя бы один символ.
+     */
+    public static boolean isValidEmailFormat(String email) {
+        int length = email.length();
+        int at = -1;
+        int lastDot = -1;
+        for (int i = 0; i < length; i++) {
+            char c = email.charAt(i);
+            if (c == '@') {
+                if (at >= 0 || i == 0) {
+                    return false;
+                }
+                at = i;
+            } else if (c == '.') {
+                if (at >= 0) {
+                    lastDot = i;
+                }
+            } else if (!isLetterOrDigit(c) && c != '-' && (at >= 0 || (c != '+' && c != '_'))) {
+                return false;
+            }
+        }
+        if (at < 0 || lastDot < at + 2 || length - lastDot - 1 < 2) {
+            return false;
+        }
+        for (int i = lastDot + 1; i < length; i++) {
+            char c = email.charAt(i);
+            if (!(c >= 'A' && c <= 'Z' || c >= 'a' && c <= 'z')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isLetterOrDigit(char c) {
+        return c >= 'A' && c <= 'Z' || c >= 'a' && c <= 'z' || c >= '0' && c <= '9';
+    }
+}
@@ -0,0 +1,285 @@
+package com.userservice.service;
+
+import com.userservice.dao.UserDAO;
+import com.userservice.entity.User;
+import com.userservice.util.HibernateUtil;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hibernate.exception.ConstraintViolationException;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Буфер отложенной записи обновлений пользователей. Изменения одного пользователя
+ * объединяются в памяти (последнее значение каждого поля побеждает) и записываются
+ * пакетом через {@link UserDAO#updateAll} при достижении maxPending или по таймеру.
+ * Ошибки уникальности email при этом обнаруживаются только во время сброса.
+ * Оставшиеся изменения записываются в {@link HibernateUtil#shutdown()} или {@link #close()}.
+ */
+public class WriteBehindBuffer implements AutoCloseable {
+    private static final Logger logger = LogManager.getLogger(WriteBehindBuffer.class);
+
+    private final UserDAO userDAO;
+    private final int maxPending;
+    private final Map<Long, PendingUpdate> pending = new ConcurrentHashMap<>();
+    // Изменения, которые сейчас записываются: до коммита чтения должны видеть и их
+    private volatile Map<Long, PendingUpdate> flushing = Map.of();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final AtomicLong enqueuedUpdates = new AtomicLong();
+    private final AtomicLong flushedUsers = new AtomicLong();
+    private final Runnable shutdownAction = this::close;
+    private ScheduledExecutorService scheduler;
+
+    private static class PendingUpdate {
+        private String name;
+        private String email;
+        private Integer age;
+
+        private synchronized void merge(String name, String email, Integer age) {
+            if (name != null) {
+                this.name = name;
+            }
+            if (email != null) {
+                this.email = email;
+            }
+            if (age != null) {
+                this.age = age;
+            }
+        }
+
+        /**
+         * Новое изменение: поля this, поверх которых наложены более свежие поля newer.
+         */
+        private PendingUpdate mergedUnder(PendingUpdate newer) {
+            PendingUpdate result = new PendingUpdate();
+            synchronized (this) {
+                result.merge(name, email, age);
+            }
+            synchronized (newer) {
+                result.merge(newer.name, newer.email, newer.age);
+            }
+            return result;
+        }
+
+        private synchronized void applyTo(User user) {
+            if (name != null) {
+                user.setName(name);
+            }
+            if (email != null) {
+                user.setEmail(email);
+            }
+            if (age != null) {
+                user.setAge(age);
+            }
+        }
+    }
+
+    public WriteBehindBuffer(UserDAO userDAO, int maxPending) {
+        if (maxPending <= 0) {
+            throw new IllegalArgumentException("Max pending must be positive");
+        }
+        this.userDAO = userDAO;
+        this.maxPending = maxPending;
+        // Финальный сброс нужен и буферу без таймера, который сбрасывается только по размеру
+        HibernateUtil.addShutdownAction(shutdownAction);
+    }
+
+    /**
+     * Запускает сброс по таймеру. Финальный сброс в {@link HibernateUtil#shutdown()}
+     * регистрируется при создании буфера.
+     */
+    public synchronized void start(Duration flushInterval) {
+        if (scheduler != null) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "user-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = flushInterval.toMillis();
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Ставит изменение в очередь. null-поля не изменяются.
+     */
+    public void enqueue(Long id, String name, String email, Integer age) {
+        // compute атомарен относительно remove в flush(), поэтому изменение не потеряется
+        pending.compute(id, (key, update) -> {
+            PendingUpdate target = update != null ? update : new PendingUpdate();
+            target.merge(name, email, age);
+            return target;
+        });
+        enqueuedUpdates.incrementAndGet();
+        if (pending.size() >= maxPending) {
+            triggerFlush();
+        }
+    }
+
+    /**
+     * Накладывает еще не записанные изменения на прочитанного из базы пользователя.
+     */
+    public User overlay(User user) {
+        if (user == null) {
+            return null;
+        }
+        PendingUpdate inFlight = flushing.get(user.getId());
+        if (inFlight != null) {
+            inFlight.applyTo(user);
+        }
+        PendingUpdate update = pending.get(user.getId());
+        if (update != null) {
+            update.applyTo(user);
+        }
+        return user;
+    }
+
+    public boolean hasPending(Long id) {
+        return pending.containsKey(id);
+    }
+
+    /**
+     * Отбрасывает отложенные изменения пользователя (например, перед его удалением).
+     */
+    public void discard(Long id) {
+        pending.remove(id);
+    }
+
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    public long getEnqueuedUpdates() {
+        return enqueuedUpdates.get();
+    }
+
+    public long getFlushedUsers() {
+        return flushedUsers.get();
+    }
+
+    /**
+     * Записывает все накопленные изменения. Возвращает число обновленных пользователей.
+     * Изменения, которые не удалось записать из-за временной ошибки (например, потери
+     * соединения), возвращаются в очередь и повторяются при следующем сбросе.
+     */
+    public synchronized int flush() {
+        Map<Long, PendingUpdate> batch = new ConcurrentHashMap<>(pending);
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        // Сначала публикуем пакет для overlay(), затем убираем его из очереди: иначе в промежутке
+        // чтение не увидит изменение ни там, ни там. Изменение, пришедшее после снимка в тот же
+        // объект, попадает в пакет; новое значение под тем же id остается в очереди.
+        flushing = batch;
+        batch.entrySet().removeIf(entry -> !pending.remove(entry.getKey(), entry.getValue()));
+
+        int written;
+        try {
+            written = userDAO.inTransaction(dao -> {
+                List<User> users = dao.readByIds(batch.keySet());
+                users.forEach(user -> batch.get(user.getId()).applyTo(user));
+                dao.updateAll(users);
+                return users.size();
+            });
+        } catch (RuntimeException e) {
+            // Одна конфликтная строка не должна отменять остальные: пишем по одной
+            logger.warn("Batch flush of {} users failed, retrying one by one: {}", batch.size(), e.getMessage());
+            written = flushIndividually(batch);
+        } finally {
+            flushing = Map.of();
+        }
+        flushedUsers.addAndGet(written);
+        logger.debug("Write-behind flushed {} of {} users", written, batch.size());
+        return written;
+    }
+
+    private int flushIndividually(Map<Long, PendingUpdate> batch) {
+        int written = 0;
+        for (Map.Entry<Long, PendingUpdate> entry : batch.entrySet()) {
+            try {
+                boolean updated = userDAO.inTransaction(dao -> {
+                    User user = dao.read(entry.getKey());
+                    if (user == null) {
+                        return false;
+                    }
+                    entry.getValue().applyTo(user);
+                    dao.update(user);
+                    return true;
+                });
+                if (updated) {
+                    written++;
+                } else {
+                    logger.warn("Dropping pending update for user with ID {}: user not found", entry.getKey());
+                }
+            } catch (RuntimeException e) {
+                if (isConstraintViolation(e)) {
+                    logger.error("Dropping pending update for user with ID {}: {}", entry.getKey(), e.getMessage());
+                } else {
+                    logger.warn("Requeueing pending update for user with ID {}: {}", entry.getKey(), e.getMessage());
+                    requeue(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        return written;
+    }
+
+    // Более новое изменение того же пользователя, поставленное во время сброса, побеждает
+    private void requeue(Long id, PendingUpdate update) {
+        pending.merge(id, update, (newer, failed) -> failed.mergedUnder(newer));
+    }
+
+    private static boolean isConstraintViolation(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConstraintViolationException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void triggerFlush() {
+        ScheduledExecutorService executor = scheduler;
+        if (executor == null) {
+            flushQuietly();
+        } else if (flushScheduled.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                flushScheduled.set(false);
+                flushQuietly();
+            });
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            logger.error("Write-behind flush failed", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (scheduler != null) {
+                scheduler.shutdown();
+                try {
+                    scheduler.awaitTermination(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                scheduler = null;
+            }
+        }
+        HibernateUtil.removeShutdownAction(shutdownAction);
+        flush();
+    }
+}
@@ -0,0 +1,384 @@
+package com.userservice.snapshot;
+
+import com.userservice.dao.UserChange;
+import com.userservice.dao.UserChangeCursor;
+import com.userservice.dao.UserChangeListener;
+import com.userservice.dao.UserDAO;
+import com.userservice.entity.User;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Компактный снимок таблицы users вне кучи JVM для read-mostly раздачи по ID.
+ * <p>
+ * Записи фиксированного размера ({@value #SLOT_SIZE} байт) лежат в отображенном в память файле
+ * сегментами до 1 ГБ; индекс ID -> номер записи - хеш-таблица с открытой адресацией
+ * в direct-буфере. Поиск не создает объектов, кроме {@link UserView}, и не обращается к базе.
+ * Снимок строится потоковой выгрузкой через StatelessSession, а затем обновляется
+ * инкрементально: созданные и измененные строки догружаются по updated_at ({@link #refresh}),
+ * изменения этого узла применяются сразу как {@link UserChangeListener}.
+ * Удаления, сделанные другими узлами, видны только после перестройки снимка.
+ * Запись выполняет один поток (методы синхронизированы), чтение - без блокировок
+ * (согласованность записи обеспечивает счетчик версий, seqlock).
+ */
+public class UserSnapshotStore implements UserChangeListener, AutoCloseable {
+    private static final Logger logger = LogManager.getLogger(UserSnapshotStore.class);
+
+    static final int VERSION_OFFSET = 0;
+    static final int FLAGS_OFFSET = 4;
+    static final int ID_OFFSET = 8;
+    static final int CREATED_SECONDS_OFFSET = 16;
+    static final int CREATED_NANOS_OFFSET = 24;
+    static final int AGE_OFFSET = 28;
+    static final int NAME_OFFSET = 32;
+    static final int EMAIL_OFFSET = 440;
+    // varchar(100) - до 100 символов, в UTF-8 до 4 байт каждый
+    static final int MAX_STRING_BYTES = 400;
+    public static final int SLOT_SIZE = 848;
+
+    private static final int HEADER_SIZE = 64;
+    private static final int MAGIC = 0x55534E50; // "USNP"
+    private static final int FORMAT_VERSION = 2;
+    private static final int SLOTS_PER_SEGMENT = (1 << 30) / SLOT_SIZE;
+    private static final int FLAG_LIVE = 1;
+    private static final int INDEX_ENTRY_SIZE = 16;
+    private static final int FETCH_SIZE = 1000;
+    private static final Duration REFRESH_LAG = Duration.ofSeconds(1);
+
+    private static final VarHandle INT_VIEW = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle LONG_VIEW = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private final int capacity;
+    private final ByteBuffer index;
+    private final int indexMask;
+    private volatile int size;
+    private volatile long maxId;
+    private UserChangeCursor changeCursor = UserChangeCursor.START;
+
+    private UserSnapshotStore(Path file, int capacity) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.capacity = capacity;
+        this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        for (int first = 0; first < capacity; first += SLOTS_PER_SEGMENT) {
+            int slots = Math.min(SLOTS_PER_SEGMENT, capacity - first);
+            segments.add(channel.map(FileChannel.MapMode.READ_WRITE,
+                    HEADER_SIZE + (long) first * SLOT_SIZE, (long) slots * SLOT_SIZE));
+        }
+
+        int indexSlots = Integer.highestOneBit(Math.max(capacity, 16) * 2 - 1) << 1;
+        this.index = ByteBuffer.allocateDirect(indexSlots * INDEX_ENTRY_SIZE);
+        this.indexMask = indexSlots - 1;
+    }
+
+    /**
+     * Строит новый снимок всех пользователей в файле file.
+     * capacity - максимальное число записей (с запасом на рост до следующей перестройки).
+     */
+    public static UserSnapshotStore build(SessionFactory sessionFactory, Path file, int capacity) {
+        try {
+            UserSnapshotStore store = new UserSnapshotStore(file, capacity);
+            store.writeHeader();
+            long started = System.nanoTime();
+            // Все, что изменится после начала выгрузки, будет перечитано первым refresh
+            store.saveCursor(new UserChangeCursor(databaseTime(sessionFactory).minus(REFRESH_LAG), 0L));
+            int loaded = store.loadFrom(sessionFactory);
+            logger.info("User snapshot built: {} users in {} ms, file {}",
+                    loaded, (System.nanoTime() - started) / 1_000_000, file);
+            return store;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to create user snapshot " + file, e);
+        }
+    }
+
+    /**
+     * Открывает ранее построенный снимок и восстанавливает индекс по ID.
+     */
+    public static UserSnapshotStore open(Path file) {
+        try (FileChannel probe = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer head = ByteBuffer.allocate(HEADER_SIZE);
+            probe.read(head, 0);
+            if (head.getInt(0) != MAGIC || head.getInt(4) != FORMAT_VERSION || head.getInt(8) != SLOT_SIZE) {
+                throw new IllegalStateException("Not a user snapshot file: " + file);
+            }
+            int capacity = head.getInt(12);
+            int size = head.getInt(16);
+
+            UserSnapshotStore store = new UserSnapshotStore(file, capacity);
+            for (int slot = 0; slot < size; slot++) {
+                ByteBuffer segment = store.segmentOf(slot);
+                int offset = store.offsetOf(slot);
+                long id = segment.getLong(offset + ID_OFFSET);
+                store.indexPut(id, slot);
+                store.maxId = Math.max(store.maxId, id);
+            }
+            store.size = size;
+            store.changeCursor = new UserChangeCursor(
+                    LocalDateTime.ofEpochSecond(head.getLong(24), head.getInt(32), ZoneOffset.UTC), head.getLong(40));
+            logger.info("User snapshot opened: {} records from {}", size, file);
+            return store;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open user snapshot " + file, e);
+        }
+    }
+
+    /**
+     * Догружает пользователей, созданных или измененных после предыдущего обновления
+     * (см. {@link UserDAO#changesSince}). Возвращает число прочитанных записей.
+     */
+    public int refresh(SessionFactory sessionFactory) {
+        UserDAO userDAO = new UserDAO(sessionFactory);
+        int loaded = 0;
+        List<User> page;
+        do {
+            page = userDAO.changesSince(changeCursor, FETCH_SIZE, REFRESH_LAG);
+            // Мягко удаленные пользователи приходят в потоке изменений с заполненным deletedAt
+            page.forEach(user -> {
+                if (user.isDeleted()) {
+                    remove(user.getId());
+                } else {
+                    put(user);
+                }
+            });
+            loaded += page.size();
+            if (!page.isEmpty()) {
+                saveCursor(UserChangeCursor.after(page.get(page.size() - 1)));
+            }
+        } while (page.size() == FETCH_SIZE);
+        logger.debug("User snapshot refreshed: {} changed users", loaded);
+        return loaded;
+    }
+
+    private synchronized void saveCursor(UserChangeCursor cursor) {
+        changeCursor = cursor;
+        header.putLong(24, cursor.getUpdatedAt().toEpochSecond(ZoneOffset.UTC));
+        header.putInt(32, cursor.getUpdatedAt().getNano());
+        header.putLong(40, cursor.getId());
+    }
+
+    private static LocalDateTime databaseTime(SessionFactory sessionFactory) {
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            Timestamp now = (Timestamp) session
+                    .createNativeQuery("SELECT CAST(clock_timestamp() AS timestamp)")
+                    .uniqueResult();
+            return now.toLocalDateTime();
+        }
+    }
+
+    public UserView get(long id) {
+        int slot = indexGet(id);
+        if (slot < 0) {
+            return null;
+        }
+        ByteBuffer segment = segmentOf(slot);
+        int offset = offsetOf(slot);
+        if (segment.getInt(offset + FLAGS_OFFSET) != FLAG_LIVE) {
+            return null;
+        }
+        return new UserView(segment, offset);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    public long getMaxId() {
+        return maxId;
+    }
+
+    public synchronized void put(User user) {
+        int slot = indexGet(user.getId());
+        if (slot < 0) {
+            if (size >= capacity) {
+                logger.warn("User snapshot is full ({} records), user {} skipped until rebuild", capacity, user.getId());
+                return;
+            }
+            slot = size;
+            writeSlot(slot, user);
+            indexPut(user.getId(), slot);
+            size = slot + 1;
+            header.putInt(16, size);
+            maxId = Math.max(maxId, user.getId());
+        } else {
+            writeSlot(slot, user);
+        }
+    }
+
+    public synchronized void remove(long id) {
+        int slot = indexGet(id);
+        if (slot >= 0) {
+            ByteBuffer segment = segmentOf(slot);
+            int offset = offsetOf(slot);
+            int version = readVersion(segment, offset);
+            INT_VIEW.setOpaque(segment, offset + VERSION_OFFSET, version + 1);
+            segment.putInt(offset + FLAGS_OFFSET, 0);
+            INT_VIEW.setRelease(segment, offset + VERSION_OFFSET, version + 2);
+        }
+    }
+
+    @Override
+    public void onChange(UserChange change) {
+        if (change.getKind() == UserChange.Kind.DELETED) {
+            remove(change.getId());
+        } else {
+            put(change.getAfter());
+        }
+    }
+
+    /**
+     * Сбрасывает изменения на диск (для повторного открытия через {@link #open}).
+     */
+    public synchronized void force() {
+        header.force();
+        segments.forEach(MappedByteBuffer::force);
+    }
+
+    @Override
+    public synchronized void close() {
+        force();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to close user snapshot", e);
+        }
+    }
+
+    private int loadFrom(SessionFactory sessionFactory) {
+        int loaded = 0;
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            ScrollableResults results = session
+                    .createQuery("FROM User u WHERE u.deletedAt IS NULL ORDER BY u.id", User.class)
+                    .setFetchSize(FETCH_SIZE)
+                    .scroll(ScrollMode.FORWARD_ONLY);
+            try {
+                while (results.next()) {
+                    put((User) results.get(0));
+                    loaded++;
+                }
+            } finally {
+                results.close();
+            }
+        }
+        return loaded;
+    }
+
+    private void writeHeader() {
+        header.putInt(0, MAGIC);
+        header.putInt(4, FORMAT_VERSION);
+        header.putInt(8, SLOT_SIZE);
+        header.putInt(12, capacity);
+        header.putInt(16, 0);
+    }
+
+    private void writeSlot(int slot, User user) {
+        ByteBuffer segment = segmentOf(slot);
+        int offset = offsetOf(slot);
+        int version = readVersion(segment, offset);
+        INT_VIEW.setOpaque(segment, offset + VERSION_OFFSET, version + 1);
+        VarHandle.storeStoreFence();
+
+        LocalDateTime createdAt = user.getCreatedAt() != null ? user.getCreatedAt() : LocalDateTime.now();
+        segment.putLong(offset + ID_OFFSET, user.getId());
+        segment.putLong(offset + CREATED_SECONDS_OFFSET, createdAt.toEpochSecond(ZoneOffset.UTC));
+        segment.putInt(offset + CREATED_NANOS_OFFSET, createdAt.getNano());
+        segment.putShort(offset + AGE_OFFSET, user.getAge() == null ? 0 : user.getAge().shortValue());
+        writeString(segment, offset + NAME_OFFSET, user.getName());
+        writeString(segment, offset + EMAIL_OFFSET, user.getEmail());
+        segment.putInt(offset + FLAGS_OFFSET, FLAG_LIVE);
+
+        INT_VIEW.setRelease(segment, offset + VERSION_OFFSET, version + 2);
+    }
+
+    private static void writeString(ByteBuffer segment, int offset, String value) {
+        byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, MAX_STRING_BYTES);
+        // Значение длиннее колонки обрезается по границе символа, а не посреди последовательности UTF-8
+        while (length < bytes.length && (bytes[length] & 0xC0) == 0x80) {
+            length--;
+        }
+        segment.putShort(offset, (short) length);
+        segment.put(offset + 2, bytes, 0, length);
+    }
+
+    static String readString(ByteBuffer segment, int offset) {
+        int length = segment.getShort(offset);
+        byte[] bytes = new byte[length];
+        segment.get(offset + 2, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static int readVersion(ByteBuffer segment, int offset) {
+        return (int) INT_VIEW.getAcquire(segment, offset + VERSION_OFFSET);
+    }
+
+    private ByteBuffer segmentOf(int slot) {
+        return segments.get(slot / SLOTS_PER_SEGMENT);
+    }
+
+    private int offsetOf(int slot) {
+        return (slot % SLOTS_PER_SEGMENT) * SLOT_SIZE;
+    }
+
+    private int indexGet(long id) {
+        int position = mix(id) & indexMask;
+        while (true) {
+            int entry = position * INDEX_ENTRY_SIZE;
+            long key = (long) LONG_VIEW.getAcquire(index, entry);
+            if (key == 0) {
+                return -1;
+            }
+            if (key == id) {
+                return index.getInt(entry + 8);
+            }
+            position = (position + 1) & indexMask;
+        }
+    }
+
+    private void indexPut(long id, int slot) {
+        int position = mix(id) & indexMask;
+        while (true) {
+            int entry = position * INDEX_ENTRY_SIZE;
+            long key = index.getLong(entry);
+            if (key == 0 || key == id) {
+                // Слот пишется раньше ключа, чтобы читатель не увидел ключ с чужим номером записи
+                index.putInt(entry + 8, slot);
+                LONG_VIEW.setRelease(index, entry, id);
+                return;
+            }
+            position = (position + 1) & indexMask;
+        }
+    }
+
+    private static int mix(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
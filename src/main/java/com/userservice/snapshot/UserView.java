@@ -0,0 +1,76 @@
+package com.userservice.snapshot;
+
+import com.userservice.entity.User;
+
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Представление одной записи {@link UserSnapshotStore} без копирования: поля читаются
+ * прямо из отображенного в память файла при обращении к геттерам. Экземпляр действителен,
+ * пока открыт store; отдельные геттеры не атомарны относительно параллельного обновления
+ * записи, согласованную копию дает {@link #toUser()}.
+ */
+public class UserView {
+    private final ByteBuffer buffer;
+    private final int offset;
+
+    UserView(ByteBuffer buffer, int offset) {
+        this.buffer = buffer;
+        this.offset = offset;
+    }
+
+    public long getId() {
+        return buffer.getLong(offset + UserSnapshotStore.ID_OFFSET);
+    }
+
+    public int getAge() {
+        return buffer.getShort(offset + UserSnapshotStore.AGE_OFFSET);
+    }
+
+    public long getCreatedAtEpochSecond() {
+        return buffer.getLong(offset + UserSnapshotStore.CREATED_SECONDS_OFFSET);
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return LocalDateTime.ofEpochSecond(getCreatedAtEpochSecond(),
+                buffer.getInt(offset + UserSnapshotStore.CREATED_NANOS_OFFSET), ZoneOffset.UTC);
+    }
+
+    public String getName() {
+        return UserSnapshotStore.readString(buffer, offset + UserSnapshotStore.NAME_OFFSET);
+    }
+
+    public String getEmail() {
+        return UserSnapshotStore.readString(buffer, offset + UserSnapshotStore.EMAIL_OFFSET);
+    }
+
+    /**
+     * Согласованная копия записи (повторяет чтение, если запись менялась во время копирования).
+     */
+    public User toUser() {
+        while (true) {
+            int version = UserSnapshotStore.readVersion(buffer, offset);
+            if ((version & 1) == 0) {
+                User user = new User(getName(), getEmail(), getAge());
+                user.setId(getId());
+                user.setCreatedAt(getCreatedAt());
+                VarHandle.loadLoadFence();
+                if (UserSnapshotStore.readVersion(buffer, offset) == version) {
+                    return user;
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "UserView{" +
+                "id=" + getId() +
+                ", age=" + getAge() +
+                '}';
+    }
+}
@@ -1,5 +1,7 @@
 package com.userservice.util;
 
+import com.userservice.partition.PartitionManager;
+import com.userservice.partition.PartitionedSchemaFilterProvider;
 import org.hibernate.SessionFactory;
 import org.hibernate.boot.MetadataSources;
 import org.hibernate.boot.registry.StandardServiceRegistry;
@@ -7,46 +9,29 @@ import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
 public class HibernateUtil {
     private static final Logger logger = LogManager.getLogger(HibernateUtil.class);
     private static SessionFactory sessionFactory;
     private static Exception initializationException;
+    private static final List<Runnable> shutdownActions = new CopyOnWriteArrayList<>();
 
     public static synchronized SessionFactory getSessionFactory() {
         if (sessionFactory == null && initializationException == null) {
             try {
-                // Устанавливаем системные свойства из переменных окружения, если они не заданы
-                String dbUrl = System.getProperty("db.url");
-                if (dbUrl == null || dbUrl.isEmpty()) {
-                    dbUrl = System.getenv("DB_URL");
-                    if (dbUrl != null && !dbUrl.isEmpty()) {
-                        System.setProperty("db.url", dbUrl);
-                    }
-                }
-                
-                String dbUsername = System.getProperty("db.username");
-                if (dbUsername == null || dbUsername.isEmpty()) {
-                    dbUsername = System.getenv("DB_USERNAME");
-                    if (dbUsername != null && !dbUsername.isEmpty()) {
-                        System.setProperty("db.username", dbUsername);
-                    }
-                }
+                applyEnvironment();
                 
-                String dbPassword = System.getProperty("db.password");
-                if (dbPassword == null || dbPassword.isEmpty()) {
-                    dbPassword = System.getenv("DB_PASSWORD");
-                    if (dbPassword != null && !dbPassword.isEmpty()) {
-                        System.setProperty("db.password", dbPassword);
-                    }
-                }
-                
-                StandardServiceRegistry registry = new StandardServiceRegistryBuilder()
-                        .configure("hibernate.cfg.xml")
-                        .build();
+                StandardServiceRegistryBuilder builder = new StandardServiceRegistryBuilder()
+                        .configure("hibernate.cfg.xml");
+                applyPartitioning(builder);
+                StandardServiceRegistry registry = builder.build();
                 
                 sessionFactory = new MetadataSources(registry)
                         .buildMetadata()
                         .buildSessionFactory();
+                initializeSchema(sessionFactory);
                 
                 logger.info("Hibernate SessionFactory created successfully");
             } catch (Exception e) {
@@ -71,7 +56,86 @@ public class HibernateUtil {
         return sessionFactory;
     }
 
+    // Устанавливаем системные свойства из переменных окружения, если они не заданы
+    private static void applyEnvironment() {
+        String dbUrl = System.getProperty("db.url");
+        if (dbUrl == null || dbUrl.isEmpty()) {
+            dbUrl = System.getenv("DB_URL");
+            if (dbUrl != null && !dbUrl.isEmpty()) {
+                System.setProperty("db.url", dbUrl);
+            }
+        }
+        
+        String dbUsername = System.getProperty("db.username");
+        if (dbUsername == null || dbUsername.isEmpty()) {
+            dbUsername = System.getenv("DB_USERNAME");
+            if (dbUsername != null && !dbUsername.isEmpty()) {
+                System.setProperty("db.username", dbUsername);
+            }
+        }
+        
+        String dbPassword = System.getProperty("db.password");
+        if (dbPassword == null || dbPassword.isEmpty()) {
+            dbPassword = System.getenv("DB_PASSWORD");
+            if (dbPassword != null && !dbPassword.isEmpty()) {
+                System.setProperty("db.password", dbPassword);
+            }
+        }
+    }
+
+    // Секционированной таблицей users управляет PartitionManager, а не hbm2ddl
+    private static void applyPartitioning(StandardServiceRegistryBuilder builder) {
+        if (PartitionManager.isEnabled()) {
+            builder.applySetting("hibernate.hbm2ddl.schema_filter_provider", PartitionedSchemaFilterProvider.class.getName());
+        }
+    }
+
+    private static void initializeSchema(SessionFactory factory) {
+        if (PartitionManager.isEnabled()) {
+            new PartitionManager(factory).install();
+        }
+        SchemaInitializer.apply(factory);
+    }
+
+    /**
+     * Создает отдельную SessionFactory с настройками hibernate.cfg.xml, но другим URL базы
+     * (например, для шардов). Закрывать ее должен вызывающий код.
+     */
+    public static SessionFactory buildSessionFactory(String jdbcUrl) {
+        applyEnvironment();
+        StandardServiceRegistryBuilder builder = new StandardServiceRegistryBuilder()
+                .configure("hibernate.cfg.xml")
+                .applySetting("hibernate.connection.url", jdbcUrl);
+        applyPartitioning(builder);
+        SessionFactory factory = new MetadataSources(builder.build())
+                .buildMetadata()
+                .buildSessionFactory();
+        initializeSchema(factory);
+        logger.info("Hibernate SessionFactory created for {}", jdbcUrl);
+        return factory;
+    }
+
+    /**
+     * Регистрирует действие, которое выполнится в {@link #shutdown()} до закрытия SessionFactory
+     * (например, сброс отложенных записей).
+     */
+    public static void addShutdownAction(Runnable action) {
+        shutdownActions.add(action);
+    }
+
+    public static void removeShutdownAction(Runnable action) {
+        shutdownActions.remove(action);
+    }
+
     public static void shutdown() {
+        for (Runnable action : shutdownActions) {
+            try {
+                action.run();
+            } catch (RuntimeException e) {
+                logger.error("Shutdown action failed", e);
+            }
+        }
+        shutdownActions.clear();
         if (sessionFactory != null) {
             sessionFactory.close();
             logger.info("Hibernate SessionFactory closed");
@@ -0,0 +1,290 @@
+package com.userservice.util;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.stat.Statistics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Статистика процесса для консоли (Main, команда stats) и JMX: счетчики Hibernate Statistics
+ * (нужен hibernate.generate_statistics), состояние пула соединений и скорости операций.
+ * Для скоростей раз в секунду снимается срез счетчиков; скорость - разница между последним
+ * срезом и самым старым срезом в пределах окна.
+ */
+public class RuntimeStatistics implements RuntimeStatisticsMBean, AutoCloseable {
+    private static final Logger logger = LogManager.getLogger(RuntimeStatistics.class);
+    public static final String OBJECT_NAME = "com.userservice:type=RuntimeStatistics";
+    public static final Duration DEFAULT_WINDOW = Duration.ofMinutes(1);
+
+    private static final int SESSIONS = 0;
+    private static final int TRANSACTIONS = 1;
+    private static final int STATEMENTS = 2;
+    private static final int ENTITY_LOADS = 3;
+
+    private final Statistics statistics;
+    private final SlowQueryConnectionProvider pool;
+    private final long windowNanos;
+    private final Deque<Sample> samples = new ArrayDeque<>();
+    private ScheduledExecutorService sampler;
+    private ObjectName registeredName;
+
+    private static class Sample {
+        private final long nanos;
+        private final long[] counters;
+
+        private Sample(long nanos, long[] counters) {
+            this.nanos = nanos;
+            this.counters = counters;
+        }
+    }
+
+    public RuntimeStatistics(SessionFactory sessionFactory) {
+        this(sessionFactory.getStatistics(), findPool(sessionFactory), DEFAULT_WINDOW);
+    }
+
+    RuntimeStatistics(Statistics statistics, SlowQueryConnectionProvider pool, Duration window) {
+        this.statistics = statistics;
+        this.pool = pool;
+        this.windowNanos = window.toNanos();
+        if (!statistics.isStatisticsEnabled()) {
+            logger.warn("Hibernate statistics are disabled (hibernate.generate_statistics), counters will stay at zero");
+        }
+        sample(System.nanoTime());
+    }
+
+    private static SlowQueryConnectionProvider findPool(SessionFactory sessionFactory) {
+        ConnectionProvider provider = ((SessionFactoryImplementor) sessionFactory).getServiceRegistry()
+                .getService(ConnectionProvider.class);
+        if (provider != null && provider.isUnwrappableAs(SlowQueryConnectionProvider.class)) {
+            return provider.unwrap(SlowQueryConnectionProvider.class);
+        }
+        return null;
+    }
+
+    /**
+     * Запускает ежесекундный сбор срезов и регистрирует MBean в платформенном MBeanServer.
+     */
+    public synchronized void start() {
+        if (sampler != null) {
+            return;
+        }
+        sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "runtime-statistics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sampler.scheduleAtFixedRate(() -> sample(System.nanoTime()), 1, 1, TimeUnit.SECONDS);
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+                registeredName = name;
+            }
+        } catch (JMException e) {
+            logger.warn("Could not register runtime statistics MBean: {}", e.getMessage());
+        }
+    }
+
+    synchronized void sample(long nowNanos) {
+        samples.addLast(new Sample(nowNanos, new long[]{
+                statistics.getSessionOpenCount(),
+                statistics.getTransactionCount(),
+                statistics.getPrepareStatementCount(),
+                statistics.getEntityLoadCount()}));
+        // Самый старый оставшийся срез должен быть не младше границы окна
+        while (samples.size() > 2) {
+            Iterator<Sample> iterator = samples.iterator();
+            iterator.next();
+            if (nowNanos - iterator.next().nanos < windowNanos) {
+                break;
+            }
+            samples.removeFirst();
+        }
+    }
+
+    private synchronized double rate(int counter) {
+        Sample first = samples.peekFirst();
+        Sample last = samples.peekLast();
+        if (first == null || first == last || last.nanos == first.nanos) {
+            return 0;
+        }
+        return (last.counters[counter] - first.counters[counter]) * 1_000_000_000.0 / (last.nanos - first.nanos);
+    }
+
+    private static double ratio(long hits, long misses) {
+        long total = hits + misses;
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public long getSessionsOpened() {
+        return statistics.getSessionOpenCount();
+    }
+
+    @Override
+    public long getSessionsClosed() {
+        return statistics.getSessionCloseCount();
+    }
+
+    @Override
+    public long getTransactions() {
+        return statistics.getTransactionCount();
+    }
+
+    @Override
+    public long getSuccessfulTransactions() {
+        return statistics.getSuccessfulTransactionCount();
+    }
+
+    @Override
+    public long getEntityLoads() {
+        return statistics.getEntityLoadCount();
+    }
+
+    @Override
+    public long getEntityFetches() {
+        return statistics.getEntityFetchCount();
+    }
+
+    @Override
+    public long getQueryExecutions() {
+        return statistics.getQueryExecutionCount();
+    }
+
+    @Override
+    public long getQueryExecutionMaxTimeMillis() {
+        return statistics.getQueryExecutionMaxTime();
+    }
+
+    @Override
+    public String getSlowestQuery() {
+        return statistics.getQueryExecutionMaxTimeQueryString();
+    }
+
+    @Override
+    public long getPreparedStatements() {
+        return statistics.getPrepareStatementCount();
+    }
+
+    @Override
+    public double getSecondLevelCacheHitRatio() {
+        return ratio(statistics.getSecondLevelCacheHitCount(), statistics.getSecondLevelCacheMissCount());
+    }
+
+    @Override
+    public double getQueryCacheHitRatio() {
+        return ratio(statistics.getQueryCacheHitCount(), statistics.getQueryCacheMissCount());
+    }
+
+    @Override
+    public int getActiveConnections() {
+        return pool == null ? -1 : pool.getActiveConnections();
+    }
+
+    @Override
+    public int getPoolSize() {
+        return pool == null ? -1 : pool.getPoolSize();
+    }
+
+    @Override
+    public long getConnectionsObtained() {
+        return pool == null ? statistics.getConnectCount() : pool.getConnectionsObtained();
+    }
+
+    @Override
+    public double getSessionsPerSecond() {
+        return rate(SESSIONS);
+    }
+
+    @Override
+    public double getTransactionsPerSecond() {
+        return rate(TRANSACTIONS);
+    }
+
+    @Override
+    public double getStatementsPerSecond() {
+        return rate(STATEMENTS);
+    }
+
+    @Override
+    public double getEntityLoadsPerSecond() {
+        return rate(ENTITY_LOADS);
+    }
+
+    @Override
+    public long getWindowSeconds() {
+        return TimeUnit.NANOSECONDS.toSeconds(windowNanos);
+    }
+
+    @Override
+    public String report() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("Sessions: opened %d, closed %d (%.1f/s)%n",
+                getSessionsOpened(), getSessionsClosed(), getSessionsPerSecond()));
+        report.append(String.format("Transactions: %d, successful %d (%.1f/s)%n",
+                getTransactions(), getSuccessfulTransactions(), getTransactionsPerSecond()));
+        report.append(String.format("Entities: loaded %d (%.1f/s), fetched %d%n",
+                getEntityLoads(), getEntityLoadsPerSecond(), getEntityFetches()));
+        report.append(String.format("Statements: prepared %d (%.1f/s), HQL queries %d, max query time %d ms%n",
+                getPreparedStatements(), getStatementsPerSecond(), getQueryExecutions(),
+                getQueryExecutionMaxTimeMillis()));
+        if (getSlowestQuery() != null) {
+            report.append("Slowest query: ").append(getSlowestQuery()).append(System.lineSeparator());
+        }
+        report.append(String.format("Cache hit ratio: second level %.1f%%, query %.1f%%%n",
+                getSecondLevelCacheHitRatio() * 100, getQueryCacheHitRatio() * 100));
+        if (pool != null) {
+            report.append(String.format("Connection pool: %d active of %d, %d obtained, %d slow statements%n",
+                    getActiveConnections(), getPoolSize(), getConnectionsObtained(), pool.getSlowStatements()));
+        } else {
+            report.append(String.format("Connections obtained: %d%n", getConnectionsObtained()));
+        }
+        for (Map.Entry<String, SqlStatementCounter.OperationStats> entry : SqlStatementCounter.getStats().entrySet()) {
+            report.append("SQL per operation ").append(entry.getKey()).append(": ")
+                    .append(entry.getValue()).append(System.lineSeparator());
+        }
+        report.append(String.format("Rates over the last %d s", getWindowSeconds()));
+        return report.toString();
+    }
+
+    @Override
+    public synchronized void reset() {
+        statistics.clear();
+        SqlStatementCounter.resetStats();
+        samples.clear();
+        sample(System.nanoTime());
+        logger.info("Runtime statistics reset");
+    }
+
+    @Override
+    public synchronized void close() {
+        if (sampler != null) {
+            sampler.shutdownNow();
+            sampler = null;
+        }
+        if (registeredName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+            } catch (JMException e) {
+                logger.warn("Could not unregister runtime statistics MBean: {}", e.getMessage());
+            }
+            registeredName = null;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.userservice.util;
+
+/**
+ * JMX-интерфейс статистики процесса (com.userservice:type=RuntimeStatistics).
+ * Скорости (PerSecond) считаются по скользящему окну {@link #getWindowSeconds()}.
+ */
+public interface RuntimeStatisticsMBean {
+
+    long getSessionsOpened();
+
+    long getSessionsClosed();
+
+    long getTransactions();
+
+    long getSuccessfulTransactions();
+
+    long getEntityLoads();
+
+    long getEntityFetches();
+
+    long getQueryExecutions();
+
+    long getQueryExecutionMaxTimeMillis();
+
+    String getSlowestQuery();
+
+    long getPreparedStatements();
+
+    double getSecondLevelCacheHitRatio();
+
+    double getQueryCacheHitRatio();
+
+    int getActiveConnections();
+
+    int getPoolSize();
+
+    long getConnectionsObtained();
+
+    double getSessionsPerSecond();
+
+    double getTransactionsPerSecond();
+
+    double getStatementsPerSecond();
+
+    double getEntityLoadsPerSecond();
+
+    long getWindowSeconds();
+
+    String report();
+
+    void reset();
+}
@@ -0,0 +1,101 @@
+package com.userservice.util;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Применяет SQL-скрипт из classpath поверх схемы, созданной hbm2ddl
+ * (индексы, расширения и прочие объекты, которые нельзя описать аннотациями).
+ */
+public class SchemaInitializer {
+    private static final Logger logger = LogManager.getLogger(SchemaInitializer.class);
+    public static final String DEFAULT_SCRIPT = "db/schema.sql";
+
+    public static void apply(SessionFactory sessionFactory) {
+        apply(sessionFactory, DEFAULT_SCRIPT);
+    }
+
+    public static void apply(SessionFactory sessionFactory, String resource) {
+        List<String> statements = readStatements(resource);
+        try (Session session = sessionFactory.openSession()) {
+            session.doWork(connection -> {
+                boolean autoCommit = connection.getAutoCommit();
+                connection.setAutoCommit(true);
+                try (Statement statement = connection.createStatement()) {
+                    for (String sql : statements) {
+                        try {
+                            statement.execute(sql);
+                        } catch (SQLException e) {
+                            // Например, нет прав на CREATE EXTENSION - приложение работает и без этого объекта
+                            logger.warn("Schema statement failed, skipping: {} ({})", firstLine(sql), e.getMessage());
+                        }
+                    }
+                } finally {
+                    connection.setAutoCommit(autoCommit);
+                }
+            });
+        }
+        logger.info("Applied {} schema statements from {}", statements.size(), resource);
+    }
+
+    static List<String> readStatements(String resource) {
+        InputStream in = SchemaInitializer.class.getClassLoader().getResourceAsStream(resource);
+        if (in == null) {
+            throw new IllegalStateException("Schema script not found: " + resource);
+        }
+
+        List<String> statements = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean inDollarQuote = false;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String trimmed = line.trim();
+                if (!inDollarQuote && (trimmed.isEmpty() || trimmed.startsWith("--"))) {
+                    continue;
+                }
+                current.append(line).append('\n');
+                // Тела функций в $$ ... $$ содержат ';' и не должны разрезаться
+                if (countDollarQuotes(line) % 2 == 1) {
+                    inDollarQuote = !inDollarQuote;
+                }
+                if (!inDollarQuote && trimmed.endsWith(";")) {
+                    String sql = current.toString().trim();
+                    statements.add(sql.substring(0, sql.length() - 1));
+                    current.setLength(0);
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read schema script: " + resource, e);
+        }
+        if (current.toString().trim().length() > 0) {
+            statements.add(current.toString().trim());
+        }
+        return statements;
+    }
+
+    private static int countDollarQuotes(String line) {
+        int count = 0;
+        for (int i = line.indexOf("$$"); i >= 0; i = line.indexOf("$$", i + 2)) {
+            count++;
+        }
+        return count;
+    }
+
+    private static String firstLine(String sql) {
+        int newline = sql.indexOf('\n');
+        return newline < 0 ? sql : sql.substring(0, newline);
+    }
+}
@@ -0,0 +1,308 @@
+package com.userservice.util;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.jdbc.connections.internal.DriverManagerConnectionProviderImpl;
+import org.hibernate.internal.util.config.ConfigurationHelper;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Пул соединений Hibernate (DriverManagerConnectionProviderImpl) с журналом медленных запросов.
+ * Каждый запрос, выполнявшийся дольше порога {@value #THRESHOLD_SETTING} (мс), пишется в логгер
+ * {@value #LOGGER_NAME} с временем, привязанными параметрами (email маскируются) и числом строк.
+ * Для быстрых запросов затраты - замер времени и запоминание параметров; строки результата
+ * считаются только у медленных запросов. Отрицательный порог отключает журнал.
+ */
+public class SlowQueryConnectionProvider extends DriverManagerConnectionProviderImpl {
+    private static final long serialVersionUID = 1L;
+
+    public static final String THRESHOLD_SETTING = "userservice.slow_query.threshold_ms";
+    public static final long DEFAULT_THRESHOLD_MILLIS = 200;
+    public static final String LOGGER_NAME = "com.userservice.slowquery";
+    private static final Logger logger = LogManager.getLogger(LOGGER_NAME);
+    private static final int MAX_VALUE_LENGTH = 100;
+
+    private volatile long thresholdNanos = DEFAULT_THRESHOLD_MILLIS * 1_000_000;
+    private final LongAdder slowStatements = new LongAdder();
+    private final LongAdder connectionsObtained = new LongAdder();
+    private final AtomicInteger activeConnections = new AtomicInteger();
+    private int poolSize;
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public void configure(Map configurationValues) {
+        super.configure(configurationValues);
+        poolSize = ConfigurationHelper.getInt(AvailableSettings.POOL_SIZE, configurationValues, 20);
+        Object threshold = configurationValues.get(THRESHOLD_SETTING);
+        if (threshold != null) {
+            setThresholdMillis(Long.parseLong(threshold.toString().trim()));
+        }
+        logger.info("Slow query log threshold: {} ms", thresholdNanos < 0 ? "disabled" : thresholdNanos / 1_000_000);
+    }
+
+    public void setThresholdMillis(long thresholdMillis) {
+        this.thresholdNanos = thresholdMillis < 0 ? -1 : thresholdMillis * 1_000_000;
+    }
+
+    public long getSlowStatements() {
+        return slowStatements.sum();
+    }
+
+    /**
+     * Соединения, выданные из пула и еще не возвращенные.
+     */
+    public int getActiveConnections() {
+        return activeConnections.get();
+    }
+
+    public long getConnectionsObtained() {
+        return connectionsObtained.sum();
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Connection connection = super.getConnection();
+        connectionsObtained.increment();
+        activeConnections.incrementAndGet();
+        return wrap(connection);
+    }
+
+    @Override
+    public void closeConnection(Connection connection) throws SQLException {
+        activeConnections.decrementAndGet();
+        // В пул возвращается исходное соединение, иначе обертки накапливались бы при повторной выдаче
+        super.closeConnection(unwrapProxy(connection));
+    }
+
+    @Override
+    public boolean isValid(Connection connection) throws SQLException {
+        return super.isValid(unwrapProxy(connection));
+    }
+
+    Connection wrap(Connection connection) {
+        if (thresholdNanos < 0) {
+            return connection;
+        }
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[]{Connection.class}, new ConnectionHandler(connection));
+    }
+
+    private static Connection unwrapProxy(Connection connection) {
+        if (Proxy.isProxyClass(connection.getClass())
+                && Proxy.getInvocationHandler(connection) instanceof ConnectionHandler) {
+            return ((ConnectionHandler) Proxy.getInvocationHandler(connection)).target;
+        }
+        return connection;
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private class ConnectionHandler implements InvocationHandler {
+        private final Connection target;
+
+        private ConnectionHandler(Connection target) {
+            this.target = target;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = SlowQueryConnectionProvider.invoke(target, method, args);
+            switch (method.getName()) {
+                case "prepareStatement":
+                    return statementProxy(PreparedStatement.class, (Statement) result, (String) args[0]);
+                case "prepareCall":
+                    return statementProxy(CallableStatement.class, (Statement) result, (String) args[0]);
+                case "createStatement":
+                    return statementProxy(Statement.class, (Statement) result, null);
+                default:
+                    return result;
+            }
+        }
+
+        private Object statementProxy(Class<? extends Statement> type, Statement statement, String sql) {
+            return Proxy.newProxyInstance(SlowQueryConnectionProvider.class.getClassLoader(),
+                    new Class<?>[]{type}, new StatementHandler(statement, sql));
+        }
+    }
+
+    private class StatementHandler implements InvocationHandler {
+        private final Statement target;
+        private final String sql;
+        private Object[] parameters = new Object[8];
+        private int parameterCount;
+        private int batchSize;
+
+        private StatementHandler(Statement target, String sql) {
+            this.target = target;
+            this.sql = sql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.startsWith("execute")) {
+                return execute(method, args);
+            }
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                setParameter((Integer) args[0], name.equals("setNull") ? null : args[1]);
+            } else if (name.equals("clearParameters")) {
+                Arrays.fill(parameters, 0, parameterCount, null);
+                parameterCount = 0;
+            } else if (name.equals("addBatch")) {
+                batchSize++;
+            } else if (name.equals("clearBatch")) {
+                batchSize = 0;
+            }
+            return SlowQueryConnectionProvider.invoke(target, method, args);
+        }
+
+        private void setParameter(int index, Object value) {
+            if (index > parameters.length) {
+                parameters = Arrays.copyOf(parameters, Math.max(index, parameters.length * 2));
+            }
+            parameters[index - 1] = value;
+            parameterCount = Math.max(parameterCount, index);
+        }
+
+        private Object execute(Method method, Object[] args) throws Throwable {
+            String statementSql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : sql;
+            long started = System.nanoTime();
+            Object result;
+            try {
+                result = SlowQueryConnectionProvider.invoke(target, method, args);
+            } catch (Throwable e) {
+                long elapsed = System.nanoTime() - started;
+                int batch = batchSize;
+                batchSize = 0;
+                if (thresholdNanos >= 0 && elapsed >= thresholdNanos) {
+                    // Медленные запросы, завершившиеся ошибкой (таймаут, блокировка), важны не меньше успешных
+                    slowStatements.increment();
+                    logger.warn("Slow SQL failed ({} ms): {}: {}", elapsed / 1_000_000,
+                            describe(statementSql, parameters, parameterCount, batch), e.toString());
+                }
+                throw e;
+            }
+            long elapsed = System.nanoTime() - started;
+            int batch = batchSize;
+            batchSize = 0;
+            if (thresholdNanos < 0 || elapsed < thresholdNanos) {
+                return result;
+            }
+
+            slowStatements.increment();
+            String description = describe(statementSql, parameters, parameterCount, batch);
+            if (result instanceof ResultSet) {
+                // Строки считаются по мере чтения; запись в лог - при закрытии результата
+                return Proxy.newProxyInstance(SlowQueryConnectionProvider.class.getClassLoader(),
+                        new Class<?>[]{ResultSet.class}, new ResultSetHandler((ResultSet) result, description, elapsed));
+            }
+            logger.warn("Slow SQL ({} ms, {} rows): {}", elapsed / 1_000_000, affectedRows(result), description);
+            return result;
+        }
+
+        private String affectedRows(Object result) throws SQLException {
+            if (result instanceof int[]) {
+                return String.valueOf(Arrays.stream((int[]) result).filter(count -> count > 0).sum());
+            }
+            if (result instanceof long[]) {
+                return String.valueOf(Arrays.stream((long[]) result).filter(count -> count > 0).sum());
+            }
+            if (result instanceof Boolean) {
+                return (Boolean) result ? "result set" : String.valueOf(target.getUpdateCount());
+            }
+            return String.valueOf(result);
+        }
+    }
+
+    private static class ResultSetHandler implements InvocationHandler {
+        private final ResultSet target;
+        private final String description;
+        private final long executionNanos;
+        private final long openedAt = System.nanoTime();
+        private long rows;
+        private boolean logged;
+
+        private ResultSetHandler(ResultSet target, String description, long executionNanos) {
+            this.target = target;
+            this.description = description;
+            this.executionNanos = executionNanos;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = SlowQueryConnectionProvider.invoke(target, method, args);
+            if (method.getName().equals("next") && Boolean.TRUE.equals(result)) {
+                rows++;
+            } else if (method.getName().equals("close") && !logged) {
+                logged = true;
+                logger.warn("Slow SQL ({} ms, {} rows fetched in {} ms): {}", executionNanos / 1_000_000, rows,
+                        (System.nanoTime() - openedAt) / 1_000_000, description);
+            }
+            return result;
+        }
+    }
+
+    static String describe(String sql, Object[] parameters, int parameterCount, int batchSize) {
+        StringBuilder description = new StringBuilder(sql == null ? "<unknown>" : sql.replaceAll("\\s+", " ").trim());
+        if (parameterCount > 0) {
+            description.append(" | params: [");
+            for (int i = 0; i < parameterCount; i++) {
+                if (i > 0) {
+                    description.append(", ");
+                }
+                description.append(formatValue(parameters[i]));
+            }
+            description.append(']');
+        }
+        if (batchSize > 0) {
+            description.append(" | batch: ").append(batchSize).append(" (last parameters shown)");
+        }
+        return description.toString();
+    }
+
+    /**
+     * Значение параметра для лога: локальная часть email скрывается, длинные строки обрезаются.
+     */
+    static String formatValue(Object value) {
+        if (value == null) {
+            return "NULL";
+        }
+        if (!(value instanceof CharSequence)) {
+            return String.valueOf(value);
+        }
+        String text = value.toString();
+        int at = text.indexOf('@');
+        if (at >= 0) {
+            text = "***" + text.substring(at);
+        }
+        if (text.length() > MAX_VALUE_LENGTH) {
+            text = text.substring(0, MAX_VALUE_LENGTH) + "...";
+        }
+        return "'" + text + "'";
+    }
+}
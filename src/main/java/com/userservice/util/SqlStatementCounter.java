@@ -0,0 +1,204 @@
+package com.userservice.util;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Подсчет SQL-запросов по операциям сервиса. Подключается к Hibernate через
+ * hibernate.session_factory.statement_inspector и видит каждый запрос сессии
+ * (HQL, Criteria, native). Операция помечается вызовом {@link #track}; вложенные
+ * операции засчитываются внешней. Если операция выполнила больше запросов, чем
+ * позволяет бюджет, или повторила один и тот же запрос много раз (признак N+1),
+ * в лог пишется предупреждение с текстом запросов.
+ */
+public class SqlStatementCounter implements StatementInspector {
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger logger = LogManager.getLogger(SqlStatementCounter.class);
+    public static final int DEFAULT_BUDGET = 10;
+    // Сколько раз один и тот же запрос может повториться в операции до предупреждения об N+1
+    public static final int REPEAT_THRESHOLD = 5;
+
+    private static final ThreadLocal<Operation> currentOperation = new ThreadLocal<>();
+    private static final Map<String, OperationStats> stats = new ConcurrentHashMap<>();
+    private static final LongAdder totalStatements = new LongAdder();
+    private static volatile int budget = Integer.getInteger("sql.statement.budget", DEFAULT_BUDGET);
+
+    private static class Operation {
+        private final String name;
+        private final List<String> statements = new ArrayList<>();
+        private final Map<String, Integer> repeats = new HashMap<>();
+
+        private Operation(String name) {
+            this.name = name;
+        }
+
+        private void add(String sql) {
+            statements.add(sql);
+            repeats.merge(sql, 1, Integer::sum);
+        }
+    }
+
+    /**
+     * Итоги по одной операции с момента запуска приложения.
+     */
+    public static class OperationStats {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder statements = new LongAdder();
+        private final AtomicLong maxStatements = new AtomicLong();
+        private final LongAdder overBudget = new LongAdder();
+
+        private void record(int count, boolean exceeded) {
+            calls.increment();
+            statements.add(count);
+            maxStatements.accumulateAndGet(count, Math::max);
+            if (exceeded) {
+                overBudget.increment();
+            }
+        }
+
+        public long getCalls() {
+            return calls.sum();
+        }
+
+        public long getStatements() {
+            return statements.sum();
+        }
+
+        public long getMaxStatements() {
+            return maxStatements.get();
+        }
+
+        public long getOverBudget() {
+            return overBudget.sum();
+        }
+
+        public double getAverageStatements() {
+            long count = calls.sum();
+            return count == 0 ? 0 : (double) statements.sum() / count;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("calls=%d, avg=%.1f, max=%d, overBudget=%d",
+                    getCalls(), getAverageStatements(), getMaxStatements(), getOverBudget());
+        }
+    }
+
+    @Override
+    public String inspect(String sql) {
+        totalStatements.increment();
+        Operation operation = currentOperation.get();
+        if (operation != null) {
+            operation.add(sql);
+        }
+        return sql;
+    }
+
+    /**
+     * Выполняет work как операцию с именем name и учитывает ее запросы.
+     * Внутри уже помеченной операции просто выполняет work.
+     */
+    public static <T> T track(String name, Supplier<T> work) {
+        if (currentOperation.get() != null) {
+            return work.get();
+        }
+        Operation operation = new Operation(name);
+        currentOperation.set(operation);
+        try {
+            return work.get();
+        } finally {
+            currentOperation.remove();
+            finish(operation);
+        }
+    }
+
+    public static void track(String name, Runnable work) {
+        track(name, () -> {
+            work.run();
+            return null;
+        });
+    }
+
+    /**
+     * Возвращает запросы, выполненные work в текущем потоке, например чтобы проверить
+     * в тесте, что операция укладывается в N запросов. Запросы засчитываются и внешней операции.
+     */
+    public static List<String> capture(Runnable work) {
+        Operation outer = currentOperation.get();
+        Operation operation = new Operation("capture");
+        currentOperation.set(operation);
+        try {
+            work.run();
+        } finally {
+            if (outer != null) {
+                currentOperation.set(outer);
+                operation.statements.forEach(outer::add);
+            } else {
+                currentOperation.remove();
+            }
+        }
+        return Collections.unmodifiableList(operation.statements);
+    }
+
+    private static void finish(Operation operation) {
+        int count = operation.statements.size();
+        int limit = budget;
+        boolean exceeded = count > limit;
+        stats.computeIfAbsent(operation.name, name -> new OperationStats()).record(count, exceeded);
+
+        if (exceeded) {
+            logger.warn("Operation {} executed {} SQL statements (budget {}): {}",
+                    operation.name, count, limit, operation.statements);
+        }
+        operation.repeats.forEach((sql, repeats) -> {
+            if (repeats > REPEAT_THRESHOLD) {
+                logger.warn("Operation {} executed the same statement {} times, possible N+1: {}",
+                        operation.name, repeats, sql);
+            }
+        });
+        logger.debug("Operation {} executed {} SQL statements", operation.name, count);
+    }
+
+    public static int getBudget() {
+        return budget;
+    }
+
+    /**
+     * Максимальное число запросов на операцию без предупреждения в логе.
+     */
+    public static void setBudget(int budget) {
+        if (budget <= 0) {
+            throw new IllegalArgumentException("Statement budget must be positive");
+        }
+        SqlStatementCounter.budget = budget;
+    }
+
+    /**
+     * Итоги по операциям, отсортированные по имени.
+     */
+    public static Map<String, OperationStats> getStats() {
+        return new TreeMap<>(stats);
+    }
+
+    public static long getTotalStatements() {
+        return totalStatements.sum();
+    }
+
+    public static void resetStats() {
+        stats.clear();
+        totalStatements.reset();
+    }
+}
@@ -0,0 +1,49 @@
+-- Дополнительные объекты схемы, которые hbm2ddl не умеет создавать.
+-- Скрипт выполняется при каждом запуске, поэтому все операторы должны быть идемпотентными.
+
+-- Поиск по префиксу имени (LIKE 'abc%') независимо от collation базы
+CREATE INDEX IF NOT EXISTS idx_users_name_pattern ON users (name text_pattern_ops);
+
+-- Сортировка и keyset-пагинация по (name, id): text_pattern_ops не поддерживает ORDER BY
+-- и сравнение (name, id) > (...) в collation базы, поэтому нужен индекс с классом по умолчанию
+CREATE INDEX IF NOT EXISTS idx_users_name_id ON users (name, id);
+
+-- Фильтрация по диапазону и keyset-пагинация по (age, id) и (created_at, id)
+CREATE INDEX IF NOT EXISTS idx_users_age_id ON users (age, id);
+CREATE INDEX IF NOT EXISTS idx_users_created_at_id ON users (created_at, id);
+
+-- Нечеткий поиск по имени (similarity, %, ILIKE '%...%'); требует права на CREATE EXTENSION
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+CREATE INDEX IF NOT EXISTS idx_users_name_trgm ON users USING gin (name gin_trgm_ops);
+
+-- Время последнего изменения для инкрементальной синхронизации (changesSince).
+-- Триггер выставляет его при любой записи, включая запросы в обход Hibernate.
+ALTER TABLE users ADD COLUMN IF NOT EXISTS updated_at timestamp;
+UPDATE users SET updated_at = created_at WHERE updated_at IS NULL;
+CREATE INDEX IF NOT EXISTS idx_users_updated_at_id ON users (updated_at, id);
+
+CREATE OR REPLACE FUNCTION users_touch_updated_at() RETURNS trigger AS $$
+BEGIN
+    NEW.updated_at := clock_timestamp();
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_users_updated_at ON users;
+CREATE TRIGGER trg_users_updated_at BEFORE INSERT OR UPDATE ON users
+    FOR EACH ROW EXECUTE FUNCTION users_touch_updated_at();
+
+-- Мягкое удаление (UserDAO#setSoftDelete): отметка времени вместо DELETE.
+-- Частичный индекс мал и нужен очистке (TombstonePurger) и подсчету невычищенных строк.
+ALTER TABLE users ADD COLUMN IF NOT EXISTS deleted_at timestamp;
+CREATE INDEX IF NOT EXISTS idx_users_deleted_at ON users (deleted_at) WHERE deleted_at IS NOT NULL;
+
+-- Контрольные точки пакетных заданий (com.userservice.job): завершенные диапазоны ID
+CREATE TABLE IF NOT EXISTS user_job_checkpoint (
+    job_name      varchar(100) NOT NULL,
+    chunk_start   bigint       NOT NULL,
+    processed     integer      NOT NULL,
+    updated       integer      NOT NULL,
+    completed_at  timestamp    NOT NULL DEFAULT LOCALTIMESTAMP,
+    PRIMARY KEY (job_name, chunk_start)
+);
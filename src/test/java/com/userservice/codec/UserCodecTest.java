@@ -0,0 +1,113 @@
+package com.userservice.codec;
+
+import com.userservice.entity.User;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("UserCodec Unit Tests")
+class UserCodecTest {
+
+    private static User user(long id, String name, String email) {
+        User user = new User(name, email, 30);
+        user.setId(id);
+        user.setCreatedAt(LocalDateTime.of(2024, 3, 15, 10, 20, 30, 123_456_789));
+        user.setUpdatedAt(LocalDateTime.of(2019, 12, 31, 23, 59, 59));
+        return user;
+    }
+
+    @Test
+    @DisplayName("Should round-trip users with optional fields, non-ASCII text and microsecond timestamps")
+    void testRoundTrip() {
+        // Given
+        UserCodec codec = new UserCodec();
+        User full = user(300, "Анна 😀 O'Brien", "anna@example.com");
+        full.setDeletedAt(LocalDateTime.of(2025, 1, 1, 0, 0));
+        User sparse = new User(null, "sparse@example.com", null);
+
+        // When
+        byte[] encoded = codec.encode(full);
+        User decoded = codec.decode(encoded);
+        User decodedSparse = codec.decode(codec.encode(sparse));
+
+        // Then
+        assertEquals(codec.encodedSize(full), encoded.length);
+        assertTrue(encoded.length < 60, "Record is " + encoded.length + " bytes");
+        assertEquals(300L, decoded.getId());
+        assertEquals("Анна 😀 O'Brien", decoded.getName());
+        assertEquals("anna@example.com", decoded.getEmail());
+        assertEquals(30, decoded.getAge());
+        assertEquals(LocalDateTime.of(2024, 3, 15, 10, 20, 30, 123_456_000), decoded.getCreatedAt());
+        assertEquals(full.getUpdatedAt(), decoded.getUpdatedAt());
+        assertEquals(full.getDeletedAt(), decoded.getDeletedAt());
+        assertNull(decodedSparse.getId());
+        assertNull(decodedSparse.getName());
+        assertNull(decodedSparse.getAge());
+        assertNull(decodedSparse.getCreatedAt());
+        assertEquals("sparse@example.com", decodedSparse.getEmail());
+    }
+
+    @Test
+    @DisplayName("Should read single fields from a batch without decoding whole records")
+    void testBatchAndViews() throws IOException {
+        // Given - маленький пул вынуждает увеличивать буфер пакета
+        BufferPool pool = new BufferPool(2, 1 << 20);
+        UserCodec codec = new UserCodec(pool);
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            users.add(user(i * 1000L, "User " + i + " с длинным именем для переполнения буфера", "user" + i + "@example.com"));
+        }
+
+        // When
+        byte[] batch = codec.encodeAll(users);
+        List<Long> found = new ArrayList<>();
+        codec.forEach(ByteBuffer.wrap(batch), view -> {
+            if (view.emailEquals("user42@example.com") || view.emailEquals("user499@example.com")) {
+                found.add(view.getId());
+            }
+        });
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        codec.encodeAll(users, out);
+        List<User> decoded = codec.decodeAll(new ByteArrayInputStream(out.toByteArray()));
+
+        // Then
+        assertEquals(List.of(42_000L, 499_000L), found);
+        assertArrayEquals(batch, out.toByteArray());
+        assertEquals(500, decoded.size());
+        assertEquals("user123@example.com", decoded.get(123).getEmail());
+        assertEquals(codec.decodeAll(batch).get(7).getName(), users.get(7).getName());
+        assertTrue(pool.size() > 0, "Buffers should return to the pool");
+
+        UserRecordView view = new UserRecordView().wrap(ByteBuffer.wrap(codec.encode(users.get(5))), 0);
+        assertEquals(5000L, view.getId());
+        assertFalse(view.emailEquals("user5@example.org"));
+        assertFalse(view.emailEquals("usér5@example.com"));
+
+        batch[0] = 2;
+        assertThrows(IllegalArgumentException.class, () -> codec.decodeAll(batch));
+    }
+
+    @Test
+    @DisplayName("Should reject records with flags this version does not know")
+    void testUnknownFlags() {
+        // Given - запись с полем из будущей версии формата
+        UserCodec codec = new UserCodec();
+        byte[] encoded = codec.encode(user(1, "Future", "future@example.com"));
+        encoded[1] |= (byte) 0x80;
+
+        // When
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, () -> codec.decode(encoded));
+
+        // Then
+        assertTrue(exception.getMessage().startsWith("Unknown user record flags"), exception.getMessage());
+    }
+}
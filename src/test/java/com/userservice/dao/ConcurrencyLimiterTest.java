@@ -0,0 +1,98 @@
+package com.userservice.dao;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("ConcurrencyLimiter Unit Tests")
+class ConcurrencyLimiterTest {
+
+    @Test
+    @DisplayName("Should reject requests beyond the limit when the queue is full")
+    void testRejectsWhenSaturated() throws Exception {
+        // Given
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("read", 1, 1, 1, 0,
+                Duration.ofMillis(10), Duration.ofSeconds(1));
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch finish = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try {
+            Future<String> holder = executor.submit(() -> limiter.execute(() -> {
+                started.countDown();
+                await(finish);
+                return "done";
+            }));
+            started.await();
+
+            // When & Then
+            UserDAORejectedException exception = assertThrows(UserDAORejectedException.class,
+                    () -> limiter.execute(() -> "second"));
+            assertTrue(exception.getMessage().contains("limit 1"));
+            assertEquals(1, limiter.getInFlight());
+            assertEquals(1, limiter.getRejected());
+
+            finish.countDown();
+            assertEquals("done", holder.get());
+            assertEquals("third", limiter.execute(() -> "third"));
+            assertEquals(0, limiter.getInFlight());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("Should decrease the limit on slow calls and grow it back on fast ones")
+    void testAdaptiveLimit() {
+        // Given
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter("write", 10, 2, 20, 0,
+                Duration.ZERO, Duration.ofMillis(20));
+
+        // When - медленные запросы
+        for (int i = 0; i < 10; i++) {
+            limiter.execute(() -> {
+                sleep(25);
+                return null;
+            });
+        }
+
+        // Then
+        int reduced = limiter.getLimit();
+        assertTrue(reduced < 10, "Limit should shrink, was " + reduced);
+        assertTrue(reduced >= 2);
+
+        // When - быстрые запросы при полностью занятом лимите
+        ConcurrencyLimiter small = new ConcurrencyLimiter("write", 1, 1, 5, 0,
+                Duration.ZERO, Duration.ofSeconds(1));
+        for (int i = 0; i < 20; i++) {
+            small.execute(() -> null);
+        }
+
+        // Then
+        assertTrue(small.getLimit() > 1);
+        assertTrue(small.getLimit() <= 5);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
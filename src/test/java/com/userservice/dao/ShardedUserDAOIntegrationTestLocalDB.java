@@ -0,0 +1,207 @@
+package com.userservice.dao;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.AfterAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.userservice.entity.User;
+import com.userservice.util.TestHibernateUtil;
+
+/**
+ * Интеграционные тесты шардирования на нескольких локальных базах PostgreSQL.
+ * Список баз задается переменной DB_SHARD_URLS (через запятую), по умолчанию
+ * usersdb_shard0 и usersdb_shard1 на localhost. Базы должны быть созданы заранее.
+ */
+@DisplayName("ShardedUserDAO Integration Tests (Local DB)")
+class ShardedUserDAOIntegrationTestLocalDB {
+
+    private static final List<SessionFactory> sessionFactories = new ArrayList<>();
+    private static ShardedUserDAO shardedDAO;
+
+    @BeforeAll
+    static void setUp() {
+        String urls = System.getenv("DB_SHARD_URLS");
+        if (urls == null || urls.isEmpty()) {
+            urls = System.getProperty("db.shard.urls",
+                    "jdbc:postgresql://localhost:5432/usersdb_shard0,jdbc:postgresql://localhost:5432/usersdb_shard1");
+        }
+
+        String username = System.getenv("DB_USERNAME");
+        if (username == null || username.isEmpty()) {
+            username = System.getProperty("db.username", "postgres");
+        }
+
+        String password = System.getenv("DB_PASSWORD");
+        if (password == null || password.isEmpty()) {
+            password = System.getProperty("db.password");
+            if (password == null || password.isEmpty()) {
+                throw new IllegalStateException(
+                    "Database password not found! " +
+                    "Please set DB_PASSWORD environment variable or db.password system property."
+                );
+            }
+        }
+
+        for (String url : urls.split(",")) {
+            sessionFactories.add(TestHibernateUtil.buildSessionFactory(url.trim(), username, password));
+        }
+        shardedDAO = new ShardedUserDAO(sessionFactories);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        shardedDAO.close();
+        try (Session session = sessionFactories.get(0).openSession()) {
+            session.beginTransaction();
+            session.createNativeQuery("DROP TABLE IF EXISTS user_email_index").executeUpdate();
+            session.getTransaction().commit();
+        }
+        sessionFactories.forEach(SessionFactory::close);
+    }
+
+    @BeforeEach
+    void clearDatabase() {
+        for (SessionFactory factory : sessionFactories) {
+            try (Session session = factory.openSession()) {
+                session.beginTransaction();
+                session.createNativeQuery("DELETE FROM users").executeUpdate();
+                session.getTransaction().commit();
+            }
+        }
+        try (Session session = sessionFactories.get(0).openSession()) {
+            session.beginTransaction();
+            session.createNativeQuery("DELETE FROM user_email_index").executeUpdate();
+            session.getTransaction().commit();
+        }
+    }
+
+    @Test
+    @DisplayName("Should embed shard number into generated IDs and route reads by ID")
+    void testRoutingById() {
+        // Given
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            ids.add(shardedDAO.create(new User("User " + i, "user" + i + "@example.com", 20 + i)));
+        }
+
+        // Then
+        for (Long id : ids) {
+            User user = shardedDAO.read(id);
+            assertNotNull(user);
+            assertEquals(shardedDAO.shardForEmail(user.getEmail()), ShardedUserDAO.shardOf(id));
+        }
+        assertTrue(ids.stream().map(ShardedUserDAO::shardOf).distinct().count() > 1,
+                "Users should be spread over several shards");
+    }
+
+    @Test
+    @DisplayName("Should enforce email uniqueness and look up by email across shards")
+    void testEmailIndex() {
+        // Given
+        Long id = shardedDAO.create(new User("John", "john@example.com", 30));
+
+        // When & Then
+        assertThrows(RuntimeException.class, () -> shardedDAO.create(new User("Other", "JOHN@example.com", 40)));
+        assertEquals(id, shardedDAO.readByEmail("john@example.com").getId());
+
+        // When - смена email освобождает старый адрес
+        User user = shardedDAO.read(id);
+        user.setEmail("johnny@example.com");
+        shardedDAO.update(user);
+
+        // Then
+        assertNull(shardedDAO.readByEmail("john@example.com"));
+        assertEquals(id, shardedDAO.readByEmail("johnny@example.com").getId());
+
+        // When
+        shardedDAO.delete(id);
+
+        // Then
+        assertNull(shardedDAO.readByEmail("johnny@example.com"));
+    }
+
+    @Test
+    @DisplayName("Should release email reservations left by an interrupted create")
+    void testStaleReservationCleanup() {
+        // Given - резерв упавшего процесса и свежий резерв выполняющейся операции
+        try (Session session = sessionFactories.get(0).openSession()) {
+            session.beginTransaction();
+            session.createNativeQuery("INSERT INTO user_email_index (email, user_id, reserved_at) VALUES " +
+                    "('stale@example.com', 0, now() - interval '1 hour'), " +
+                    "('fresh@example.com', 0, now())").executeUpdate();
+            session.getTransaction().commit();
+        }
+        assertThrows(RuntimeException.class, () -> shardedDAO.create(new User("Stale", "stale@example.com", 30)));
+
+        // When
+        int released = shardedDAO.releaseStaleReservations(ShardedUserDAO.STALE_RESERVATION_AGE);
+
+        // Then
+        assertEquals(1, released);
+        Long id = shardedDAO.create(new User("Stale", "stale@example.com", 30));
+        assertEquals(id, shardedDAO.readByEmail("stale@example.com").getId());
+        assertThrows(RuntimeException.class, () -> shardedDAO.create(new User("Fresh", "fresh@example.com", 30)));
+    }
+
+    @Test
+    @DisplayName("Should count and stream users from all shards in creation order")
+    void testFanOut() {
+        // Given
+        for (int i = 0; i < 30; i++) {
+            shardedDAO.create(new User("User " + i, "fan" + i + "@example.com", 30));
+        }
+
+        // When
+        long count = shardedDAO.count();
+        List<User> all = shardedDAO.readAll();
+
+        // Then
+        assertEquals(30, count);
+        assertEquals(30, all.size());
+        for (int i = 1; i < all.size(); i++) {
+            assertTrue(!all.get(i).getCreatedAt().isBefore(all.get(i - 1).getCreatedAt()));
+        }
+    }
+
+    @Test
+    @DisplayName("Should count while unread streams hold their shard cursors")
+    void testCountWithOpenStreams() {
+        // Given - в каждом шарде больше страниц, чем помещается в очередь курсора
+        for (SessionFactory factory : sessionFactories) {
+            try (Session session = factory.openSession()) {
+                session.beginTransaction();
+                session.createNativeQuery("INSERT INTO users (name, email, age, created_at) " +
+                        "SELECT 'Bulk ' || i, 'bulk' || i || '@example.com', 30, now() FROM generate_series(1, 2500) i")
+                        .executeUpdate();
+                session.getTransaction().commit();
+            }
+        }
+        List<Stream<User>> streams = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            streams.add(shardedDAO.streamAll());
+        }
+
+        try {
+            // When / Then - производители открытых потоков не занимают пул count()
+            long count = assertTimeoutPreemptively(Duration.ofSeconds(10), () -> shardedDAO.count());
+            assertEquals(2500L * sessionFactories.size(), count);
+        } finally {
+            streams.forEach(Stream::close);
+        }
+    }
+}
@@ -1,8 +1,19 @@
 package com.userservice.dao;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
+import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
 import org.junit.jupiter.api.AfterAll;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
@@ -18,6 +29,12 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestMethodOrder;
 
 import com.userservice.entity.User;
+import com.userservice.entity.UserOutboxEvent;
+import com.userservice.outbox.OutboxPublisher;
+import com.userservice.service.EmailBloomFilter;
+import com.userservice.snapshot.UserSnapshotStore;
+import com.userservice.util.SlowQueryConnectionProvider;
+import com.userservice.util.SqlStatementCounter;
 import com.userservice.util.TestHibernateUtil;
 
 /**
@@ -272,5 +289,447 @@ class UserDAOIntegrationTestLocalDB {
         assertNotNull(found);
         assertEquals(1, userDAO.readAll().size());
     }
-}
 
+    @Test
+    @Order(12)
+    @DisplayName("Should run several operations in one unit of work")
+    void testInTransaction() {
+        // Given
+        Long id = userDAO.create(new User("Unit Of Work", "uow@example.com", 20));
+
+        // When - чтение и обновление в одной сессии
+        User updated = userDAO.inTransaction(dao -> {
+            User user = dao.read(id);
+            user.setAge(21);
+            dao.update(user);
+            assertTrue(dao.isInTransaction());
+            return user;
+        });
+
+        // Then
+        assertEquals(21, updated.getAge());
+        assertEquals(21, userDAO.read(id).getAge());
+    }
+
+    @Test
+    @Order(13)
+    @DisplayName("Should roll back the whole unit of work on failure")
+    void testInTransactionRollback() {
+        // When
+        assertThrows(IllegalStateException.class, () -> {
+            userDAO.inTransaction(dao -> {
+                dao.create(new User("Rolled Back", "rollback@example.com", 40));
+                throw new IllegalStateException("abort");
+            });
+        });
+
+        // Then
+        assertTrue(userDAO.readAll().isEmpty());
+    }
+
+    @Test
+    @Order(14)
+    @DisplayName("Should filter, sort and page users with keyset pagination")
+    void testSearch() {
+        // Given
+        userDAO.create(new User("Anna", "anna@example.com", 20));
+        userDAO.create(new User("Andrew", "andrew@example.com", 35));
+        userDAO.create(new User("Antonio", "antonio@example.com", 35));
+        userDAO.create(new User("Boris", "boris@example.com", 30));
+
+        // When - первая страница
+        List<User> firstPage = userDAO.search(new UserQuery()
+                .nameStartsWith("An")
+                .ageBetween(21, 40)
+                .orderBy(UserQuery.SortField.AGE, false)
+                .limit(1));
+
+        // Then
+        assertEquals(1, firstPage.size());
+        assertEquals("Andrew", firstPage.get(0).getName());
+
+        // When - следующая страница после последнего пользователя
+        List<User> secondPage = userDAO.search(new UserQuery()
+                .nameStartsWith("An")
+                .ageBetween(21, 40)
+                .orderBy(UserQuery.SortField.AGE, false)
+                .after(firstPage.get(0))
+                .limit(10));
+
+        // Then
+        assertEquals(1, secondPage.size());
+        assertEquals("Antonio", secondPage.get(0).getName());
+    }
+
+    @Test
+    @Order(15)
+    @DisplayName("Should publish changes to listeners after commit")
+    void testChangeListeners() {
+        // Given
+        List<UserChange> changes = new ArrayList<>();
+        UserChangeListener listener = changes::add;
+        userDAO.addChangeListener(listener);
+        try {
+            // When
+            User user = new User("Listener", "listener@example.com", 30);
+            Long id = userDAO.create(user);
+            user.setAge(31);
+            userDAO.update(user);
+            userDAO.delete(id);
+
+            // Then
+            assertEquals(3, changes.size());
+            assertEquals(UserChange.Kind.UPDATED, changes.get(1).getKind());
+            assertEquals(30, changes.get(1).getBefore().getAge());
+            assertEquals(31, changes.get(1).getAfter().getAge());
+            assertEquals(31, changes.get(2).getBefore().getAge());
+            assertEquals(0L, userDAO.count());
+        } finally {
+            userDAO.removeChangeListener(listener);
+        }
+    }
+
+    @Test
+    @Order(16)
+    @DisplayName("Should find users by misspelled name")
+    void testSearchByName() {
+        // Given
+        userDAO.create(new User("Alexander Petrov", "petrov@example.com", 30));
+        userDAO.create(new User("Boris Ivanov", "ivanov@example.com", 40));
+
+        // When
+        List<User> fuzzy = userDAO.searchByName("Alexandr Petrof", 10);
+        List<User> substring = userDAO.searchByName("ivan", 10);
+
+        // Then
+        assertEquals("Alexander Petrov", fuzzy.get(0).getName());
+        assertEquals("Boris Ivanov", substring.get(0).getName());
+    }
+
+    @Test
+    @Order(17)
+    @DisplayName("Should aggregate users by age and creation date")
+    void testAggregates() {
+        // Given
+        userDAO.create(new User("User 1", "agg1@example.com", 20));
+        userDAO.create(new User("User 2", "agg2@example.com", 20));
+        userDAO.create(new User("User 3", "agg3@example.com", 45));
+
+        // When
+        Map<Integer, Long> byAge = userDAO.countByAge();
+        Map<LocalDate, Long> byDay = userDAO.countByCreationDate();
+
+        // Then
+        assertEquals(2L, byAge.get(20));
+        assertEquals(1L, byAge.get(45));
+        assertEquals(3L, byDay.values().stream().mapToLong(Long::longValue).sum());
+    }
+
+    @Test
+    @Order(18)
+    @DisplayName("Should write outbox events in the same transaction and publish them in batches")
+    void testOutbox() {
+        // Given
+        List<UserOutboxEvent> published = new ArrayList<>();
+        OutboxPublisher publisher = new OutboxPublisher(sessionFactory, published::addAll, 2);
+        userDAO.setOutboxEnabled(true);
+        try {
+            User user = new User("Outbox", "outbox@example.com", 30);
+            Long id = userDAO.create(user);
+            user.setAge(31);
+            userDAO.update(user);
+            userDAO.delete(id);
+
+            // When
+            long drained = publisher.drain();
+
+            // Then
+            assertEquals(3, drained);
+            assertEquals(2, publisher.getPublishedBatches());
+            assertEquals("CREATED", published.get(0).getKind());
+            assertEquals("UPDATED", published.get(1).getKind());
+            assertTrue(published.get(1).getPayload().contains("\"age\":31"));
+            assertEquals("DELETED", published.get(2).getKind());
+            assertEquals(0, publisher.pendingEvents());
+        } finally {
+            userDAO.setOutboxEnabled(false);
+        }
+    }
+
+    @Test
+    @Order(19)
+    @DisplayName("Should serve users from the memory-mapped snapshot and apply changes")
+    void testSnapshotStore() throws Exception {
+        // Given
+        Long first = userDAO.create(new User("Snapshot 1", "snap1@example.com", 25));
+        Path file = Files.createTempFile("users", ".snapshot");
+        try (UserSnapshotStore store = UserSnapshotStore.build(sessionFactory, file, 100)) {
+            userDAO.addChangeListener(store);
+            try {
+                // When
+                // 100 символов по 4 байта UTF-8 - максимум колонки name
+                String longName = "😀".repeat(100);
+                Long second = userDAO.create(new User(longName, "snap2@example.com", 35));
+                User changed = userDAO.read(first);
+                changed.setName("Snapshot 1 renamed");
+                userDAO.update(changed);
+
+                // Then
+                assertEquals("Snapshot 1 renamed", store.get(first).getName());
+                assertEquals(35, store.get(second).getAge());
+                assertEquals(longName, store.get(second).getName());
+                assertEquals("snap2@example.com", store.get(second).toUser().getEmail());
+
+                userDAO.delete(second);
+                assertNull(store.get(second));
+            } finally {
+                userDAO.removeChangeListener(store);
+            }
+        }
+
+        // When - повторное открытие файла и догрузка изменений, сделанных без подписки
+        Long third = userDAO.create(new User("Snapshot 3", "snap3@example.com", 45));
+        try (UserSnapshotStore reopened = UserSnapshotStore.open(file)) {
+            assertEquals("Snapshot 1 renamed", reopened.get(first).getName());
+            assertNull(reopened.get(-1L));
+            assertNull(reopened.get(third));
+
+            Thread.sleep(1100);
+            reopened.refresh(sessionFactory);
+            assertEquals("Snapshot 3", reopened.get(third).getName());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    @Order(20)
+    @DisplayName("Should find already taken emails with one query")
+    void testFindExistingEmails() {
+        // Given
+        userDAO.create(new User("User 1", "taken1@example.com", 20));
+        userDAO.create(new User("User 2", "taken2@example.com", 30));
+
+        // When
+        Set<String> existing = userDAO.findExistingEmails(
+                List.of("taken1@example.com", "free@example.com", "taken2@example.com"));
+
+        // Then
+        assertEquals(Set.of("taken1@example.com", "taken2@example.com"), existing);
+        assertTrue(userDAO.existsByEmail("taken1@example.com"));
+        assertTrue(!userDAO.existsByEmail("free@example.com"));
+    }
+
+    @Test
+    @Order(21)
+    @DisplayName("Should return changed users after a resumable cursor")
+    void testChangesSince() throws Exception {
+        // Given
+        User first = new User("User 1", "change1@example.com", 20);
+        userDAO.create(first);
+        userDAO.create(new User("User 2", "change2@example.com", 30));
+        userDAO.create(new User("User 3", "change3@example.com", 40));
+
+        // When
+        List<User> page = userDAO.changesSince(UserChangeCursor.START, 2, Duration.ZERO);
+        UserChangeCursor cursor = UserChangeCursor.parse(UserChangeCursor.after(page.get(1)).toString());
+        List<User> rest = userDAO.changesSince(cursor, 10, Duration.ZERO);
+
+        // Then
+        assertEquals(2, page.size());
+        assertEquals("change1@example.com", page.get(0).getEmail());
+        assertNotNull(page.get(0).getUpdatedAt());
+        assertEquals(1, rest.size());
+        assertEquals("change3@example.com", rest.get(0).getEmail());
+
+        // When - изменение уже выданной записи снова попадает в поток
+        first.setAge(21);
+        userDAO.update(first);
+        List<User> changed = userDAO.changesSince(UserChangeCursor.after(rest.get(0)), 10, Duration.ZERO);
+
+        // Then
+        assertEquals(1, changed.size());
+        assertEquals(first.getId(), changed.get(0).getId());
+        assertTrue(userDAO.changesSince(UserChangeCursor.START, 10, Duration.ofMinutes(1)).isEmpty(),
+                "Changes within the safety lag should not be returned yet");
+    }
+
+    @Test
+    @Order(22)
+    @DisplayName("Should insert or update by email atomically and report which happened")
+    void testUpsert() {
+        // Given
+        Long existingId = userDAO.create(new User("Old Name", "upsert1@example.com", 20));
+        List<UserChange> changes = new ArrayList<>();
+        UserChangeListener listener = changes::add;
+        userDAO.addChangeListener(listener);
+        try {
+            // When
+            List<UpsertResult> results = userDAO.upsertAll(List.of(
+                    new User("New Name", "upsert1@example.com", 21),
+                    new User("Fresh", "upsert2@example.com", 30),
+                    new User("Fresh Again", "upsert2@example.com", 31)));
+
+            // Then
+            assertEquals(3, results.size());
+            assertEquals(existingId, results.get(0).getId());
+            assertTrue(!results.get(0).isInserted());
+            assertTrue(results.get(1).isInserted());
+            assertEquals(results.get(1).getId(), results.get(2).getId());
+            assertEquals("New Name", userDAO.read(existingId).getName());
+            assertEquals(31, userDAO.read(results.get(1).getId()).getAge());
+            assertEquals(2, userDAO.count());
+
+            assertEquals(2, changes.size());
+            UserChange updated = changes.get(0);
+            assertEquals(UserChange.Kind.UPDATED, updated.getKind());
+            assertEquals("Old Name", updated.getBefore().getName());
+            assertEquals("New Name", updated.getAfter().getName());
+            assertEquals(UserChange.Kind.CREATED, changes.get(1).getKind());
+
+            // When
+            UpsertResult single = userDAO.upsertByEmail(new User("Third", "upsert3@example.com", 40));
+
+            // Then
+            assertTrue(single.isInserted());
+            assertEquals(3, userDAO.count());
+        } finally {
+            userDAO.removeChangeListener(listener);
+        }
+    }
+
+    @Test
+    @Order(23)
+    @DisplayName("Should read, update and delete a user with one statement each")
+    void testStatementCounts() {
+        // Given
+        Long id = userDAO.create(new User("Counted", "counted@example.com", 25));
+
+        // When
+        List<String> reads = SqlStatementCounter.capture(() -> userDAO.read(id));
+        User user = userDAO.read(id);
+        user.setAge(26);
+        List<String> updates = SqlStatementCounter.capture(() -> userDAO.update(user));
+        List<String> deletes = SqlStatementCounter.capture(() -> userDAO.delete(id));
+
+        // Then
+        assertEquals(1, reads.size(), reads.toString());
+        assertEquals(1, updates.size(), updates.toString());
+        assertEquals(1, deletes.size(), deletes.toString());
+        assertNull(userDAO.read(id));
+        assertThrows(RuntimeException.class, () -> userDAO.delete(id));
+    }
+
+    @Test
+    @Order(24)
+    @DisplayName("Should log statements slower than the threshold")
+    void testSlowQueryLog() {
+        // Given
+        SlowQueryConnectionProvider provider = ((SessionFactoryImplementor) sessionFactory).getServiceRegistry()
+                .getService(ConnectionProvider.class).unwrap(SlowQueryConnectionProvider.class);
+        long before = provider.getSlowStatements();
+        provider.setThresholdMillis(100);
+
+        try {
+            // When
+            userDAO.inTransaction(dao -> {
+                userDAO.create(new User("Fast", "fast@example.com", 20));
+                return null;
+            });
+            try (Session session = sessionFactory.openSession()) {
+                session.createNativeQuery("SELECT 1 FROM pg_sleep(0.2)").getSingleResult();
+            }
+
+            // Then
+            assertEquals(before + 1, provider.getSlowStatements());
+        } finally {
+            provider.setThresholdMillis(SlowQueryConnectionProvider.DEFAULT_THRESHOLD_MILLIS);
+        }
+    }
+
+    @Test
+    @Order(25)
+    @DisplayName("Should load the email filter from every row, soft-deleted ones included")
+    void testEmailFilterIncludesSoftDeleted() {
+        // Given
+        UserDAO softDeleting = new UserDAO(sessionFactory);
+        softDeleting.setSoftDelete(true);
+        softDeleting.create(new User("Active", "active@example.com", 20));
+        Long deleted = softDeleting.create(new User("Tombstone", "tombstone@example.com", 30));
+        softDeleting.delete(deleted);
+
+        // When
+        List<String> firstPage = softDeleting.findEmailsAfter("", 1);
+        List<String> secondPage = softDeleting.findEmailsAfter(firstPage.get(0), 10);
+        EmailBloomFilter filter = new EmailBloomFilter(1000, 0.01);
+        filter.load(softDeleting);
+
+        // Then
+        assertEquals(List.of("active@example.com"), firstPage);
+        assertEquals(List.of("tombstone@example.com"), secondPage);
+        assertNull(softDeleting.read(deleted));
+        assertTrue(filter.mightContain("tombstone@example.com"));
+        assertTrue(filter.mightContain("active@example.com"));
+    }
+
+    @Test
+    @Order(26)
+    @DisplayName("Should page through equal sort values with the (value, id) keyset")
+    void testKeysetPagingOverDuplicateValues() {
+        // Given - повторяющиеся имена, порядок внутри которых задает только id
+        String[] names = {"Maria", "Ivan", "Maria", "Oleg", "Ivan", "Maria", "Anna"};
+        for (int i = 0; i < names.length; i++) {
+            userDAO.create(new User(names[i], "keyset" + i + "@example.com", 30));
+        }
+
+        for (boolean descending : new boolean[]{false, true}) {
+            // When - страницы по два пользователя и один запрос без пагинации
+            List<User> expected = userDAO.search(new UserQuery()
+                    .orderBy(UserQuery.SortField.NAME, descending)
+                    .limit(100));
+            List<Long> paged = new ArrayList<>();
+            List<User> page = userDAO.search(new UserQuery()
+                    .orderBy(UserQuery.SortField.NAME, descending)
+                    .limit(2));
+            while (!page.isEmpty()) {
+                page.forEach(user -> paged.add(user.getId()));
+                page = userDAO.search(new UserQuery()
+                        .orderBy(UserQuery.SortField.NAME, descending)
+                        .after(page.get(page.size() - 1))
+                        .limit(2));
+            }
+
+            // Then - ни один пользователь не пропущен и не повторен
+            assertEquals(names.length, expected.size());
+            assertEquals(expected.stream().map(User::getId).collect(Collectors.toList()), paged);
+        }
+    }
+
+    @Test
+    @Order(27)
+    @DisplayName("Should leave soft-deleted rows out of the approximate count")
+    void testCountApproximateExcludesSoftDeleted() {
+        // Given
+        UserDAO softDeleting = new UserDAO(sessionFactory);
+        softDeleting.setSoftDelete(true);
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            ids.add(softDeleting.create(new User("Estimate " + i, "estimate" + i + "@example.com", 30)));
+        }
+        for (Long id : ids.subList(0, 5)) {
+            softDeleting.delete(id);
+        }
+        try (Session session = sessionFactory.openSession()) {
+            session.beginTransaction();
+            session.createNativeQuery("ANALYZE users").executeUpdate();
+            session.getTransaction().commit();
+        }
+
+        // When
+        long estimate = softDeleting.countApproximate();
+
+        // Then
+        assertEquals(15, softDeleting.count());
+        assertEquals(15, estimate);
+    }
+}
@@ -0,0 +1,154 @@
+package com.userservice.invalidation;
+
+import java.util.function.BooleanSupplier;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.userservice.dao.UserDAO;
+import com.userservice.entity.User;
+import com.userservice.service.NameTrigramIndex;
+import com.userservice.util.TestHibernateUtil;
+
+/**
+ * Интеграционные тесты межузловой инвалидации через LISTEN/NOTIFY на локальном PostgreSQL.
+ * Два "узла" - два экземпляра UserDAO со своими ID узла и отдельным слушателем у второго.
+ */
+@DisplayName("InvalidationListener Integration Tests (Local DB)")
+class InvalidationListenerIntegrationTestLocalDB {
+
+    private static SessionFactory sessionFactory;
+    private UserDAO nodeA;
+    private UserDAO nodeB;
+    private NameTrigramIndex indexB;
+    private InvalidationListener listenerB;
+
+    @BeforeAll
+    static void setUp() {
+        String jdbcUrl = System.getenv("DB_URL");
+        if (jdbcUrl == null || jdbcUrl.isEmpty()) {
+            jdbcUrl = System.getProperty("db.url", "jdbc:postgresql://localhost:5432/usersdb");
+        }
+
+        String username = System.getenv("DB_USERNAME");
+        if (username == null || username.isEmpty()) {
+            username = System.getProperty("db.username", "postgres");
+        }
+
+        String password = System.getenv("DB_PASSWORD");
+        if (password == null || password.isEmpty()) {
+            password = System.getProperty("db.password");
+            if (password == null || password.isEmpty()) {
+                throw new IllegalStateException(
+                    "Database password not found! " +
+                    "Please set DB_PASSWORD environment variable or db.password system property."
+                );
+            }
+        }
+
+        sessionFactory = TestHibernateUtil.buildSessionFactory(jdbcUrl, username, password);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        sessionFactory.close();
+    }
+
+    @BeforeEach
+    void startNodes() {
+        try (Session session = sessionFactory.openSession()) {
+            session.beginTransaction();
+            session.createNativeQuery("DELETE FROM users").executeUpdate();
+            session.getTransaction().commit();
+        }
+
+        nodeA = new UserDAO(sessionFactory);
+        nodeB = new UserDAO(sessionFactory);
+        nodeA.setChangeNotifications(UserInvalidation.DEFAULT_CHANNEL);
+        nodeB.setChangeNotifications(UserInvalidation.DEFAULT_CHANNEL);
+
+        indexB = new NameTrigramIndex();
+        indexB.load(nodeB);
+        listenerB = new InvalidationListener(sessionFactory, UserInvalidation.DEFAULT_CHANNEL, nodeB.getNodeId(), 20);
+        listenerB.addInvalidator(indexB);
+        listenerB.start();
+        awaitTrue(listenerB::isListening);
+    }
+
+    @AfterEach
+    void stopNodes() {
+        listenerB.close();
+    }
+
+    @Test
+    @DisplayName("Should apply changes made on another node to the local cache")
+    void testCrossNodeInvalidation() {
+        // When
+        User user = new User("Alice", "alice@example.com", 30);
+        Long id = nodeA.create(user);
+
+        // Then
+        awaitTrue(() -> indexB.size() == 1);
+
+        // When
+        user.setName("Beatrice");
+        nodeA.update(user);
+
+        // Then
+        awaitTrue(() -> !indexB.search("Beatrice", 10).isEmpty());
+        assertTrue(indexB.search("Alice", 10).isEmpty());
+
+        // When
+        nodeA.delete(id);
+
+        // Then
+        awaitTrue(() -> indexB.size() == 0);
+    }
+
+    @Test
+    @DisplayName("Should skip own messages and flush caches after a reconnect")
+    void testOwnMessagesAndReconnect() {
+        // When - изменение самого узла B применяется его слушателем изменений, а не через NOTIFY
+        nodeB.create(new User("Local", "local@example.com", 30));
+        awaitTrue(() -> listenerB.getReceivedMessages() == 1);
+
+        // Then
+        assertEquals(0, listenerB.getAppliedBatches());
+        assertEquals(1, indexB.size());
+
+        // When - соединение слушателя обрывается
+        try (Session session = sessionFactory.openSession()) {
+            session.beginTransaction();
+            session.createNativeQuery("SELECT pg_terminate_backend(pid) FROM pg_stat_activity " +
+                    "WHERE query LIKE 'LISTEN%' AND pid <> pg_backend_pid()").list();
+            session.getTransaction().commit();
+        }
+
+        // Then
+        awaitTrue(() -> listenerB.getFullFlushes() == 1 && listenerB.isListening());
+        assertEquals(1, indexB.size());
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Condition not met within 10 seconds");
+            }
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AssertionError(e);
+            }
+        }
+    }
+}
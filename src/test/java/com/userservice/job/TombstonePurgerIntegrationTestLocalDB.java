@@ -0,0 +1,188 @@
+package com.userservice.job;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.AfterAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.userservice.dao.UserChange;
+import com.userservice.dao.UserChangeCursor;
+import com.userservice.dao.UserDAO;
+import com.userservice.dao.UserQuery;
+import com.userservice.entity.User;
+import com.userservice.util.TestHibernateUtil;
+
+/**
+ * Интеграционные тесты мягкого удаления и фоновой очистки на локальной базе PostgreSQL.
+ */
+@DisplayName("Soft delete and TombstonePurger Integration Tests (Local DB)")
+class TombstonePurgerIntegrationTestLocalDB {
+
+    private static SessionFactory sessionFactory;
+    private static UserDAO userDAO;
+
+    @BeforeAll
+    static void setUp() {
+        String jdbcUrl = System.getenv("DB_URL");
+        if (jdbcUrl == null || jdbcUrl.isEmpty()) {
+            jdbcUrl = System.getProperty("db.url", "jdbc:postgresql://localhost:5432/usersdb");
+        }
+
+        String username = System.getenv("DB_USERNAME");
+        if (username == null || username.isEmpty()) {
+            username = System.getProperty("db.username", "postgres");
+        }
+
+        String password = System.getenv("DB_PASSWORD");
+        if (password == null || password.isEmpty()) {
+            password = System.getProperty("db.password");
+            if (password == null || password.isEmpty()) {
+                throw new IllegalStateException(
+                    "Database password not found! " +
+                    "Please set DB_PASSWORD environment variable or db.password system property."
+                );
+            }
+        }
+
+        sessionFactory = TestHibernateUtil.buildSessionFactory(jdbcUrl, username, password);
+        userDAO = new UserDAO(sessionFactory);
+        userDAO.setSoftDelete(true);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        sessionFactory.close();
+    }
+
+    @BeforeEach
+    void clearDatabase() {
+        try (Session session = sessionFactory.openSession()) {
+            session.beginTransaction();
+            session.createNativeQuery("DELETE FROM users").executeUpdate();
+            session.getTransaction().commit();
+        }
+    }
+
+    @Test
+    @DisplayName("Should hide soft-deleted users from all reads but keep them in the change stream")
+    void testSoftDelete() {
+        // Given
+        Long keptId = userDAO.create(new User("Kept", "kept@example.com", 30));
+        Long deletedId = userDAO.create(new User("Gone", "gone@example.com", 31));
+        List<UserChange> changes = new ArrayList<>();
+        userDAO.addChangeListener(changes::add);
+
+        // When
+        userDAO.delete(deletedId);
+
+        // Then
+        assertNull(userDAO.read(deletedId));
+        assertEquals(1, userDAO.readAll().size());
+        assertEquals(1, userDAO.count());
+        assertEquals(1, userDAO.search(new UserQuery()).size());
+        assertTrue(userDAO.readByIds(List.of(keptId, deletedId)).stream().allMatch(user -> user.getId().equals(keptId)));
+        assertTrue(userDAO.existsByEmail("gone@example.com"), "Email stays taken until the row is purged");
+        assertThrows(RuntimeException.class, () -> userDAO.delete(deletedId));
+        assertEquals(1, changes.size());
+        assertEquals(UserChange.Kind.DELETED, changes.get(0).getKind());
+
+        List<User> stream = userDAO.changesSince(UserChangeCursor.START, 10, Duration.ZERO);
+        User tombstone = stream.stream().filter(user -> user.getId().equals(deletedId)).findFirst().orElseThrow();
+        assertNotNull(tombstone.getDeletedAt());
+
+        // When - upsert по email восстанавливает удаленного пользователя
+        userDAO.upsertByEmail(new User("Back", "gone@example.com", 32));
+
+        // Then
+        User restored = userDAO.read(deletedId);
+        assertNotNull(restored);
+        assertEquals("Back", restored.getName());
+        assertEquals(UserChange.Kind.CREATED, changes.get(1).getKind());
+    }
+
+    @Test
+    @DisplayName("Should refuse to update a soft-deleted user with or without change listeners")
+    void testUpdateTombstone() {
+        // Given
+        Long id = userDAO.create(new User("Gone", "tombstone@example.com", 31));
+        User stale = userDAO.read(id);
+        userDAO.delete(id);
+        UserDAO plainDAO = new UserDAO(sessionFactory);
+        plainDAO.setSoftDelete(true);
+        List<UserChange> changes = new ArrayList<>();
+        userDAO.addChangeListener(changes::add);
+
+        // When / Then - без слушателей UPDATE не находит строку
+        stale.setName("Revived");
+        assertThrows(RuntimeException.class, () -> plainDAO.update(stale));
+
+        // When / Then - со слушателями мягко удаленный пользователь считается отсутствующим
+        assertThrows(RuntimeException.class, () -> userDAO.update(stale));
+        assertThrows(RuntimeException.class, () -> userDAO.updateAll(List.of(stale)));
+
+        // Then
+        assertTrue(changes.isEmpty());
+        assertNull(userDAO.read(id));
+        User tombstone = userDAO.changesSince(UserChangeCursor.START, 10, Duration.ZERO).stream()
+                .filter(user -> user.getId().equals(id)).findFirst().orElseThrow();
+        assertEquals("Gone", tombstone.getName());
+        assertNotNull(tombstone.getDeletedAt());
+    }
+
+    @Test
+    @DisplayName("Should purge only expired tombstones in rate-limited batches and only in quiet periods")
+    void testPurge() {
+        // Given
+        for (int i = 0; i < 12; i++) {
+            Long id = userDAO.create(new User("User " + i, "purge" + i + "@example.com", 20));
+            if (i < 10) {
+                userDAO.delete(id);
+            }
+        }
+        boolean[] quiet = {false};
+        TombstonePurger purger = new TombstonePurger(sessionFactory)
+                .batchSize(3)
+                .maxRowsPerSecond(1000)
+                .retention(Duration.ZERO)
+                .onlyWhen(() -> quiet[0]);
+
+        // When - нагрузка: очистка откладывается
+        int deferred = purger.purge();
+
+        // Then
+        assertEquals(0, deferred);
+        assertEquals(1, purger.getDeferredRuns());
+        assertEquals(10, purger.getBacklog());
+
+        // When
+        quiet[0] = true;
+        int purged = purger.purge();
+
+        // Then
+        assertEquals(10, purged);
+        assertEquals(4, purger.getPurgedBatches());
+        assertEquals(0, purger.getBacklog());
+        assertEquals(2, userDAO.count());
+        assertTrue(!userDAO.existsByEmail("purge0@example.com"));
+
+        // When - строки моложе retention не трогаются
+        userDAO.delete(userDAO.readAll().get(0).getId());
+        int young = purger.retention(Duration.ofHours(1)).purge();
+
+        // Then
+        assertEquals(0, young);
+        assertEquals(1, purger.getBacklog());
+    }
+}
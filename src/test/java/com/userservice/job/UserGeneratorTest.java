@@ -0,0 +1,51 @@
+package com.userservice.job;
+
+import com.userservice.entity.User;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("UserGenerator Unit Tests")
+class UserGeneratorTest {
+
+    private static final LocalDateTime FROM = LocalDateTime.of(2023, 1, 1, 0, 0);
+    private static final LocalDateTime TO = LocalDateTime.of(2025, 1, 1, 0, 0);
+
+    @Test
+    @DisplayName("Should generate the same valid users for the same seed and unique emails across indexes")
+    void testDeterministicUniqueUsers() {
+        // Given
+        UserGenerator generator = new UserGenerator(1, FROM, TO);
+        Set<String> emails = new HashSet<>();
+        long recentHalf = 0;
+        LocalDateTime middle = FROM.plusYears(1);
+
+        // When
+        for (long index = 0; index < 20_000; index++) {
+            User user = generator.generate(index);
+
+            // Then
+            assertTrue(emails.add(user.getEmail()), "Duplicate email " + user.getEmail());
+            assertTrue(user.getEmail().matches("^[A-Za-z0-9+_.-]+@[A-Za-z0-9.-]+\\.[A-Za-z]{2,}$"));
+            assertTrue(user.getAge() >= UserGenerator.MIN_AGE && user.getAge() <= UserGenerator.MAX_AGE);
+            assertFalse(user.getCreatedAt().isBefore(FROM));
+            assertTrue(user.getCreatedAt().isBefore(TO));
+            if (!user.getCreatedAt().isBefore(middle)) {
+                recentHalf++;
+            }
+        }
+
+        // Then - повтор дает те же данные, другой seed - другие; к концу диапазона регистраций больше
+        User first = generator.generate(123);
+        User again = new UserGenerator(1, FROM, TO).generate(123);
+        assertEquals(first.getEmail(), again.getEmail());
+        assertEquals(first.getCreatedAt(), again.getCreatedAt());
+        assertNotEquals(first.getEmail(), new UserGenerator(2, FROM, TO).generate(123).getEmail());
+        assertTrue(recentHalf > 13_000, "Recent half should hold about 3/4 of users: " + recentHalf);
+    }
+}
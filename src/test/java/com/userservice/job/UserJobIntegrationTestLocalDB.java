@@ -0,0 +1,214 @@
+package com.userservice.job;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.AfterAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.userservice.dao.UserChange;
+import com.userservice.dao.UserDAO;
+import com.userservice.entity.User;
+import com.userservice.util.TestHibernateUtil;
+
+/**
+ * Интеграционные тесты пакетных заданий по диапазонам ID на локальной базе PostgreSQL.
+ */
+@DisplayName("UserJob Integration Tests (Local DB)")
+class UserJobIntegrationTestLocalDB {
+
+    private static SessionFactory sessionFactory;
+    private static UserDAO userDAO;
+
+    @BeforeAll
+    static void setUp() {
+        String jdbcUrl = System.getenv("DB_URL");
+        if (jdbcUrl == null || jdbcUrl.isEmpty()) {
+            jdbcUrl = System.getProperty("db.url", "jdbc:postgresql://localhost:5432/usersdb");
+        }
+
+        String username = System.getenv("DB_USERNAME");
+        if (username == null || username.isEmpty()) {
+            username = System.getProperty("db.username", "postgres");
+        }
+
+        String password = System.getenv("DB_PASSWORD");
+        if (password == null || password.isEmpty()) {
+            password = System.getProperty("db.password");
+            if (password == null || password.isEmpty()) {
+                throw new IllegalStateException(
+                    "Database password not found! " +
+                    "Please set DB_PASSWORD environment variable or db.password system property."
+                );
+            }
+        }
+
+        sessionFactory = TestHibernateUtil.buildSessionFactory(jdbcUrl, username, password);
+        userDAO = new UserDAO(sessionFactory);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        sessionFactory.close();
+    }
+
+    @BeforeEach
+    void clearDatabase() {
+        try (Session session = sessionFactory.openSession()) {
+            session.beginTransaction();
+            session.createNativeQuery("DELETE FROM users").executeUpdate();
+            session.createNativeQuery("DELETE FROM user_job_checkpoint").executeUpdate();
+            session.getTransaction().commit();
+        }
+        for (int i = 0; i < 25; i++) {
+            userDAO.create(new User("User " + i, "User" + i + "@Example.COM", 20 + i));
+        }
+    }
+
+    @Test
+    @DisplayName("Should process all chunks in parallel and publish changes")
+    void testParallelRun() {
+        // Given
+        List<UserChange> changes = new ArrayList<>();
+        userDAO.addChangeListener(change -> {
+            synchronized (changes) {
+                changes.add(change);
+            }
+        });
+        UserJob job = new UserJob("lowercase-emails", sessionFactory, UserJobIntegrationTestLocalDB::lowercaseEmail)
+                .chunkSize(10)
+                .parallelism(3)
+                .publishChangesTo(userDAO);
+
+        // When
+        JobProgress progress = job.run();
+
+        // Then
+        assertTrue(progress.isFinished());
+        assertEquals(0, progress.getFailedChunks());
+        assertEquals(25, progress.getProcessedUsers());
+        assertEquals(25, progress.getUpdatedUsers());
+        assertEquals(25, changes.size());
+        assertTrue(userDAO.readAll().stream().allMatch(user -> user.getEmail().endsWith("@example.com")));
+    }
+
+    @Test
+    @DisplayName("Should resume from checkpoints after a failed chunk")
+    void testResume() {
+        // Given - задание падает на одном пользователе
+        Long poisonId = userDAO.readAll().get(12).getId();
+        UserJob failing = new UserJob("resume", sessionFactory, user -> {
+            if (user.getId().equals(poisonId)) {
+                throw new IllegalStateException("Poison user");
+            }
+            return lowercaseEmail(user);
+        }).chunkSize(5).parallelism(2);
+
+        // When
+        JobProgress first = failing.run();
+
+        // Then
+        assertEquals(1, first.getFailedChunks());
+        assertEquals(20, first.getProcessedUsers());
+
+        // When - повторный запуск обрабатывает только незавершенный диапазон
+        JobProgress second = new UserJob("resume", sessionFactory, UserJobIntegrationTestLocalDB::lowercaseEmail)
+                .chunkSize(5).parallelism(2).run();
+
+        // Then
+        assertEquals(0, second.getFailedChunks());
+        assertEquals(1, second.getCompletedChunks());
+        assertEquals(5, second.getProcessedUsers());
+        assertEquals(second.getTotalChunks() - 1, second.getSkippedChunks());
+        assertTrue(userDAO.readAll().stream().allMatch(user -> user.getEmail().endsWith("@example.com")));
+    }
+
+    @Test
+    @DisplayName("Should not overwrite users changed concurrently after the chunk was read")
+    void testConcurrentUpdateIsNotOverwritten() {
+        // Given - во время обработки пользователя его меняет другая транзакция
+        Long contendedId = userDAO.readAll().get(3).getId();
+        UserJob job = new UserJob("concurrent", sessionFactory, user -> {
+            if (user.getId().equals(contendedId)) {
+                User concurrent = userDAO.read(contendedId);
+                concurrent.setName("Renamed concurrently");
+                userDAO.update(concurrent);
+            }
+            return lowercaseEmail(user);
+        }).chunkSize(10).parallelism(1);
+
+        // When
+        JobProgress progress = job.run();
+
+        // Then - диапазон с конфликтом не отмечен завершенным
+        assertEquals(1, progress.getFailedChunks());
+        assertEquals(24, progress.getUpdatedUsers());
+        assertEquals(1, progress.getConflictedUsers());
+        User contended = userDAO.read(contendedId);
+        assertEquals("Renamed concurrently", contended.getName());
+        assertEquals("User3@Example.COM", contended.getEmail());
+
+        // When - повторный запуск применяет задачу к пропущенному пользователю
+        JobProgress rerun = new UserJob("concurrent", sessionFactory, UserJobIntegrationTestLocalDB::lowercaseEmail)
+                .chunkSize(10).parallelism(1).run();
+
+        // Then
+        assertEquals(0, rerun.getFailedChunks());
+        assertEquals(1, rerun.getCompletedChunks());
+        assertEquals(1, rerun.getUpdatedUsers());
+        contended = userDAO.read(contendedId);
+        assertEquals("Renamed concurrently", contended.getName());
+        assertEquals("user3@example.com", contended.getEmail());
+    }
+
+    @Test
+    @DisplayName("Should seed deterministic users via COPY and batched inserts")
+    void testSeeder() {
+        // Given
+        LocalDateTime from = LocalDateTime.of(2024, 1, 1, 0, 0);
+        LocalDateTime to = LocalDateTime.of(2025, 1, 1, 0, 0);
+        UserSeeder seeder = new UserSeeder(sessionFactory).seed(7).createdBetween(from, to).batchSize(700).parallelism(3);
+
+        // When
+        JobProgress copied = seeder.run(5000);
+        JobProgress inserted = seeder.useCopy(false).firstIndex(5000).run(1000);
+
+        // Then
+        assertEquals(0, copied.getFailedChunks());
+        assertEquals(8, copied.getCompletedChunks());
+        assertEquals(5000, copied.getProcessedUsers());
+        assertTrue(copied.getUsersPerSecond() > 0);
+        assertEquals(0, inserted.getFailedChunks());
+        assertEquals(1000, inserted.getProcessedUsers());
+        assertEquals(6025, userDAO.count());
+
+        User expected = new UserGenerator(7, from, to).generate(5123);
+        User stored;
+        try (Session session = sessionFactory.openSession()) {
+            stored = session.createQuery("FROM User u WHERE u.email = :email", User.class)
+                    .setParameter("email", expected.getEmail())
+                    .uniqueResult();
+        }
+        assertEquals(expected.getName(), stored.getName());
+        assertEquals(expected.getAge(), stored.getAge());
+        assertEquals(expected.getCreatedAt(), stored.getCreatedAt());
+    }
+
+    private static boolean lowercaseEmail(User user) {
+        String normalized = user.getEmail().toLowerCase(Locale.ROOT);
+        if (normalized.equals(user.getEmail())) {
+            return false;
+        }
+        user.setEmail(normalized);
+        return true;
+    }
+}
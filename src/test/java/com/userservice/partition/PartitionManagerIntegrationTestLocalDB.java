@@ -0,0 +1,232 @@
+package com.userservice.partition;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.AfterEach;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.userservice.dao.UserDAO;
+import com.userservice.dao.UserQuery;
+import com.userservice.entity.User;
+import com.userservice.util.SchemaInitializer;
+import com.userservice.util.TestHibernateUtil;
+
+/**
+ * Интеграционные тесты секционирования users на отдельной локальной базе usersdb_partitioned
+ * (или DB_PARTITIONED_URL). База должна быть создана заранее. Каждый тест начинает с обычной
+ * таблицы, созданной hbm2ddl, и переводит ее в секционированную.
+ */
+@DisplayName("PartitionManager Integration Tests (Local DB)")
+class PartitionManagerIntegrationTestLocalDB {
+
+    private static final YearMonth OLD_MONTH = YearMonth.now().minusMonths(14);
+
+    private SessionFactory sessionFactory;
+    private PartitionManager partitionManager;
+    private UserDAO userDAO;
+
+    @BeforeEach
+    void setUp() {
+        String jdbcUrl = System.getenv("DB_PARTITIONED_URL");
+        if (jdbcUrl == null || jdbcUrl.isEmpty()) {
+            jdbcUrl = System.getProperty("db.partitioned.url", "jdbc:postgresql://localhost:5432/usersdb_partitioned");
+        }
+
+        String username = System.getenv("DB_USERNAME");
+        if (username == null || username.isEmpty()) {
+            username = System.getProperty("db.username", "postgres");
+        }
+
+        String password = System.getenv("DB_PASSWORD");
+        if (password == null || password.isEmpty()) {
+            password = System.getProperty("db.password");
+            if (password == null || password.isEmpty()) {
+                throw new IllegalStateException(
+                    "Database password not found! " +
+                    "Please set DB_PASSWORD environment variable or db.password system property."
+                );
+            }
+        }
+
+        sessionFactory = TestHibernateUtil.buildSessionFactory(jdbcUrl, username, password);
+        partitionManager = new PartitionManager(sessionFactory);
+        userDAO = new UserDAO(sessionFactory);
+    }
+
+    @AfterEach
+    void tearDown() {
+        sessionFactory.close();
+    }
+
+    private void insert(String email, YearMonth month) {
+        try (Session session = sessionFactory.openSession()) {
+            session.beginTransaction();
+            session.createNativeQuery("INSERT INTO users (name, email, age, created_at) VALUES (:name, :email, 30, :createdAt)")
+                    .setParameter("name", email.substring(0, email.indexOf('@')))
+                    .setParameter("email", email)
+                    .setParameter("createdAt", Timestamp.valueOf(month.atDay(10).atStartOfDay()))
+                    .executeUpdate();
+            session.getTransaction().commit();
+        }
+    }
+
+    private void install() {
+        partitionManager.install();
+        SchemaInitializer.apply(sessionFactory);
+    }
+
+    @SuppressWarnings("unchecked")
+    private String explain(String sql) {
+        try (Session session = sessionFactory.openSession()) {
+            List<String> plan = session.createNativeQuery("EXPLAIN " + sql).list();
+            return String.join("\n", plan);
+        }
+    }
+
+    @Test
+    @DisplayName("Should convert the heap table into monthly partitions and keep emails globally unique")
+    void testInstall() {
+        // Given
+        insert("old1@example.com", OLD_MONTH);
+        insert("old2@example.com", OLD_MONTH);
+        insert("recent@example.com", YearMonth.now().minusMonths(1));
+
+        // When
+        install();
+
+        // Then
+        assertTrue(partitionManager.isPartitioned());
+        List<String> partitions = partitionManager.listPartitions();
+        assertTrue(partitions.contains(PartitionManager.DEFAULT_PARTITION));
+        assertTrue(partitions.contains(PartitionManager.partitionName(OLD_MONTH)));
+        assertTrue(partitions.contains(PartitionManager.partitionName(YearMonth.now().plusMonths(PartitionManager.DEFAULT_MONTHS_AHEAD))));
+        assertEquals(3, userDAO.count());
+
+        // When - новые записи идут в секцию текущего месяца, id продолжают последовательность
+        Long id = userDAO.create(new User("New", "new@example.com", 25));
+
+        // Then
+        assertNotNull(userDAO.read(id));
+        assertTrue(id > 3);
+        RuntimeException duplicate = assertThrows(RuntimeException.class,
+                () -> userDAO.create(new User("Copy", "old1@example.com", 25)));
+        assertEquals("User with this email already exists", duplicate.getMessage());
+
+        // When - смена email освобождает старый
+        User user = userDAO.read(id);
+        user.setEmail("renamed@example.com");
+        userDAO.update(user);
+
+        // Then
+        assertNotNull(userDAO.create(new User("Reuse", "new@example.com", 26)));
+        assertTrue(userDAO.existsByEmail("renamed@example.com"));
+
+        // When & Then - upsert по email без уникального индекса отклоняется сразу
+        System.setProperty(PartitionManager.PARTITIONED_PROPERTY, "true");
+        try {
+            assertThrows(UnsupportedOperationException.class,
+                    () -> userDAO.upsertByEmail(new User("Upsert", "old1@example.com", 27)));
+        } finally {
+            System.clearProperty(PartitionManager.PARTITIONED_PROPERTY);
+        }
+        assertEquals(5, userDAO.count());
+    }
+
+    @Test
+    @DisplayName("Should prune partitions for created_at range queries")
+    void testPartitionPruning() {
+        // Given
+        insert("old@example.com", OLD_MONTH);
+        insert("recent@example.com", YearMonth.now());
+        install();
+
+        // When
+        String plan = explain("SELECT COUNT(*) FROM users WHERE created_at >= '" +
+                Timestamp.valueOf(OLD_MONTH.atDay(1).atStartOfDay()) + "' AND created_at < '" +
+                Timestamp.valueOf(OLD_MONTH.plusMonths(1).atDay(1).atStartOfDay()) + "'");
+        Map<LocalDate, Long> counts = userDAO.countByCreationDate(OLD_MONTH.atDay(1), OLD_MONTH.plusMonths(1).atDay(1));
+
+        // Then
+        assertTrue(plan.contains(PartitionManager.partitionName(OLD_MONTH)), plan);
+        assertFalse(plan.contains(PartitionManager.partitionName(YearMonth.now())), plan);
+        assertFalse(plan.contains(PartitionManager.DEFAULT_PARTITION), plan);
+        assertEquals(Map.of(OLD_MONTH.atDay(10), 1L), counts);
+    }
+
+    @Test
+    @DisplayName("Should archive a partition to a compressed CSV file and free its emails")
+    void testArchive(@TempDir Path directory) throws IOException {
+        // Given
+        insert("archived1@example.com", OLD_MONTH);
+        insert("archived2@example.com", OLD_MONTH);
+        insert("kept@example.com", YearMonth.now());
+        install();
+
+        // When
+        Path file = partitionManager.archive(OLD_MONTH, directory);
+
+        // Then
+        List<String> lines;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(file)), StandardCharsets.UTF_8))) {
+            lines = reader.lines().collect(Collectors.toList());
+        }
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(0).startsWith("id,name,email"));
+        assertTrue(lines.stream().anyMatch(line -> line.contains("archived1@example.com")));
+        assertFalse(partitionManager.listPartitions().contains(PartitionManager.partitionName(OLD_MONTH)));
+        assertEquals(1, userDAO.count());
+        assertFalse(userDAO.existsByEmail("archived1@example.com"));
+        assertNotNull(userDAO.create(new User("Again", "archived1@example.com", 40)));
+    }
+
+    @Test
+    @DisplayName("Should move rows out of the default partition when creating a partition")
+    void testCreatePartition() {
+        // Given
+        install();
+        YearMonth future = YearMonth.now().plusMonths(12);
+        insert("future@example.com", future);
+        LocalDateTime updatedAt = userDAO.search(new UserQuery().nameStartsWith("future")).get(0).getUpdatedAt();
+
+        // When
+        boolean created = partitionManager.createPartition(future);
+
+        // Then
+        assertTrue(created);
+        assertFalse(partitionManager.createPartition(future));
+        try (Session session = sessionFactory.openSession()) {
+            Number inDefault = (Number) session
+                    .createNativeQuery("SELECT COUNT(*) FROM " + PartitionManager.DEFAULT_PARTITION).uniqueResult();
+            Number inPartition = (Number) session
+                    .createNativeQuery("SELECT COUNT(*) FROM " + PartitionManager.partitionName(future)).uniqueResult();
+            assertEquals(0, inDefault.intValue());
+            assertEquals(1, inPartition.intValue());
+        }
+        assertTrue(userDAO.existsByEmail("future@example.com"));
+        assertEquals(updatedAt, userDAO.search(new UserQuery().nameStartsWith("future")).get(0).getUpdatedAt());
+    }
+}
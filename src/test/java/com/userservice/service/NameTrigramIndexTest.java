@@ -0,0 +1,126 @@
+package com.userservice.service;
+
+import com.userservice.dao.UserChange;
+import com.userservice.dao.UserDAO;
+import com.userservice.dao.UserQuery;
+import com.userservice.entity.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@DisplayName("NameTrigramIndex Unit Tests")
+class NameTrigramIndexTest {
+
+    private NameTrigramIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new NameTrigramIndex();
+        index.put(user(1L, "Alexander Petrov"));
+        index.put(user(2L, "Alexandra Smirnova"));
+        index.put(user(3L, "Boris Ivanov"));
+    }
+
+    @Test
+    @DisplayName("Should find names by misspelled query")
+    void testFuzzySearch() {
+        // When
+        List<User> result = index.search("Alexandr Petrof", 10);
+
+        // Then
+        assertFalse(result.isEmpty());
+        assertEquals(1L, result.get(0).getId());
+    }
+
+    @Test
+    @DisplayName("Should find names by substring")
+    void testSubstringSearch() {
+        // When
+        List<User> result = index.search("ivan", 10);
+
+        // Then
+        assertEquals(1, result.size());
+        assertEquals("Boris Ivanov", result.get(0).getName());
+    }
+
+    @Test
+    @DisplayName("Should find short substrings that share no trigram with the name")
+    void testShortSubstringSearch() {
+        // When
+        List<User> shortQuery = index.search("an", 10);
+        List<User> longQuery = index.search("ano", 10);
+
+        // Then - оба пути поиска совпадают с проверкой подстроки
+        assertEquals(List.of(1L, 2L, 3L), shortQuery.stream().map(User::getId).sorted().toList());
+        assertEquals(1, longQuery.size());
+        assertEquals("Boris Ivanov", longQuery.get(0).getName());
+        assertTrue(index.search("zz", 10).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Should respect limit")
+    void testLimit() {
+        // When
+        List<User> result = index.search("alexand", 1);
+
+        // Then
+        assertEquals(1, result.size());
+    }
+
+    @Test
+    @DisplayName("Should follow update and delete events")
+    void testChangeEvents() {
+        // Given
+        User renamed = user(3L, "Boris Sidorov");
+
+        // When
+        index.onChange(UserChange.updated(user(3L, "Boris Ivanov"), renamed));
+        index.onChange(UserChange.deleted(user(1L, "Alexander Petrov")));
+
+        // Then
+        assertTrue(index.search("ivanov", 10).isEmpty());
+        assertEquals(3L, index.search("sidorov", 10).get(0).getId());
+        assertTrue(index.search("petrov", 10).isEmpty());
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    @DisplayName("Should keep serving the old index while rebuilding and apply changes made meanwhile")
+    void testInvalidateAllSwapsAtomically() {
+        // Given
+        UserDAO userDAO = mock(UserDAO.class);
+        when(userDAO.search(any(UserQuery.class)))
+                .thenReturn(List.of(user(1L, "Alexander Petrov"), user(3L, "Boris Ivanov")))
+                .thenAnswer(invocation -> {
+                    // Во время перестройки поиск идет по старому индексу, а изменения копятся
+                    assertEquals(3L, index.search("ivanov", 10).get(0).getId());
+                    index.onChange(UserChange.updated(user(3L, "Boris Ivanov"), user(3L, "Boris Sidorov")));
+                    return List.of(user(1L, "Alexander Petrov"), user(3L, "Boris Ivanov"));
+                });
+        when(userDAO.readByIds(Set.of(3L))).thenReturn(List.of(user(3L, "Boris Sidorov")));
+        index = new NameTrigramIndex();
+        index.load(userDAO);
+
+        // When
+        index.invalidateAll();
+
+        // Then
+        assertTrue(index.search("ivanov", 10).isEmpty());
+        assertEquals(3L, index.search("sidorov", 10).get(0).getId());
+        assertEquals(2, index.size());
+    }
+
+    private static User user(Long id, String name) {
+        User user = new User(name, "user" + id + "@example.com", 30);
+        user.setId(id);
+        return user;
+    }
+}
@@ -1,7 +1,12 @@
 package com.userservice.service;
 
+import com.userservice.dao.UpsertResult;
+import com.userservice.dao.UserChange;
+import com.userservice.dao.UserChangeCursor;
 import com.userservice.dao.UserDAO;
+import com.userservice.dao.UserQuery;
 import com.userservice.entity.User;
+import com.userservice.util.HibernateUtil;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -10,14 +15,29 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.time.Duration;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -37,6 +57,12 @@ class UserServiceTest {
         testUser = new User("John Doe", "john@example.com", 30);
         testUser.setId(1L);
         testUser.setCreatedAt(LocalDateTime.now());
+
+        // Единица работы в моке просто выполняет переданные операции
+        lenient().when(userDAO.inTransaction(any())).thenAnswer(invocation -> {
+            Function<UserDAO, Object> work = invocation.getArgument(0);
+            return work.apply(userDAO);
+        });
     }
 
     @Test
@@ -372,5 +398,445 @@ class UserServiceTest {
         assertEquals("Email cannot exceed 100 characters", exception.getMessage());
         verify(userDAO, never()).create(any(User.class));
     }
-}
 
+    @Test
+    @DisplayName("Should count users exactly when no counter is configured")
+    void testCountUsersExact() {
+        // Given
+        when(userDAO.count()).thenReturn(42L);
+
+        // When
+        long count = userService.countUsers();
+
+        // Then
+        assertEquals(42L, count);
+        verify(userDAO, times(1)).count();
+    }
+
+    @Test
+    @DisplayName("Should serve cached count and follow create/delete events")
+    void testCountUsersCached() {
+        // Given
+        when(userDAO.count()).thenReturn(10L);
+        UserCounter counter = new UserCounter(userDAO);
+        userService.setUserCounter(counter);
+
+        // When
+        long initial = userService.countUsers();
+        counter.onChange(UserChange.created(testUser));
+        counter.onChange(UserChange.created(testUser));
+        counter.onChange(UserChange.deleted(testUser));
+
+        // Then
+        assertEquals(10L, initial);
+        assertEquals(11L, userService.countUsers(UserService.CountMode.CACHED));
+        verify(userDAO, times(1)).count();
+    }
+
+    @Test
+    @DisplayName("Should use planner statistics for approximate count")
+    void testCountUsersApproximate() {
+        // Given
+        when(userDAO.countApproximate()).thenReturn(1000L);
+
+        // When
+        long count = userService.countUsers(UserService.CountMode.APPROXIMATE);
+
+        // Then
+        assertEquals(1000L, count);
+        verify(userDAO, never()).count();
+    }
+
+    @Test
+    @DisplayName("Should maintain statistics from change events")
+    void testStatsFromCollector() {
+        // Given
+        LocalDate today = LocalDate.now();
+        when(userDAO.countByAge()).thenReturn(Map.of(30, 2L));
+        when(userDAO.countByCreationDate()).thenReturn(Map.of(today, 2L));
+        UserStatsCollector collector = new UserStatsCollector();
+        collector.load(userDAO);
+        userService.setStatsCollector(collector);
+
+        User older = new User(testUser);
+        older.setAge(31);
+
+        // When
+        collector.onChange(UserChange.updated(testUser, older));
+        collector.onChange(UserChange.deleted(older));
+        UserStats stats = userService.stats();
+
+        // Then
+        assertEquals(1L, stats.getTotal());
+        assertEquals(1L, stats.countWithAge(30));
+        assertEquals(0L, stats.countWithAge(31));
+        assertEquals(1L, stats.signupsOn(today));
+    }
+
+    @Test
+    @DisplayName("Should not count changes made during the initial load twice")
+    void testStatsLoadWithConcurrentChange() {
+        // Given - пользователь создается после запроса по возрасту, но до запроса по датам
+        LocalDate today = LocalDate.now();
+        UserStatsCollector collector = new UserStatsCollector();
+        User created = new User("New User", "new@example.com", 40);
+        created.setId(2L);
+        created.setCreatedAt(today.atStartOfDay());
+        when(userDAO.countByAge()).thenAnswer(invocation -> {
+            collector.onChange(UserChange.created(created));
+            return Map.of(30, 2L);
+        });
+        when(userDAO.countByCreationDate()).thenReturn(Map.of(today, 3L));
+
+        // When
+        collector.load(userDAO);
+        UserStats stats = collector.snapshot();
+
+        // Then
+        assertEquals(3L, stats.getTotal());
+        assertEquals(1L, stats.countWithAge(40));
+        assertEquals(3L, stats.signupsOn(today));
+    }
+
+    @Test
+    @DisplayName("Should coalesce buffered updates and flush them in one batch")
+    void testWriteBehindUpdates() {
+        // Given
+        WriteBehindBuffer buffer = new WriteBehindBuffer(userDAO, 100);
+        userService.setWriteBehindBuffer(buffer);
+        when(userDAO.read(1L)).thenAnswer(invocation -> new User(testUser));
+        when(userDAO.readByIds(any())).thenAnswer(invocation -> List.of(new User(testUser)));
+
+        // When
+        userService.updateUser(1L, "Jane Smith", null, null);
+        userService.updateUser(1L, null, null, 35);
+        User seen = userService.getUserById(1L);
+
+        // Then - чтение видит отложенные изменения, база еще не обновлялась
+        assertEquals("Jane Smith", seen.getName());
+        assertEquals(35, seen.getAge());
+        verify(userDAO, never()).update(any(User.class));
+
+        // When
+        int flushed = buffer.flush();
+
+        // Then
+        assertEquals(1, flushed);
+        assertEquals(0, buffer.pendingCount());
+        verify(userDAO, times(1)).updateAll(argThat(users -> {
+            User written = users.iterator().next();
+            return "Jane Smith".equals(written.getName()) && written.getAge() == 35;
+        }));
+    }
+
+    @Test
+    @DisplayName("Should flush buffered updates on shutdown even without the background flusher")
+    void testWriteBehindShutdownFlush() {
+        // Given - буфер без start(): сброс только по размеру
+        WriteBehindBuffer buffer = new WriteBehindBuffer(userDAO, 100);
+        buffer.enqueue(1L, "Jane Smith", null, null);
+        when(userDAO.readByIds(any())).thenAnswer(invocation -> List.of(new User(testUser)));
+
+        // When
+        HibernateUtil.shutdown();
+
+        // Then
+        assertEquals(0, buffer.pendingCount());
+        verify(userDAO, times(1)).updateAll(argThat(users -> "Jane Smith".equals(users.iterator().next().getName())));
+    }
+
+    @Test
+    @DisplayName("Should requeue buffered updates after transient failures and drop constraint violations")
+    void testWriteBehindFailedFlush() {
+        // Given
+        WriteBehindBuffer buffer = new WriteBehindBuffer(userDAO, 100);
+        buffer.enqueue(1L, "Jane Smith", null, null);
+        buffer.enqueue(2L, null, "taken@example.com", null);
+        when(userDAO.readByIds(any())).thenThrow(new RuntimeException("Connection refused"));
+        when(userDAO.read(anyLong())).thenAnswer(invocation -> {
+            User user = new User(testUser);
+            user.setId(invocation.getArgument(0));
+            return user;
+        });
+        doThrow(new RuntimeException("Connection refused")).when(userDAO)
+                .update(argThat(user -> user != null && user.getId() == 1L));
+        doThrow(new RuntimeException("User with this email already exists",
+                new org.hibernate.exception.ConstraintViolationException("duplicate", null, "users_email_key")))
+                .when(userDAO).update(argThat(user -> user != null && user.getId() == 2L));
+
+        // When
+        int flushed = buffer.flush();
+
+        // Then - обновление 1 возвращено в очередь, обновление 2 отброшено
+        assertEquals(0, flushed);
+        assertTrue(buffer.hasPending(1L));
+        assertFalse(buffer.hasPending(2L));
+        User seen = buffer.overlay(new User(testUser));
+        assertEquals("Jane Smith", seen.getName());
+    }
+
+    @Test
+    @DisplayName("Should skip the database check for new emails and reject known duplicates")
+    void testEmailBloomFilter() {
+        // Given
+        EmailBloomFilter filter = new EmailBloomFilter(1000, 0.01);
+        userService.setEmailFilter(filter);
+        when(userDAO.create(any(User.class))).thenReturn(1L);
+        when(userDAO.existsByEmail("john@example.com")).thenReturn(true);
+
+        // When - email точно новый, проверки в базе нет
+        userService.createUser("John Doe", "john@example.com", 30);
+
+        // Then
+        verify(userDAO, never()).existsByEmail(any());
+        assertTrue(filter.mightContain("JOHN@example.com"));
+
+        // When & Then - возможный дубликат проверяется запросом и отклоняется без вставки
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class,
+                () -> userService.createUser("Other", "john@example.com", 40));
+        assertEquals("User with this email already exists", exception.getMessage());
+        verify(userDAO, times(1)).create(any(User.class));
+        assertEquals(1, filter.getTruePositives());
+    }
+
+    @Test
+    @DisplayName("Should keep emails added while the filter is being rebuilt")
+    void testEmailBloomFilterRebuild() {
+        // Given - email добавляется, пока перестройка читает базу
+        EmailBloomFilter filter = new EmailBloomFilter(1000, 0.01);
+        when(userDAO.findEmailsAfter(eq(""), anyInt())).thenAnswer(invocation -> {
+            filter.add("late@example.com");
+            return List.of("john@example.com");
+        });
+
+        // When
+        filter.rebuild(userDAO);
+        filter.add("after@example.com");
+
+        // Then
+        assertTrue(filter.mightContain("john@example.com"));
+        assertTrue(filter.mightContain("late@example.com"));
+        assertTrue(filter.mightContain("after@example.com"));
+    }
+
+    @Test
+    @DisplayName("Should report batch duplicates with a single database query")
+    void testFindDuplicateEmails() {
+        // Given
+        EmailBloomFilter filter = new EmailBloomFilter(1000, 0.01);
+        filter.add("taken@example.com");
+        userService.setEmailFilter(filter);
+        when(userDAO.findExistingEmails(any())).thenAnswer(invocation -> {
+            Collection<String> emails = invocation.getArgument(0);
+            return emails.contains("taken@example.com") ? Set.of("taken@example.com") : Set.of();
+        });
+
+        // When
+        Set<String> duplicates = userService.findDuplicateEmails(
+                List.of("a@example.com", "taken@example.com", "b@example.com", "a@example.com"));
+
+        // Then
+        assertEquals(Set.of("a@example.com", "taken@example.com"), duplicates);
+        verify(userDAO, times(1)).findExistingEmails(argThat(emails -> emails.contains("taken@example.com")));
+    }
+
+    @Test
+    @DisplayName("Should share one database read between concurrent lookups of the same ID")
+    void testSingleFlightLookup() throws Exception {
+        // Given
+        UserLookup lookup = new UserLookup(userDAO, Duration.ofMinutes(1), 100);
+        userService.setUserLookup(lookup);
+        CountDownLatch readStarted = new CountDownLatch(1);
+        CountDownLatch releaseRead = new CountDownLatch(1);
+        when(userDAO.read(1L)).thenAnswer(invocation -> {
+            readStarted.countDown();
+            releaseRead.await();
+            return new User(testUser);
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        try {
+            // When
+            List<Future<User>> results = new ArrayList<>();
+            results.add(executor.submit(() -> userService.getUserById(1L)));
+            readStarted.await();
+            for (int i = 0; i < 3; i++) {
+                results.add(executor.submit(() -> userService.getUserById(1L)));
+            }
+            while (lookup.getCoalescedReads() < 3) {
+                Thread.sleep(1);
+            }
+            releaseRead.countDown();
+
+            // Then
+            for (Future<User> result : results) {
+                assertEquals("John Doe", result.get().getName());
+            }
+            assertNotSame(results.get(0).get(), results.get(1).get());
+            verify(userDAO, times(1)).read(1L);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    @DisplayName("Should cache missing IDs until a user with that ID is created")
+    void testNegativeLookupCache() {
+        // Given
+        UserLookup lookup = new UserLookup(userDAO, Duration.ofMinutes(1), 100);
+        userService.setUserLookup(lookup);
+        when(userDAO.read(999L)).thenReturn(null);
+
+        // When
+        for (int i = 0; i < 5; i++) {
+            assertTrue(userService.findUserById(999L).isEmpty());
+        }
+        assertThrows(IllegalArgumentException.class, () -> userService.getUserById(999L));
+
+        // Then
+        verify(userDAO, times(1)).read(999L);
+        assertEquals(5, lookup.getNegativeHits());
+
+        // When
+        User created = new User(testUser);
+        created.setId(999L);
+        lookup.onChange(UserChange.created(created));
+        userService.findUserById(999L);
+
+        // Then
+        verify(userDAO, times(2)).read(999L);
+    }
+
+    @Test
+    @DisplayName("Should not cache a miss read before a concurrent creation of that ID")
+    void testNegativeLookupRacesWithCreation() {
+        // Given - пользователь создается, пока идет чтение, вернувшее промах
+        UserLookup lookup = new UserLookup(userDAO, Duration.ofMinutes(1), 100);
+        userService.setUserLookup(lookup);
+        User created = new User(testUser);
+        created.setId(999L);
+        when(userDAO.read(999L)).thenAnswer(invocation -> {
+            lookup.onChange(UserChange.created(created));
+            return null;
+        }).thenReturn(new User(created));
+
+        // When
+        assertTrue(userService.findUserById(999L).isEmpty());
+        boolean found = userService.findUserById(999L).isPresent();
+
+        // Then
+        assertTrue(found);
+        assertEquals(0, lookup.negativeCacheSize());
+        verify(userDAO, times(2)).read(999L);
+    }
+
+    @Test
+    @DisplayName("Should page through changes with a resumable cursor")
+    void testChangesSince() {
+        // Given
+        testUser.setUpdatedAt(LocalDateTime.of(2024, 5, 1, 12, 0));
+        when(userDAO.changesSince(eq(UserChangeCursor.START), eq(1), any())).thenReturn(List.of(testUser));
+        when(userDAO.changesSince(eq(UserChangeCursor.after(testUser)), eq(1), any())).thenReturn(List.of());
+
+        // When
+        UserChangesPage first = userService.changesSince(null, 1);
+        UserChangesPage second = userService.changesSince(first.getNextCursor(), 1);
+
+        // Then
+        assertEquals(1, first.getUsers().size());
+        assertTrue(first.hasMore());
+        assertEquals("2024-05-01T12:00/1", first.getNextCursor());
+        assertTrue(second.getUsers().isEmpty());
+        assertFalse(second.hasMore());
+        assertEquals(first.getNextCursor(), second.getNextCursor());
+        assertThrows(IllegalArgumentException.class, () -> userService.changesSince("garbage", 10));
+    }
+
+    @Test
+    @DisplayName("Should validate the whole batch before upserting")
+    void testUpsertUsersValidation() {
+        // Given
+        List<User> batch = List.of(new User("Valid", "valid@example.com", 30),
+                new User("Invalid", "not-an-email", 30),
+                new User("", "valid2@example.com", 200));
+
+        // When & Then
+        UserValidationException exception = assertThrows(UserValidationException.class,
+                () -> userService.upsertUsers(batch));
+        assertEquals("Invalid email format", exception.getMessage());
+        assertEquals(Set.of(1, 2), exception.getViolations().keySet());
+        assertEquals(2, exception.getViolations().get(2).size());
+        verify(userDAO, never()).upsertAll(any());
+
+        // Given
+        when(userDAO.upsertAll(any())).thenReturn(List.of(new UpsertResult(1L, "john@example.com", false)));
+
+        // When
+        UpsertResult result = userService.upsertUser("John Doe", "john@example.com", 31);
+
+        // Then
+        assertFalse(result.isInserted());
+        assertEquals(1L, result.getId());
+    }
+
+    @Test
+    @DisplayName("Should fetch pages only as the subscriber requests them")
+    void testStreamUsersBackpressure() {
+        // Given
+        List<User> stored = new ArrayList<>();
+        for (long id = 1; id <= 5; id++) {
+            User user = new User("User " + id, "user" + id + "@example.com", 30);
+            user.setId(id);
+            stored.add(user);
+        }
+        when(userDAO.search(any(UserQuery.class))).thenAnswer(invocation -> {
+            UserQuery query = invocation.getArgument(0);
+            long after = query.hasAfter() ? (Long) query.getAfterValue() : 0L;
+            return stored.stream()
+                    .filter(user -> user.getId() > after)
+                    .limit(query.getLimit())
+                    .map(User::new)
+                    .collect(Collectors.toList());
+        });
+        List<Long> received = new ArrayList<>();
+        List<Flow.Subscription> subscription = new ArrayList<>();
+        boolean[] completed = new boolean[1];
+        UserPublisher publisher = new UserPublisher(userDAO, new UserQuery().limit(2), Runnable::run, user -> user);
+
+        // When
+        publisher.subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription s) {
+                subscription.add(s);
+            }
+
+            @Override
+            public void onNext(User user) {
+                received.add(user.getId());
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                fail(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                completed[0] = true;
+            }
+        });
+        subscription.get(0).request(1);
+
+        // Then
+        assertEquals(List.of(1L), received);
+        verify(userDAO, times(1)).search(any(UserQuery.class));
+
+        // When
+        subscription.get(0).request(Long.MAX_VALUE);
+
+        // Then
+        assertEquals(List.of(1L, 2L, 3L, 4L, 5L), received);
+        assertTrue(completed[0]);
+        verify(userDAO, times(3)).search(any(UserQuery.class));
+    }
+}
@@ -0,0 +1,94 @@
+package com.userservice.service;
+
+import com.userservice.entity.User;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.SplittableRandom;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("UserValidator Unit Tests")
+class UserValidatorTest {
+
+    private final UserValidator validator = new UserValidator();
+
+    @Test
+    @DisplayName("Should accept exactly the emails the reference regex accepts")
+    void testEmailScannerMatchesRegex() {
+        // Given
+        Pattern regex = Pattern.compile(UserValidator.EMAIL_REGEX);
+        String alphabet = "aZ09+_.-@.x\n é";
+        SplittableRandom random = new SplittableRandom(7);
+        List<String> samples = new ArrayList<>(List.of("a@b.co", "a.b+c_d-e@sub.domain.org", "@b.co", "a@.co", "a@b.c",
+                "a@b.c0", "a@b..co", "a@@b.co", "a@b.co.", "a@b-.co", "a b@c.co", "a@b.co\n", "ab.co", "a@b_c.co", "a@bc"));
+        for (int i = 0; i < 200_000; i++) {
+            // Половина образцов - случайные строки, половина - по шаблону local@domain.tld
+            samples.add(i % 2 == 0
+                    ? randomString(random, alphabet, 10)
+                    : randomString(random, alphabet, 4) + "@" + randomString(random, alphabet, 4)
+                            + "." + randomString(random, "abXY.1", 3));
+        }
+
+        // When / Then
+        int valid = 0;
+        for (String sample : samples) {
+            boolean expected = regex.matcher(sample).matches();
+            assertEquals(expected, UserValidator.isValidEmailFormat(sample), () -> "Mismatch for '" + sample + "'");
+            if (expected) {
+                valid++;
+            }
+        }
+        assertTrue(valid > 1000, "Sample should contain valid emails too: " + valid);
+    }
+
+    private static String randomString(SplittableRandom random, String alphabet, int maxLength) {
+        StringBuilder sample = new StringBuilder();
+        int length = 1 + random.nextInt(maxLength);
+        for (int j = 0; j < length; j++) {
+            sample.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return sample.toString();
+    }
+
+    @Test
+    @DisplayName("Should collect all violations with the service's messages and order")
+    void testCollectsAllViolations() {
+        // When
+        List<UserValidator.Violation> violations = validator.validate(" ", "x".repeat(95) + "@a.com", 151);
+
+        // Then
+        assertEquals(3, violations.size());
+        assertEquals(UserValidator.Field.NAME, violations.get(0).getField());
+        assertEquals("Name cannot be empty", violations.get(0).getMessage());
+        assertEquals("Email cannot exceed 100 characters", violations.get(1).getMessage());
+        assertEquals("Age must be between 0 and 150", violations.get(2).getMessage());
+        assertEquals("Invalid email format", validator.checkEmail("not-an-email"));
+        assertEquals("Age cannot be null", validator.checkAge(null));
+        assertTrue(validator.validate("John", "john@example.com", 30).isEmpty());
+    }
+
+    @Test
+    @DisplayName("Should validate large batches in parallel and report invalid rows by index")
+    void testBatchValidation() {
+        // Given
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < UserValidator.PARALLEL_THRESHOLD * 3; i++) {
+            users.add(new User("User " + i, "user" + i + "@example.com", i % 100));
+        }
+        users.set(10, new User("", "broken", 30));
+        users.set(9000, new User("Old", "old@example.com", 200));
+
+        // When
+        SortedMap<Integer, List<UserValidator.Violation>> invalid = validator.validateAll(users);
+
+        // Then
+        assertEquals(List.of(10, 9000), new ArrayList<>(invalid.keySet()));
+        assertEquals(2, invalid.get(10).size());
+        assertEquals(UserValidator.Field.AGE, invalid.get(9000).get(0).getField());
+    }
+}
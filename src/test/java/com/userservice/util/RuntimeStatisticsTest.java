@@ -0,0 +1,44 @@
+package com.userservice.util;
+
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@DisplayName("RuntimeStatistics Unit Tests")
+class RuntimeStatisticsTest {
+
+    @Test
+    @DisplayName("Should compute rates over the rolling window only")
+    void testRollingWindowRates() {
+        // Given
+        Statistics statistics = mock(Statistics.class);
+        when(statistics.isStatisticsEnabled()).thenReturn(true);
+        when(statistics.getTransactionCount()).thenReturn(0L, 50L, 100L, 100L);
+        when(statistics.getQueryCacheHitCount()).thenReturn(3L);
+        when(statistics.getQueryCacheMissCount()).thenReturn(1L);
+        RuntimeStatistics runtimeStatistics = new RuntimeStatistics(statistics, null, Duration.ofSeconds(10));
+        long start = System.nanoTime();
+
+        // When
+        runtimeStatistics.sample(start + TimeUnit.SECONDS.toNanos(5));
+        runtimeStatistics.sample(start + TimeUnit.SECONDS.toNanos(10));
+
+        // Then
+        assertEquals(10.0, runtimeStatistics.getTransactionsPerSecond(), 0.1);
+        assertEquals(0.75, runtimeStatistics.getQueryCacheHitRatio(), 0.001);
+        assertEquals(-1, runtimeStatistics.getActiveConnections());
+
+        // When - старые срезы выходят из окна, новых транзакций не было
+        runtimeStatistics.sample(start + TimeUnit.SECONDS.toNanos(20));
+
+        // Then
+        assertEquals(0.0, runtimeStatistics.getTransactionsPerSecond(), 0.001);
+        assertTrue(runtimeStatistics.report().contains("Transactions: 100"));
+    }
+}
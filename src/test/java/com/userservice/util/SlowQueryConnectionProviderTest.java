@@ -0,0 +1,56 @@
+package com.userservice.util;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@DisplayName("SlowQueryConnectionProvider Unit Tests")
+class SlowQueryConnectionProviderTest {
+
+    @Test
+    @DisplayName("Should redact emails and truncate long values in logged parameters")
+    void testDescribeRedactsParameters() {
+        // Given
+        Object[] parameters = {"john.doe@example.com", 30, null, "x".repeat(150)};
+
+        // When
+        String description = SlowQueryConnectionProvider.describe(
+                "select *\n  from users where email = ?", parameters, parameters.length, 3);
+
+        // Then
+        assertTrue(description.startsWith("select * from users where email = ? | params: ["), description);
+        assertTrue(description.contains("'***@example.com', 30, NULL, 'xxx"), description);
+        assertFalse(description.contains("john.doe"), description);
+        assertTrue(description.contains("...'"), description);
+        assertTrue(description.endsWith("| batch: 3 (last parameters shown)"), description);
+    }
+
+    @Test
+    @DisplayName("Should count and rethrow slow statements that fail")
+    void testFailedSlowStatement() throws SQLException {
+        // Given
+        PreparedStatement statement = mock(PreparedStatement.class);
+        when(statement.executeUpdate()).thenThrow(new SQLException("canceling statement due to lock timeout"));
+        Connection connection = mock(Connection.class);
+        when(connection.prepareStatement("update users set age = ? where id = ?")).thenReturn(statement);
+        SlowQueryConnectionProvider provider = new SlowQueryConnectionProvider();
+        provider.setThresholdMillis(0);
+
+        // When
+        PreparedStatement wrapped = provider.wrap(connection).prepareStatement("update users set age = ? where id = ?");
+        wrapped.setInt(1, 30);
+        wrapped.setLong(2, 1L);
+        SQLException error = assertThrows(SQLException.class, wrapped::executeUpdate);
+
+        // Then
+        assertEquals("canceling statement due to lock timeout", error.getMessage());
+        assertEquals(1, provider.getSlowStatements());
+    }
+}
@@ -0,0 +1,62 @@
+package com.userservice.util;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("SqlStatementCounter Unit Tests")
+class SqlStatementCounterTest {
+
+    private final SqlStatementCounter inspector = new SqlStatementCounter();
+
+    @BeforeEach
+    void resetStats() {
+        SqlStatementCounter.resetStats();
+        SqlStatementCounter.setBudget(SqlStatementCounter.DEFAULT_BUDGET);
+    }
+
+    @Test
+    @DisplayName("Should attribute statements to the outermost tracked operation")
+    void testTracksOutermostOperation() {
+        // When
+        String result = SqlStatementCounter.track("outer", () -> {
+            inspector.inspect("select 1");
+            SqlStatementCounter.track("inner", () -> inspector.inspect("select 2"));
+            return "done";
+        });
+        inspector.inspect("select 3");
+
+        // Then
+        assertEquals("done", result);
+        SqlStatementCounter.OperationStats stats = SqlStatementCounter.getStats().get("outer");
+        assertEquals(1, stats.getCalls());
+        assertEquals(2, stats.getStatements());
+        assertFalse(SqlStatementCounter.getStats().containsKey("inner"));
+        assertEquals(3, SqlStatementCounter.getTotalStatements());
+    }
+
+    @Test
+    @DisplayName("Should capture statements for assertions and count operations over budget")
+    void testCaptureAndBudget() {
+        // Given
+        SqlStatementCounter.setBudget(2);
+
+        // When
+        List<String> captured = SqlStatementCounter.track("loop", () -> SqlStatementCounter.capture(() -> {
+            for (int i = 0; i < 7; i++) {
+                inspector.inspect("select * from users where id=?");
+            }
+        }));
+
+        // Then
+        assertEquals(7, captured.size());
+        SqlStatementCounter.OperationStats stats = SqlStatementCounter.getStats().get("loop");
+        assertEquals(7, stats.getMaxStatements());
+        assertEquals(1, stats.getOverBudget());
+        assertThrows(IllegalArgumentException.class, () -> SqlStatementCounter.setBudget(0));
+    }
+}
@@ -18,6 +18,14 @@ public class TestHibernateUtil {
             sessionFactory.close();
         }
         
+        sessionFactory = buildSessionFactory(jdbcUrl, username, password);
+        return sessionFactory;
+    }
+
+    /**
+     * Создает независимую SessionFactory (например, для шардов); закрывать ее должен тест.
+     */
+    public static SessionFactory buildSessionFactory(String jdbcUrl, String username, String password) {
         try {
             Properties properties = new Properties();
             properties.setProperty("hibernate.connection.driver_class", "org.postgresql.Driver");
@@ -25,8 +33,13 @@ public class TestHibernateUtil {
             properties.setProperty("hibernate.connection.username", username);
             properties.setProperty("hibernate.connection.password", password);
             properties.setProperty("hibernate.connection.pool_size", "5");
+            properties.setProperty("hibernate.connection.provider_class", SlowQueryConnectionProvider.class.getName());
             properties.setProperty("hibernate.dialect", "org.hibernate.dialect.PostgreSQLDialect");
+            properties.setProperty("hibernate.jdbc.batch_size", "50");
+            properties.setProperty("hibernate.order_updates", "true");
             properties.setProperty("hibernate.current_session_context_class", "thread");
+            properties.setProperty("hibernate.session_factory.statement_inspector", SqlStatementCounter.class.getName());
+            properties.setProperty("hibernate.generate_statistics", "true");
             properties.setProperty("hibernate.show_sql", "false");
             properties.setProperty("hibernate.format_sql", "false");
             properties.setProperty("hibernate.hbm2ddl.auto", "create-drop");
@@ -35,13 +48,15 @@ public class TestHibernateUtil {
                     .applySettings(properties)
                     .build();
             
-            sessionFactory = new MetadataSources(registry)
+            SessionFactory factory = new MetadataSources(registry)
                     .addAnnotatedClass(com.userservice.entity.User.class)
+                    .addAnnotatedClass(com.userservice.entity.UserOutboxEvent.class)
                     .buildMetadata()
                     .buildSessionFactory();
+            SchemaInitializer.apply(factory);
             
             logger.info("Test Hibernate SessionFactory created successfully");
-            return sessionFactory;
+            return factory;
         } catch (Exception e) {
             logger.error("Initial Test SessionFactory creation failed", e);
             throw new ExceptionInInitializerError(e);